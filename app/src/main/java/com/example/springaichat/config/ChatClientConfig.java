@@ -0,0 +1,112 @@
+package com.example.springaichat.config;
+
+import com.example.springaichat.service.AdaptiveConcurrencyLimiter;
+import com.example.springaichat.service.ChatMetrics;
+import com.example.springaichat.service.RoutingChatModel;
+import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiConnectionProperties;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.model.function.FunctionCallbackContext;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChatClient配置类
+ * 配置ChatClient以支持UTF-8编码，解决中文乱码问题；
+ * 模型调用经过RoutingChatModel，在 chat.routing.endpoints 配置的多个服务之间路由，
+ * 每个服务前有一个自适应并发限制器
+ */
+@Configuration
+@EnableConfigurationProperties(ChatRoutingProperties.class)
+public class ChatClientConfig {
+
+    @Autowired
+    private OpenAiChatModel chatModel;
+
+    @Autowired
+    private OpenAiConnectionProperties connectionProperties;
+
+    @Autowired
+    private OpenAiChatProperties chatProperties;
+
+    /**
+     * 配置模型路由
+     * 未配置 chat.routing.endpoints 时只包含 spring.ai.openai.* 配置的默认服务；
+     * 各服务未填写的地址和密钥沿用默认服务的配置，生成参数沿用 spring.ai.openai.chat.options.*；
+     * HTTP客户端、重试（spring.ai.retry.*）和函数调用与自动配置的默认服务一致。
+     * RestClient.Builder和WebClient.Builder是原型作用域，每个服务取一个新实例，避免地址和请求头互相覆盖
+     * @return 路由模型
+     */
+    @Bean
+    public RoutingChatModel routingChatModel(ChatRoutingProperties routingProperties, ChatMetrics chatMetrics,
+                                             ObjectProvider<RestClient.Builder> restClientBuilders,
+                                             ObjectProvider<WebClient.Builder> webClientBuilders,
+                                             ResponseErrorHandler responseErrorHandler,
+                                             RetryTemplate retryTemplate,
+                                             FunctionCallbackContext functionCallbackContext) {
+        List<RoutingChatModel.Endpoint> endpoints = new ArrayList<>();
+        for (ChatRoutingProperties.Endpoint endpoint : routingProperties.getEndpoints()) {
+            String baseUrl = hasText(endpoint.getBaseUrl()) ? endpoint.getBaseUrl() : connectionProperties.getBaseUrl();
+            String apiKey = hasText(endpoint.getApiKey()) ? endpoint.getApiKey() : connectionProperties.getApiKey();
+            OpenAiChatOptions options = OpenAiChatOptions.fromOptions(chatProperties.getOptions());
+            if (hasText(endpoint.getModel())) {
+                options.setModel(endpoint.getModel());
+            }
+            String name = hasText(endpoint.getName()) ? endpoint.getName() : baseUrl + "/" + options.getModel();
+            OpenAiApi api = new OpenAiApi(baseUrl, apiKey, restClientBuilders.getIfAvailable(RestClient::builder),
+                webClientBuilders.getIfAvailable(WebClient::builder), responseErrorHandler);
+            OpenAiChatModel model = new OpenAiChatModel(api, options, functionCallbackContext, retryTemplate);
+            endpoints.add(new RoutingChatModel.Endpoint(name, options.getModel(), model,
+                createLimiter(name, routingProperties, chatMetrics), routingProperties.getWindowSize()));
+        }
+        if (endpoints.isEmpty()) {
+            endpoints.add(new RoutingChatModel.Endpoint("default", chatProperties.getOptions().getModel(), chatModel,
+                createLimiter("default", routingProperties, chatMetrics), routingProperties.getWindowSize()));
+        }
+        return new RoutingChatModel(endpoints, routingProperties, chatMetrics);
+    }
+
+    /**
+     * 配置支持UTF-8编码的ChatClient
+     * @return 配置好的ChatClient
+     */
+    @Bean
+    @Primary
+    public ChatClient chatClient(RoutingChatModel routingChatModel) {
+        // 使用基础配置创建ChatClient
+        return ChatClient.builder(routingChatModel).build();
+    }
+
+    /**
+     * 为服务创建自适应并发限制器，未启用时返回null
+     */
+    private static AdaptiveConcurrencyLimiter createLimiter(String name, ChatRoutingProperties routingProperties,
+                                                           ChatMetrics chatMetrics) {
+        if (!routingProperties.getLimiter().isEnabled()) {
+            return null;
+        }
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(name, routingProperties.getLimiter());
+        // 由RoutingChatModel在容器关闭时停止
+        limiter.start();
+        chatMetrics.registerLimiter(name, limiter);
+        return limiter;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
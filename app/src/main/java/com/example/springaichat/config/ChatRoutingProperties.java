@@ -0,0 +1,310 @@
+package com.example.springaichat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多模型服务路由配置（chat.routing.*）
+ * 未配置endpoints时只使用 spring.ai.openai.* 配置的默认服务，与单服务部署的行为相同
+ */
+@ConfigurationProperties(prefix = "chat.routing")
+public class ChatRoutingProperties {
+
+    // OpenAI兼容的模型服务列表
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    // 每个服务保留的最近请求数，首个片段延迟和错误率都在该窗口内统计
+    private int windowSize = 100;
+
+    // 错误率达到该值（且窗口内至少有minSamples个结果）时暂停向该服务路由
+    private double ejectErrorRate = 0.5;
+
+    // 暂停路由的时长（毫秒），到期后重新参与选择
+    private long ejectMillis = 30000;
+
+    // 计算延迟分位数和错误率所需的最少样本数
+    private int minSamples = 5;
+
+    // 随机选择非最优服务的概率，使各服务的统计保持新鲜
+    private double explorationRatio = 0.05;
+
+    private Hedge hedge = new Hedge();
+
+    private Limiter limiter = new Limiter();
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public double getEjectErrorRate() {
+        return ejectErrorRate;
+    }
+
+    public void setEjectErrorRate(double ejectErrorRate) {
+        this.ejectErrorRate = ejectErrorRate;
+    }
+
+    public long getEjectMillis() {
+        return ejectMillis;
+    }
+
+    public void setEjectMillis(long ejectMillis) {
+        this.ejectMillis = ejectMillis;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    public double getExplorationRatio() {
+        return explorationRatio;
+    }
+
+    public void setExplorationRatio(double explorationRatio) {
+        this.explorationRatio = explorationRatio;
+    }
+
+    public Hedge getHedge() {
+        return hedge;
+    }
+
+    public void setHedge(Hedge hedge) {
+        this.hedge = hedge;
+    }
+
+    public Limiter getLimiter() {
+        return limiter;
+    }
+
+    public void setLimiter(Limiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * 单个模型服务
+     */
+    public static class Endpoint {
+
+        // 服务名称，用于日志、指标和统计接口
+        private String name;
+
+        // 服务地址，如 https://api.deepseek.com
+        private String baseUrl;
+
+        private String apiKey;
+
+        // 模型名称，不填时使用 spring.ai.openai.chat.options.model
+        private String model;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public void setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+    }
+
+    /**
+     * 对冲请求：首个片段迟迟未到时向另一个服务发起第二个请求，先出结果的一方胜出，另一方被取消
+     */
+    public static class Hedge {
+
+        private boolean enabled = true;
+
+        // 等待时间取所选服务首个片段延迟的该分位数
+        private double percentile = 0.9;
+
+        // 等待时间的下限和上限（毫秒）；样本不足时使用上限
+        private long minDelayMs = 500;
+
+        private long maxDelayMs = 5000;
+
+        // 对冲请求数占总请求数的上限，控制额外的调用成本
+        private double maxRatio = 0.1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public long getMinDelayMs() {
+            return minDelayMs;
+        }
+
+        public void setMinDelayMs(long minDelayMs) {
+            this.minDelayMs = minDelayMs;
+        }
+
+        public long getMaxDelayMs() {
+            return maxDelayMs;
+        }
+
+        public void setMaxDelayMs(long maxDelayMs) {
+            this.maxDelayMs = maxDelayMs;
+        }
+
+        public double getMaxRatio() {
+            return maxRatio;
+        }
+
+        public void setMaxRatio(double maxRatio) {
+            this.maxRatio = maxRatio;
+        }
+    }
+
+    /**
+     * 每个服务的自适应并发上限：成功时缓慢上调，429限流、超时或首个片段延迟明显升高时下调，
+     * 超出上限的请求排队等待
+     */
+    public static class Limiter {
+
+        private boolean enabled = true;
+
+        // 初始上限和上限的取值范围
+        private int initialLimit = 20;
+
+        private int minLimit = 1;
+
+        private int maxLimit = 200;
+
+        // 收到429限流或超时时上限乘以该比例
+        private double backoffRatio = 0.7;
+
+        // 首个片段延迟超过基线的该倍数时视为拥塞
+        private double latencyTolerance = 2.0;
+
+        // 两次下调之间的最短间隔（毫秒），同一批失败只下调一次
+        private long decreaseIntervalMs = 1000;
+
+        // 等待队列容量和最长等待时间（毫秒）
+        private int queueCapacity = 200;
+
+        private long queueTimeoutMs = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public double getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        public void setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+
+        public long getDecreaseIntervalMs() {
+            return decreaseIntervalMs;
+        }
+
+        public void setDecreaseIntervalMs(long decreaseIntervalMs) {
+            this.decreaseIntervalMs = decreaseIntervalMs;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public long getQueueTimeoutMs() {
+            return queueTimeoutMs;
+        }
+
+        public void setQueueTimeoutMs(long queueTimeoutMs) {
+            this.queueTimeoutMs = queueTimeoutMs;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.springaichat.controller;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.entity.ChatSession;
+import com.example.springaichat.repository.ChatSessionSummary;
+import com.example.springaichat.service.BatchJobService;
+import com.example.springaichat.service.BatchPrompt;
+import com.example.springaichat.service.ChatService;
+import com.example.springaichat.service.MessagePage;
+import com.example.springaichat.service.SearchResult;
+import com.example.springaichat.service.SessionExporter;
+import com.example.springaichat.service.SessionImporter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * AI控制器 - AI聊天交互的REST API
+ * 
+ * 该控制器提供与AI模型交互的端点，
+ * 使用Spring AI的ChatClient集成。
+ * 支持对话上下文管理。
+ */
+@RestController
+@RequestMapping("/ai")
+@CrossOrigin(origins = "*") // 启用所有来源的CORS支持
+public class AIController {
+
+    private final ChatService chatService;
+    private final BatchJobService batchJobService;
+    private final SessionExporter sessionExporter;
+    private final SessionImporter sessionImporter;
+
+    @Autowired
+    public AIController(ChatService chatService, BatchJobService batchJobService,
+                        SessionExporter sessionExporter, SessionImporter sessionImporter) {
+        this.chatService = chatService;
+        this.batchJobService = batchJobService;
+        this.sessionExporter = sessionExporter;
+        this.sessionImporter = sessionImporter;
+    }
+    
+    /**
+     * 聊天端点，将消息发送给AI模型并返回流式响应
+     * 使用 SseEmitter 实现标准 Server-Sent Events
+     * 
+     * @param request 包含用户消息的聊天请求
+     * @return SseEmitter 流式响应对象
+     */
+    @PostMapping(value = "/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
+    public org.springframework.web.servlet.mvc.method.annotation.SseEmitter chat(@RequestBody ChatRequest request) {
+        // 调用服务层处理聊天逻辑，返回SseEmitter
+        return chatService.chatStream(request.getSessionId(), request.getMessage());
+    }
+    
+    /**
+     * 响应式聊天端点（/ai/chat?mode=reactive），直接返回SSE事件流
+     * 客户端读取速度通过背压传递到模型，流的生命周期内不占用线程；事件格式与默认模式一致，但不支持断线续传
+     * 
+     * @param request 包含用户消息的聊天请求
+     * @return SSE事件流
+     */
+    @PostMapping(value = "/chat", params = "mode=reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
+    public Flux<ServerSentEvent<String>> chatReactive(@RequestBody ChatRequest request) {
+        return chatService.chatReactive(request.getSessionId(), request.getMessage());
+    }
+    
+    /**
+     * 断线续传端点，从Last-Event-ID之后继续接收同一轮回答，不会再次调用模型
+     * 
+     * @param lastEventIdHeader 浏览器EventSource自动携带的Last-Event-ID请求头
+     * @param lastEventId 通过查询参数传入的事件ID（fetch等无法设置请求头时使用）
+     * @return SseEmitter 流式响应对象
+     */
+    @GetMapping(value = "/chat/resume", produces = MediaType.TEXT_EVENT_STREAM_VALUE + ";charset=UTF-8")
+    public org.springframework.web.servlet.mvc.method.annotation.SseEmitter resume(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventId) {
+        return chatService.resumeStream(lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+    }
+    
+    /**
+     * 清除指定会话的历史记录
+     * 
+     * @param sessionId 会话ID
+     * @return 操作结果
+     */
+    @DeleteMapping("/history/{sessionId}")
+    public ResponseEntity<String> clearHistory(@PathVariable String sessionId) {
+        chatService.clearHistory(sessionId);
+        return ResponseEntity.ok().body("会话历史已清除");
+    }
+    
+    /**
+     * 获取所有会话列表
+     * 
+     * @return 会话列表（不包含消息内容）
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<List<Map<String, Object>>> getAllSessions() {
+        // 会话摘要由单次投影查询得到，无需加载任何消息
+        List<ChatSessionSummary> sessions = chatService.getSessionSummaries();
+        List<Map<String, Object>> result = sessions.stream()
+            .map(ChatResponseMapper::toSessionSummaryData)
+            .collect(Collectors.toList());
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 获取指定会话的所有消息
+     * 长会话请使用分页端点 /sessions/{sessionId}/messages/page
+     * 
+     * @param sessionId 会话ID
+     * @return 消息列表
+     */
+    @GetMapping("/sessions/{sessionId}/messages")
+    public ResponseEntity<List<Map<String, Object>>> getSessionMessages(@PathVariable String sessionId) {
+        List<ChatMessage> messages = chatService.getSessionMessages(sessionId);
+        List<Map<String, Object>> result = messages.stream()
+            .map(ChatResponseMapper::toMessageData)
+            .collect(Collectors.toList());
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 按游标分页获取指定会话的消息
+     * 不带游标时返回最新的一页，向上滚动时用beforeCursor加载更早的消息
+     * 
+     * @param sessionId 会话ID
+     * @param before 加载该游标之前（更早）的消息
+     * @param after 加载该游标之后（更新）的消息
+     * @param limit 页大小，最大200
+     * @return 一页消息及前后游标
+     */
+    @GetMapping("/sessions/{sessionId}/messages/page")
+    public ResponseEntity<Map<String, Object>> getSessionMessagePage(@PathVariable String sessionId,
+                                                                     @RequestParam(required = false) String before,
+                                                                     @RequestParam(required = false) String after,
+                                                                     @RequestParam(defaultValue = "50") int limit) {
+        MessagePage page;
+        try {
+            page = chatService.getMessagePage(sessionId, before, after, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("messages", page.getMessages().stream()
+            .map(ChatResponseMapper::toMessageData)
+            .collect(Collectors.toList()));
+        result.put("hasMore", page.isHasMore());
+        result.put("beforeCursor", page.getBeforeCursor());
+        result.put("afterCursor", page.getAfterCursor());
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 创建新会话，未指定sessionId时由服务端生成按时间递增的ID
+     * 
+     * @param request 会话创建请求
+     * @return 创建的会话信息，sessionId过长时返回400
+     */
+    @PostMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> createSession(@RequestBody SessionRequest request) {
+        ChatSession session;
+        try {
+            session = chatService.createSession(request.getSessionId(), request.getName());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        return ResponseEntity.ok(ChatResponseMapper.toSessionData(session));
+    }
+    
+    /**
+     * 删除会话
+     * 
+     * @param sessionId 会话ID
+     * @return 操作结果
+     */
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<String> deleteSession(@PathVariable String sessionId) {
+        chatService.deleteSession(sessionId);
+        return ResponseEntity.ok("会话已删除");
+    }
+    
+    /**
+     * 重命名会话
+     * 
+     * @param sessionId 会话ID
+     * @param request 重命名请求
+     * @return 操作结果
+     */
+    @PutMapping("/sessions/{sessionId}/rename")
+    public ResponseEntity<String> renameSession(@PathVariable String sessionId, @RequestBody RenameRequest request) {
+        chatService.renameSession(sessionId, request.getName());
+        return ResponseEntity.ok("会话已重命名");
+    }
+    
+    /**
+     * 停止会话正在进行的回答
+     * 立即取消模型调用，已生成的部分以cancelled状态保存
+     * 
+     * @param sessionId 会话ID
+     * @return 是否有进行中的回答被停止
+     */
+    @PostMapping("/sessions/{sessionId}/stop")
+    public ResponseEntity<Map<String, Object>> stopGeneration(@PathVariable String sessionId) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("stopped", chatService.stopGeneration(sessionId));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 聊天请求的数据传输对象
+     */
+    public static class ChatRequest {
+        private String message;
+        private String sessionId; // 可选的会话ID
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+        
+        public String getSessionId() {
+            return sessionId;
+        }
+        
+        public void setSessionId(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+    
+    /**
+     * 会话创建请求的数据传输对象
+     */
+    public static class SessionRequest {
+        private String sessionId;
+        private String name;
+        
+        public String getSessionId() {
+            return sessionId;
+        }
+        
+        public void setSessionId(String sessionId) {
+            this.sessionId = sessionId;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+    
+    /**
+     * 重命名请求的数据传输对象
+     */
+    public static class RenameRequest {
+        private String name;
+        
+        public String getName() {
+            return name;
+        }
+        
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+    
+    /**
+     * 批量任务请求体
+     */
+    public static class BatchRequest {
+        private List<BatchPrompt> prompts;
+        private Integer parallelism;
+        
+        public List<BatchPrompt> getPrompts() {
+            return prompts;
+        }
+        
+        public void setPrompts(List<BatchPrompt> prompts) {
+            this.prompts = prompts;
+        }
+        
+        public Integer getParallelism() {
+            return parallelism;
+        }
+        
+        public void setParallelism(Integer parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+
+    /**
+     * 全文检索聊天记录
+     * 结果按相关度排序，snippet为包含查询词的正文片段，highlights为片段中需要高亮的字符区间
+     * 
+     * @param q 查询文本
+     * @param sessionId 限定会话，不传时检索全部会话
+     * @param limit 返回的最大条数，最大100
+     * @return 命中列表和命中总数
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(@RequestParam String q,
+                                                      @RequestParam(required = false) String sessionId,
+                                                      @RequestParam(defaultValue = "20") int limit) {
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        SearchResult searchResult = chatService.search(q, sessionId, limit);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("results", searchResult.getHits().stream()
+            .map(ChatResponseMapper::toSearchHitData)
+            .collect(Collectors.toList()));
+        result.put("total", searchResult.getTotal());
+        result.put("indexReady", searchResult.isIndexReady());
+        
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 提交批量任务（JSON）
+     * 
+     * @param request 提示词列表和可选的并行度
+     * @return 任务ID，提示词列表不合法时返回400
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> submitBatch(@RequestBody BatchRequest request) {
+        return submitBatch(request.getPrompts(), request.getParallelism());
+    }
+    
+    /**
+     * 提交批量任务（上传文件）
+     * 文件每行一条提示词，以 { 开头的行按JSON解析（prompt、sessionId字段）
+     * 
+     * @param file 提示词文件（UTF-8）
+     * @param parallelism 并行度，不传时使用默认值
+     * @return 任务ID，文件内容不合法时返回400
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> submitBatchFile(@RequestParam("file") MultipartFile file,
+                                                               @RequestParam(required = false) Integer parallelism) {
+        List<BatchPrompt> prompts;
+        try (InputStream input = file.getInputStream()) {
+            prompts = batchJobService.parsePrompts(input);
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        }
+        return submitBatch(prompts, parallelism);
+    }
+    
+    private ResponseEntity<Map<String, Object>> submitBatch(List<BatchPrompt> prompts, Integer parallelism) {
+        String jobId;
+        try {
+            jobId = batchJobService.submit(prompts, parallelism);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("jobId", jobId);
+        result.put("total", prompts.size());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+    }
+    
+    private static Map<String, Object> errorBody(String message) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", message);
+        return body;
+    }
+    
+    /**
+     * 查询批量任务状态
+     * 
+     * @param jobId 任务ID
+     * @return 任务状态和各状态的条目数，任务不存在时返回404
+     */
+    @GetMapping("/batch/{jobId}")
+    public ResponseEntity<Map<String, Object>> getBatchStatus(@PathVariable String jobId) {
+        return batchJobService.getStatus(jobId)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * 以NDJSON流返回批量任务结果（每行一条），任务运行期间持续输出新完成的结果，任务结束后以 done 行结束
+     * 
+     * @param jobId 任务ID
+     * @param after 只返回完成序号大于该值的结果，用于断开后继续读取
+     * @return 结果流，任务不存在时返回404
+     */
+    @GetMapping(value = "/batch/{jobId}/results", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<Map<String, Object>>> getBatchResults(@PathVariable String jobId,
+                                                                     @RequestParam(defaultValue = "0") int after) {
+        if (batchJobService.getStatus(jobId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(batchJobService.streamResults(jobId, after));
+    }
+    
+    /**
+     * 导出全部会话和消息，以NDJSON流式下载
+     * 
+     * @param gzip 是否gzip压缩
+     * @return 导出文件
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportData(@RequestParam(defaultValue = "false") boolean gzip) {
+        String fileName = "chat-export-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"))
+            + (gzip ? ".ndjson.gz" : ".ndjson");
+        MediaType contentType = gzip ? new MediaType("application", "gzip") : MediaType.APPLICATION_NDJSON;
+        StreamingResponseBody body = output -> sessionExporter.export(output, gzip);
+        return ResponseEntity.ok()
+            .contentType(contentType)
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+            .body(body);
+    }
+    
+    /**
+     * 导入 /ai/export 导出的数据，请求体为NDJSON或gzip压缩的NDJSON
+     * 
+     * @param body 请求体
+     * @return 新建和合并的会话数、导入和跳过的消息数，格式错误时返回400
+     */
+    @PostMapping("/import")
+    public ResponseEntity<Map<String, Object>> importData(InputStream body) throws IOException {
+        try {
+            return ResponseEntity.ok(sessionImporter.importFrom(body));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return ResponseEntity.badRequest().body(errorBody(e.getMessage()));
+        }
+    }
+    
+    /**
+     * 流式调度统计端点
+     * 
+     * @return 活跃、排队和被拒绝的流数量
+     */
+    @GetMapping("/stats/streams")
+    public ResponseEntity<Map<String, Object>> getStreamStats() {
+        return ResponseEntity.ok(chatService.getStreamStats());
+    }
+    
+    /**
+     * 响应缓存统计端点
+     * 
+     * @return 命中、未命中、淘汰次数和当前占用
+     */
+    @GetMapping("/stats/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(chatService.getCacheStats());
+    }
+    
+    /**
+     * 全文索引统计端点
+     * 
+     * @return 文档数、段数和是否加载完成
+     */
+    @GetMapping("/stats/search")
+    public ResponseEntity<Map<String, Object>> getSearchStats() {
+        return ResponseEntity.ok(chatService.getSearchStats());
+    }
+    
+    /**
+     * 健康检查端点
+     * 确保响应头包含UTF-8编码
+     */
+    @GetMapping("/health")
+    public ResponseEntity<String> health() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(new MediaType("text", "plain", StandardCharsets.UTF_8));
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body("AI服务运行正常 - UTF-8编码测试：你好，世界！Hello World! 🚀");
+    }
+
+}
\ No newline at end of file
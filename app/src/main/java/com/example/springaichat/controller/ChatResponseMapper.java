@@ -0,0 +1,82 @@
+package com.example.springaichat.controller;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.entity.ChatSession;
+import com.example.springaichat.repository.ChatSessionSummary;
+import com.example.springaichat.service.SearchHit;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 响应数据映射 - 将实体和投影转换为接口返回的Map结构
+ */
+public final class ChatResponseMapper {
+
+    private ChatResponseMapper() {
+    }
+
+    /**
+     * 将消息实体转换为响应数据
+     */
+    public static Map<String, Object> toMessageData(ChatMessage message) {
+        Map<String, Object> messageData = new HashMap<>();
+        messageData.put("id", message.getId());
+        messageData.put("role", message.getRole());
+        messageData.put("content", message.getContent());
+        messageData.put("timestamp", toEpochMilli(message.getTimestamp()));
+        messageData.put("status", message.getStatus());
+        return messageData;
+    }
+
+    /**
+     * 将会话摘要投影转换为会话列表项
+     */
+    public static Map<String, Object> toSessionSummaryData(ChatSessionSummary session) {
+        Map<String, Object> sessionData = new HashMap<>();
+        sessionData.put("id", session.getId());
+        sessionData.put("name", session.getName());
+        sessionData.put("createdAt", toEpochMilli(session.getCreatedAt()));
+        sessionData.put("updatedAt", toEpochMilli(session.getUpdatedAt()));
+        sessionData.put("messageCount", session.getMessageCount());
+        sessionData.put("preview", session.getLastPreview() != null ? session.getLastPreview() : "暂无消息");
+        if (session.getLastActivityAt() != null) {
+            sessionData.put("lastActivityAt", toEpochMilli(session.getLastActivityAt()));
+        }
+        return sessionData;
+    }
+
+    /**
+     * 将会话实体转换为响应数据
+     */
+    public static Map<String, Object> toSessionData(ChatSession session) {
+        Map<String, Object> sessionData = new HashMap<>();
+        sessionData.put("id", session.getId());
+        sessionData.put("name", session.getName());
+        sessionData.put("createdAt", toEpochMilli(session.getCreatedAt()));
+        sessionData.put("updatedAt", toEpochMilli(session.getUpdatedAt()));
+        return sessionData;
+    }
+
+    /**
+     * 将检索命中转换为响应数据
+     */
+    public static Map<String, Object> toSearchHitData(SearchHit hit) {
+        Map<String, Object> hitData = new HashMap<>();
+        hitData.put("messageId", hit.getMessageId());
+        hitData.put("sessionId", hit.getSessionId());
+        hitData.put("sessionName", hit.getSessionName());
+        hitData.put("role", hit.getRole());
+        hitData.put("timestamp", hit.getTimestamp());
+        hitData.put("score", hit.getScore());
+        hitData.put("snippet", hit.getSnippet());
+        hitData.put("highlights", hit.getHighlights());
+        return hitData;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
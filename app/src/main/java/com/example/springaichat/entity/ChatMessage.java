@@ -1,6 +1,7 @@
 package com.example.springaichat.entity;
 
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 
 /**
@@ -8,11 +9,16 @@ import java.time.LocalDateTime;
  * 用于持久化存储单条聊天消息
  */
 @Entity
-@Table(name = "chat_messages")
-public class ChatMessage {
+@Table(name = "chat_messages", indexes = {
+    // 支撑按会话读取尾部和键集分页的复合索引
+    @Index(name = "idx_chat_messages_session_ts_id", columnList = "session_id, timestamp, id")
+})
+// 正文存放在副表，列出和计数消息时只扫描定长的元数据行（表结构见 db/migration/V3）
+@SecondaryTable(name = "chat_message_contents", pkJoinColumns = @PrimaryKeyJoinColumn(name = "message_id"))
+public class ChatMessage implements Persistable<String> {
     
     @Id
-    @Column(length = 100)
+    @Column(length = ChatSession.MAX_ID_LENGTH)
     private String id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -22,7 +28,7 @@ public class ChatMessage {
     @Column(nullable = false, length = 20)
     private String role; // "user" 或 "assistant"
     
-    @Column(nullable = false, columnDefinition = "TEXT")
+    @Column(table = "chat_message_contents", nullable = false, columnDefinition = "TEXT")
     private String content;
     
     @Column(nullable = false)
@@ -31,6 +37,13 @@ public class ChatMessage {
     @Column(length = 20)
     private String status; // "sending", "success", "error"
     
+    @Column(name = "token_count")
+    private Integer tokenCount; // 估算的token数，保存时计算，用于上下文预算
+    
+    // ID由应用分配，显式标记新实体，使save()直接INSERT而不是先SELECT再合并
+    @Transient
+    private boolean isNew = true;
+    
     // 默认构造函数（JPA需要）
     public ChatMessage() {
     }
@@ -43,7 +56,19 @@ public class ChatMessage {
         this.timestamp = LocalDateTime.now();
     }
     
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+    
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+    
     // Getters and Setters
+    @Override
     public String getId() {
         return id;
     }
@@ -91,5 +116,12 @@ public class ChatMessage {
     public void setStatus(String status) {
         this.status = status;
     }
+    
+    public Integer getTokenCount() {
+        return tokenCount;
+    }
+    
+    public void setTokenCount(Integer tokenCount) {
+        this.tokenCount = tokenCount;
+    }
 }
-
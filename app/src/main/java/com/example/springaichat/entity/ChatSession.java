@@ -0,0 +1,177 @@
+package com.example.springaichat.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聊天会话实体类
+ * 用于持久化存储用户的对话会话信息
+ */
+@Entity
+@Table(name = "chat_sessions", indexes = {
+    // 会话列表按更新时间排序
+    @Index(name = "idx_chat_sessions_updated_at", columnList = "updated_at")
+})
+@DynamicUpdate
+public class ChatSession {
+    
+    // ID列长度：服务端生成的ID为13位，兼容旧版前端生成的ID（最长31位）
+    public static final int MAX_ID_LENGTH = 32;
+    
+    @Id
+    @Column(length = MAX_ID_LENGTH)
+    private String id;
+    
+    @Column(nullable = false, length = 200)
+    private String name;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    // 以下为会话摘要字段，随消息保存增量维护，会话列表无需加载消息
+    @Column(name = "message_count", nullable = false)
+    private int messageCount;
+    
+    @Column(name = "last_preview", length = 100)
+    private String lastPreview; // 最后一条用户消息的预览
+    
+    @Column(name = "last_activity_at")
+    private LocalDateTime lastActivityAt;
+    
+    // 滚动摘要：超出上下文预算的较早对话被概括到这里
+    @Column(name = "summary", columnDefinition = "TEXT")
+    private String summary;
+    
+    @Column(name = "summarized_until")
+    private LocalDateTime summarizedUntil; // 摘要已覆盖到的消息时间
+    
+    // 归档时间：非空时消息已压缩存入 chat_session_archives，访问时由SessionArchiver恢复
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt;
+    
+    @OneToMany(mappedBy = "session", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+    @OrderBy("timestamp ASC")
+    private List<ChatMessage> messages = new ArrayList<>();
+    
+    // 默认构造函数（JPA需要）
+    public ChatSession() {
+    }
+    
+    public ChatSession(String id, String name) {
+        this.id = id;
+        this.name = name;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+        this.lastActivityAt = this.createdAt;
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public int getMessageCount() {
+        return messageCount;
+    }
+    
+    public void setMessageCount(int messageCount) {
+        this.messageCount = messageCount;
+    }
+    
+    public String getLastPreview() {
+        return lastPreview;
+    }
+    
+    public void setLastPreview(String lastPreview) {
+        this.lastPreview = lastPreview;
+    }
+    
+    public LocalDateTime getLastActivityAt() {
+        return lastActivityAt;
+    }
+    
+    public void setLastActivityAt(LocalDateTime lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
+    
+    public String getSummary() {
+        return summary;
+    }
+    
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+    
+    public LocalDateTime getSummarizedUntil() {
+        return summarizedUntil;
+    }
+    
+    public void setSummarizedUntil(LocalDateTime summarizedUntil) {
+        this.summarizedUntil = summarizedUntil;
+    }
+    
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+    
+    public void setArchivedAt(LocalDateTime archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+    
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+    
+    public void setMessages(List<ChatMessage> messages) {
+        this.messages = messages;
+    }
+    
+    // 辅助方法
+    public void addMessage(ChatMessage message) {
+        messages.add(message);
+        message.setSession(this);
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    public void removeMessage(ChatMessage message) {
+        messages.remove(message);
+        message.setSession(null);
+        this.updatedAt = LocalDateTime.now();
+    }
+}
+
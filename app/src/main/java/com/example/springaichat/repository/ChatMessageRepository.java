@@ -0,0 +1,83 @@
+package com.example.springaichat.repository;
+
+import com.example.springaichat.entity.ChatMessage;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 聊天消息数据访问接口
+ */
+@Repository
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, String> {
+    
+    /**
+     * 根据会话ID查询所有消息，按时间戳升序排列
+     */
+    List<ChatMessage> findBySessionIdOrderByTimestampAsc(String sessionId);
+    
+    /**
+     * 根据会话ID查询最近的消息，按 (timestamp, id) 降序排列
+     * 通过分页参数限制条数，只加载会话尾部
+     */
+    List<ChatMessage> findBySessionIdOrderByTimestampDescIdDesc(String sessionId, Pageable pageable);
+    
+    /**
+     * 键集分页：查询游标之前（更早）的消息，按 (timestamp, id) 降序排列
+     */
+    @Query("select m from ChatMessage m where m.session.id = :sessionId " +
+           "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+           "order by m.timestamp desc, m.id desc")
+    List<ChatMessage> findPageBefore(@Param("sessionId") String sessionId,
+                                     @Param("timestamp") LocalDateTime timestamp,
+                                     @Param("id") String id,
+                                     Pageable pageable);
+    
+    /**
+     * 键集分页：查询游标之后（更新）的消息，按 (timestamp, id) 升序排列
+     */
+    @Query("select m from ChatMessage m where m.session.id = :sessionId " +
+           "and (m.timestamp > :timestamp or (m.timestamp = :timestamp and m.id > :id)) " +
+           "order by m.timestamp asc, m.id asc")
+    List<ChatMessage> findPageAfter(@Param("sessionId") String sessionId,
+                                    @Param("timestamp") LocalDateTime timestamp,
+                                    @Param("id") String id,
+                                    Pageable pageable);
+    
+    /**
+     * 查询时间区间 (after, before) 内的消息，按 (timestamp, id) 升序排列，用于并入滚动摘要
+     */
+    @Query("select m from ChatMessage m where m.session.id = :sessionId " +
+           "and m.timestamp > :after and m.timestamp < :before " +
+           "order by m.timestamp asc, m.id asc")
+    List<ChatMessage> findBetween(@Param("sessionId") String sessionId,
+                                  @Param("after") LocalDateTime after,
+                                  @Param("before") LocalDateTime before,
+                                  Pageable pageable);
+    
+    /**
+     * 按 (会话, 时间) 顺序流式读取热表中的全部消息，用于导出
+     * 须在事务内消费并关闭；结果逐行读取，调用方处理完每条后应将其从持久化上下文分离
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ChatSessionRepository.STREAM_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select m from ChatMessage m order by m.session.id, m.timestamp, m.id")
+    Stream<ChatMessage> streamAllForExport();
+    
+    /**
+     * 删除指定会话的所有消息
+     */
+    void deleteBySessionId(String sessionId);
+}
+
@@ -0,0 +1,104 @@
+package com.example.springaichat.repository;
+
+import com.example.springaichat.entity.ChatSession;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 聊天会话数据访问接口
+ */
+@Repository
+public interface ChatSessionRepository extends JpaRepository<ChatSession, String> {
+    
+    // 流式查询的fetch size：MySQL Connector/J 只有在该值为Integer.MIN_VALUE时逐行读取结果，否则一次读入全部结果
+    String STREAM_FETCH_SIZE = "" + Integer.MIN_VALUE;
+    
+    /**
+     * 查询所有会话的摘要，按更新时间降序排列
+     */
+    @Query("select s.id as id, s.name as name, s.createdAt as createdAt, s.updatedAt as updatedAt, " +
+           "s.messageCount as messageCount, s.lastPreview as lastPreview, s.lastActivityAt as lastActivityAt " +
+           "from ChatSession s order by s.updatedAt desc")
+    List<ChatSessionSummary> findAllSummaries();
+    
+    /**
+     * 按ID顺序流式读取全部会话，用于导出
+     * 须在事务内消费并关闭；结果逐行读取，调用方处理完每个会话后应将其从持久化上下文分离
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select s from ChatSession s order by s.id")
+    Stream<ChatSession> streamAllForExport();
+    
+    /**
+     * 重命名会话
+     */
+    @Modifying
+    @Transactional
+    @Query("update ChatSession s set s.name = :name, s.updatedAt = :at where s.id = :id")
+    int rename(@Param("id") String id, @Param("name") String name, @Param("at") LocalDateTime at);
+
+    /**
+     * 记录一条新的用户消息：消息数加一，更新预览和活跃时间
+     */
+    @Modifying
+    @Transactional
+    @Query("update ChatSession s set s.messageCount = s.messageCount + 1, s.lastPreview = :preview, " +
+           "s.lastActivityAt = :at, s.updatedAt = :at where s.id = :id")
+    int recordUserMessage(@Param("id") String id, @Param("preview") String preview, @Param("at") LocalDateTime at);
+    
+    /**
+     * 记录一条新的AI消息：消息数加一，更新活跃时间
+     */
+    @Modifying
+    @Transactional
+    @Query("update ChatSession s set s.messageCount = s.messageCount + 1, " +
+           "s.lastActivityAt = :at, s.updatedAt = :at where s.id = :id")
+    int recordAssistantMessage(@Param("id") String id, @Param("at") LocalDateTime at);
+    
+    /**
+     * 清除历史后重置会话摘要和滚动摘要
+     */
+    @Modifying
+    @Transactional
+    @Query("update ChatSession s set s.messageCount = 0, s.lastPreview = null, s.lastActivityAt = :at, " +
+           "s.summary = null, s.summarizedUntil = null where s.id = :id")
+    int resetSummary(@Param("id") String id, @Param("at") LocalDateTime at);
+    
+    /**
+     * 更新滚动摘要，只接受比当前摘要覆盖范围更新的结果
+     */
+    @Modifying
+    @Transactional
+    @Query("update ChatSession s set s.summary = :summary, s.summarizedUntil = :until " +
+           "where s.id = :id and (s.summarizedUntil is null or s.summarizedUntil < :until)")
+    int updateConversationSummary(@Param("id") String id, @Param("summary") String summary, @Param("until") LocalDateTime until);
+    
+    /**
+     * 按消息重新计算会话摘要，只处理 last_activity_at 为空的会话
+     * 导入时使用；升级前旧数据的回填由迁移脚本 V1_1 完成
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE chat_sessions s SET " +
+           "s.message_count = (SELECT COUNT(*) FROM chat_messages m WHERE m.session_id = s.id), " +
+           "s.last_preview = (SELECT CASE WHEN CHAR_LENGTH(c.content) > 30 THEN CONCAT(LEFT(c.content, 30), '...') ELSE c.content END " +
+           "FROM chat_messages m JOIN chat_message_contents c ON c.message_id = m.id " +
+           "WHERE m.session_id = s.id AND m.role = 'user' ORDER BY m.timestamp DESC LIMIT 1), " +
+           "s.last_activity_at = COALESCE((SELECT MAX(m.timestamp) FROM chat_messages m WHERE m.session_id = s.id), s.updated_at) " +
+           "WHERE s.last_activity_at IS NULL", nativeQuery = true)
+    int backfillSummaries();
+}
@@ -0,0 +1,24 @@
+package com.example.springaichat.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话摘要投影
+ * 会话列表只查询摘要字段，不加载消息
+ */
+public interface ChatSessionSummary {
+
+    String getId();
+
+    String getName();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+
+    int getMessageCount();
+
+    String getLastPreview();
+
+    LocalDateTime getLastActivityAt();
+}
@@ -0,0 +1,112 @@
+package com.example.springaichat.service;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 进行中的一轮模型输出 - 收集已生成的内容并持有上游订阅
+ * 正常完成与取消互斥，只有先发生的一方生效；取消时释放上游订阅并通知调用方保存已生成的部分
+ */
+public class ActiveStream {
+
+    private final String sessionId;
+    private final Consumer<ActiveStream> onCancelled;
+    private final StringBuilder content = new StringBuilder();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final Sinks.Empty<Void> cancelSignal = Sinks.empty();
+
+    private volatile Disposable subscription;
+    private volatile String cancelReason;
+
+    /**
+     * @param sessionId 会话ID
+     * @param onCancelled 取消生效后执行，通常保存部分回答并结束客户端连接
+     */
+    public ActiveStream(String sessionId, Consumer<ActiveStream> onCancelled) {
+        this.sessionId = sessionId;
+        this.onCancelled = onCancelled;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * 追加一个内容片段
+     */
+    public void append(String chunk) {
+        synchronized (content) {
+            content.append(chunk);
+        }
+    }
+
+    /**
+     * 获取已生成的内容
+     */
+    public String getContent() {
+        synchronized (content) {
+            return content.toString();
+        }
+    }
+
+    /**
+     * 绑定上游订阅，已被取消时立即释放
+     */
+    public void bind(Disposable subscription) {
+        this.subscription = subscription;
+        if (cancelReason != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * 标记正常结束（完成或出错）
+     *
+     * @return 本次调用结束了这一轮时返回true，已被取消时返回false
+     */
+    public boolean end() {
+        return ended.compareAndSet(false, true);
+    }
+
+    public boolean isEnded() {
+        return ended.get();
+    }
+
+    /**
+     * 取消上游订阅
+     *
+     * @param reason 取消原因：disconnect、timeout或stop
+     * @return 本次调用取消了这一轮时返回true，已结束或已取消时返回false
+     */
+    boolean cancel(String reason) {
+        if (!ended.compareAndSet(false, true)) {
+            return false;
+        }
+        cancelReason = reason;
+        cancelSignal.tryEmitEmpty();
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        return true;
+    }
+
+    /**
+     * 取消信号，供响应式流截断上游
+     */
+    public Mono<Void> whenCancelled() {
+        return cancelSignal.asMono();
+    }
+
+    public String getCancelReason() {
+        return cancelReason;
+    }
+
+    void notifyCancelled() {
+        onCancelled.accept(this);
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.ChatRoutingProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * 上游自适应并发限制 - 按AIMD调整对单个模型服务同时发出的请求数
+ * 请求成功且并发接近上限时上限加法增长（每轮约+1）；收到429限流或超时时上限乘法下降；
+ * 首个片段延迟超过长期基线的若干倍时视为排队拥塞，上限小幅下降。两次下降之间至少间隔一段时间，
+ * 避免一批同时失败的请求把上限压到底。超出上限的请求进入带截止时间的等待队列，而不是直接失败
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = Logger.getLogger(AdaptiveConcurrencyLimiter.class.getName());
+
+    // 延迟拥塞时的下降比例
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+
+    // 延迟基线的平滑系数
+    private static final double BASELINE_ALPHA = 0.05;
+
+    private final String name;
+    private final ChatRoutingProperties.Limiter settings;
+
+    private final Object lock = new Object();
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private double baselineNanos;
+    private long lastDecreaseMillis;
+    private long rejected;
+    private long timedOut;
+
+    // 排队超时清理线程，start时创建，close时关闭
+    private ScheduledExecutorService expiryScheduler;
+    private ScheduledFuture<?> expiryTask;
+
+    public AdaptiveConcurrencyLimiter(String name, ChatRoutingProperties.Limiter settings) {
+        this.name = name;
+        this.settings = settings;
+        this.limit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), settings.getInitialLimit()));
+    }
+
+    /**
+     * 启动排队超时清理，未启动时排队请求只在取得名额或被取消时离开队列
+     */
+    public synchronized void start() {
+        if (expiryScheduler != null) {
+            return;
+        }
+        expiryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upstream-limiter-expiry-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiryTask = expiryScheduler.scheduleWithFixedDelay(this::expireQueued, 100, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止排队超时清理，仍在排队的请求以UpstreamBusyException结束
+     */
+    public synchronized void close() {
+        if (expiryScheduler == null) {
+            return;
+        }
+        expiryTask.cancel(false);
+        expiryScheduler.shutdownNow();
+        expiryScheduler = null;
+        expiryTask = null;
+        List<Waiter> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(queue);
+            queue.clear();
+        }
+        pending.forEach(waiter -> waiter.sink.error(new UpstreamBusyException(name, "服务正在关闭")));
+    }
+
+    /**
+     * 获取一个并发名额，名额不足时排队等待，队列已满或等待超时时以UpstreamBusyException结束
+     *
+     * @return 名额，请求结束时必须调用release
+     */
+    public Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, System.currentTimeMillis() + settings.getQueueTimeoutMs());
+            sink.onCancel(() -> cancel(waiter));
+            Permit granted = null;
+            boolean full = false;
+            synchronized (lock) {
+                if (queue.isEmpty() && inFlight < (int) limit) {
+                    inFlight++;
+                    granted = new Permit();
+                    waiter.permit = granted;
+                } else if (queue.size() < settings.getQueueCapacity()) {
+                    queue.addLast(waiter);
+                } else {
+                    rejected++;
+                    full = true;
+                }
+            }
+            if (granted != null) {
+                sink.success(granted);
+            } else if (full) {
+                sink.error(new UpstreamBusyException(name, "等待队列已满"));
+            }
+        });
+    }
+
+    /**
+     * 在并发名额内执行流式请求，首个元素到达时记录延迟，结束时按结果归还名额
+     *
+     * @param source 尚未订阅的上游请求
+     * @return 受限的请求
+     */
+    public <T> Flux<T> limit(Flux<T> source) {
+        return acquire().flatMapMany(permit -> {
+            long startNanos = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean();
+            return source
+                .doOnNext(value -> {
+                    if (first.compareAndSet(false, true)) {
+                        permit.recordFirstToken(System.nanoTime() - startNanos);
+                    }
+                })
+                .doOnComplete(() -> permit.release(Outcome.SUCCESS))
+                .doOnError(error -> permit.release(classify(error)))
+                .doOnCancel(() -> permit.release(Outcome.IGNORED));
+        });
+    }
+
+    /**
+     * 在并发名额内执行同步请求，排队时阻塞调用线程
+     * 同步请求的耗时是完整回答的生成时间，与首个片段延迟的基线不可比，归还时不带延迟样本，
+     * 只有限流和超时参与调整
+     *
+     * @param call 上游请求
+     * @return 请求结果
+     */
+    public <T> T limit(Supplier<T> call) {
+        Permit permit = acquire().block();
+        try {
+            T result = call.get();
+            permit.release(Outcome.SUCCESS);
+            return result;
+        } catch (RuntimeException e) {
+            permit.release(classify(e));
+            throw e;
+        }
+    }
+
+    /**
+     * 获取名额的订阅被取消：仍在排队时移出队列，已分配但未送达的名额立即归还
+     */
+    private void cancel(Waiter waiter) {
+        Permit undelivered;
+        synchronized (lock) {
+            if (queue.remove(waiter)) {
+                return;
+            }
+            undelivered = waiter.permit;
+        }
+        if (undelivered != null) {
+            undelivered.release(Outcome.IGNORED);
+        }
+    }
+
+    /**
+     * 归还名额并按结果调整上限，然后按顺序唤醒排队的请求
+     */
+    private void onRelease(Outcome outcome, long ttftNanos) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (lock) {
+            boolean saturated = inFlight >= limit * 0.8;
+            inFlight--;
+            adjust(outcome, ttftNanos, saturated);
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                Waiter waiter = queue.pollFirst();
+                waiter.permit = new Permit();
+                granted.add(waiter);
+            }
+        }
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    private void adjust(Outcome outcome, long ttftNanos, boolean saturated) {
+        long now = System.currentTimeMillis();
+        boolean canDecrease = now - lastDecreaseMillis >= settings.getDecreaseIntervalMs();
+        double previous = limit;
+
+        if (outcome == Outcome.DROPPED) {
+            if (canDecrease) {
+                limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+                lastDecreaseMillis = now;
+            }
+        } else if (outcome == Outcome.SUCCESS) {
+            // 没有延迟样本（同步请求、无输出的流）时只参与增长
+            boolean congested = false;
+            if (ttftNanos > 0) {
+                congested = baselineNanos > 0 && ttftNanos > baselineNanos * settings.getLatencyTolerance();
+                // 基线只用未拥塞的样本更新，缓慢跟随正常延迟的变化
+                if (baselineNanos == 0) {
+                    baselineNanos = ttftNanos;
+                } else if (!congested) {
+                    baselineNanos += (ttftNanos - baselineNanos) * BASELINE_ALPHA;
+                }
+            }
+            if (congested) {
+                if (canDecrease) {
+                    limit = Math.max(settings.getMinLimit(), limit * LATENCY_BACKOFF_RATIO);
+                    lastDecreaseMillis = now;
+                }
+            } else if (saturated) {
+                limit = Math.min(settings.getMaxLimit(), limit + 1.0 / limit);
+            }
+        }
+
+        if ((int) limit != (int) previous && limit < previous) {
+            logger.info(String.format("上游并发上限下调 - 服务: %s, %d -> %d, 原因: %s",
+                name, (int) previous, (int) limit, outcome == Outcome.DROPPED ? "限流或超时" : "首个片段延迟升高"));
+        }
+    }
+
+    /**
+     * 清理已超过截止时间的排队请求
+     */
+    private void expireQueued() {
+        List<Waiter> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Iterator<Waiter> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.deadline < now) {
+                    iterator.remove();
+                    timedOut++;
+                    expired.add(waiter);
+                }
+            }
+        }
+        expired.forEach(waiter -> waiter.sink.error(new UpstreamBusyException(name, "排队等待超时")));
+    }
+
+    /**
+     * 按异常判断请求结果：429限流和超时视为过载，其他错误不调整上限
+     */
+    public static Outcome classify(Throwable error) {
+        String message = error.getMessage();
+        if (message != null && message.contains("429")) {
+            return Outcome.DROPPED;
+        }
+        ChatErrorCategory category = ChatErrorCategory.classify(message);
+        if (category == ChatErrorCategory.RATE_LIMIT || category == ChatErrorCategory.TIMEOUT) {
+            return Outcome.DROPPED;
+        }
+        return Outcome.IGNORED;
+    }
+
+    public int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * 获取限制器统计：当前上限、进行中和排队的请求数、被拒绝和排队超时的次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("queued", queue.size());
+            stats.put("rejected", rejected);
+            stats.put("timedOut", timedOut);
+            stats.put("baselineTtftMs", (long) (baselineNanos / 1_000_000));
+        }
+        return stats;
+    }
+
+    /**
+     * 请求结果
+     */
+    public enum Outcome {
+        // 正常完成
+        SUCCESS,
+        // 被限流或超时，上游已过载
+        DROPPED,
+        // 其他错误或被取消，不参与调整
+        IGNORED
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private final long deadline;
+        // 分配的名额，在锁内设置
+        private Permit permit;
+
+        private Waiter(MonoSink<Permit> sink, long deadline) {
+            this.sink = sink;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 并发名额，只能归还一次
+     */
+    public final class Permit {
+        private boolean released;
+        private long ttftNanos;
+
+        private Permit() {
+        }
+
+        /**
+         * 记录首个片段延迟，成功归还时用于延迟拥塞判断
+         */
+        public void recordFirstToken(long nanos) {
+            this.ttftNanos = nanos;
+        }
+
+        public void release(Outcome outcome) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            onRelease(outcome, ttftNanos);
+        }
+    }
+
+    /**
+     * 上游并发名额不足，请求未发出
+     */
+    public static class UpstreamBusyException extends RuntimeException {
+        public UpstreamBusyException(String endpoint, String reason) {
+            super("upstream busy - " + endpoint + ": " + reason);
+        }
+    }
+}
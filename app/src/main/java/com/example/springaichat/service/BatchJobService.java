@@ -0,0 +1,498 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatSession;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 批量任务 - 一次提交多条提示词，后台按设定的并行度逐条完成
+ * 每条提示词经过与聊天接口相同的会话调度、上下文构建、模型路由和持久化（ChatService.complete）。
+ * 任务和每条提示词的处理结果保存在 chat_batch_jobs / chat_batch_items，完成一条写回一条，
+ * 重启后只处理尚未完成的条目；结果按完成顺序编号，调用方可以在任务运行期间按编号增量读取。
+ * 调用模型前先在条目上记录用户消息ID，重启后重新处理的条目沿用该ID，已保存的问答不会重复写入会话
+ */
+@Service
+public class BatchJobService implements ApplicationRunner {
+
+    private static final Logger logger = Logger.getLogger(BatchJobService.class.getName());
+
+    public static final String JOB_PENDING = "PENDING";
+    public static final String JOB_RUNNING = "RUNNING";
+    public static final String JOB_COMPLETED = "COMPLETED";
+
+    public static final String ITEM_PENDING = "PENDING";
+    public static final String ITEM_SUCCEEDED = "SUCCEEDED";
+    public static final String ITEM_FAILED = "FAILED";
+
+    private static final String INSERT_JOB_SQL =
+        "INSERT INTO chat_batch_jobs (id, status, total, parallelism, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ITEM_SQL =
+        "INSERT INTO chat_batch_items (job_id, item_index, session_id, prompt, status) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_JOB_SQL =
+        "SELECT status, total, parallelism, created_at, finished_at FROM chat_batch_jobs WHERE id = ?";
+
+    private static final String SELECT_JOB_STATUS_SQL =
+        "SELECT status FROM chat_batch_jobs WHERE id = ?";
+
+    private static final String SELECT_UNFINISHED_JOBS_SQL =
+        "SELECT id, parallelism FROM chat_batch_jobs WHERE status IN ('" + JOB_PENDING + "', '" + JOB_RUNNING + "') " +
+        "ORDER BY created_at";
+
+    private static final String UPDATE_JOB_STATUS_SQL =
+        "UPDATE chat_batch_jobs SET status = ?, finished_at = ? WHERE id = ?";
+
+    private static final String SELECT_PENDING_ITEMS_SQL =
+        "SELECT item_index, session_id FROM chat_batch_items WHERE job_id = ? AND status = '" + ITEM_PENDING + "' " +
+        "ORDER BY item_index";
+
+    private static final String SELECT_ITEM_REQUEST_SQL =
+        "SELECT prompt, user_message_id FROM chat_batch_items WHERE job_id = ? AND item_index = ?";
+
+    private static final String ASSIGN_USER_MESSAGE_ID_SQL =
+        "UPDATE chat_batch_items SET user_message_id = ? WHERE job_id = ? AND item_index = ? AND user_message_id IS NULL";
+
+    private static final String SELECT_MAX_SEQ_SQL =
+        "SELECT COALESCE(MAX(seq), 0) FROM chat_batch_items WHERE job_id = ?";
+
+    private static final String FINISH_ITEM_SQL =
+        "UPDATE chat_batch_items SET status = ?, response = ?, error = ?, seq = ?, finished_at = ? " +
+        "WHERE job_id = ? AND item_index = ? AND status = '" + ITEM_PENDING + "'";
+
+    private static final String COUNT_ITEMS_SQL =
+        "SELECT status, COUNT(*) AS cnt FROM chat_batch_items WHERE job_id = ? GROUP BY status";
+
+    private static final String SELECT_RESULTS_SQL =
+        "SELECT seq, item_index, session_id, status, response, error FROM chat_batch_items " +
+        "WHERE job_id = ? AND seq > ? ORDER BY seq LIMIT ?";
+
+    // 结果流每次读取的最大条数
+    private static final int RESULT_PAGE_SIZE = 200;
+
+    // 错误信息的最大长度，与 chat_batch_items.error 列一致
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    // 启动时是否继续处理上次未完成的任务；多实例部署时只应在一个实例上开启
+    @Value("${chat.batch.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+
+    // 同时运行的任务数，其余任务排队
+    @Value("${chat.batch.max-concurrent-jobs:2}")
+    private int maxConcurrentJobs;
+
+    // 单个任务同时处理的提示词数：未指定时的默认值和允许的上限
+    @Value("${chat.batch.default-parallelism:4}")
+    private int defaultParallelism;
+
+    @Value("${chat.batch.max-parallelism:16}")
+    private int maxParallelism;
+
+    // 单个任务最多包含的提示词数
+    @Value("${chat.batch.max-prompts:10000}")
+    private int maxPrompts;
+
+    // 结果流在没有新结果时的轮询间隔（毫秒）
+    @Value("${chat.batch.poll-interval-ms:500}")
+    private long pollIntervalMs;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatService chatService;
+    private final IdGenerator idGenerator;
+
+    // 正在运行或排队的任务，避免同一任务被重复调度
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService executor;
+
+    @Autowired
+    public BatchJobService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                           ChatService chatService, IdGenerator idGenerator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.chatService = chatService;
+        this.idGenerator = idGenerator;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxConcurrentJobs, runnable -> {
+            Thread thread = new Thread(runnable, "batch-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 中断后进行中的条目保持PENDING，下次启动时重新处理
+        executor.shutdownNow();
+    }
+
+    /**
+     * 启动完成后继续处理上次未完成的任务
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!resumeOnStartup) {
+            return;
+        }
+        try {
+            List<Map<String, Object>> jobs = jdbcTemplate.queryForList(SELECT_UNFINISHED_JOBS_SQL);
+            for (Map<String, Object> job : jobs) {
+                schedule((String) job.get("id"), ((Number) job.get("parallelism")).intValue());
+            }
+            if (!jobs.isEmpty()) {
+                logger.info("继续处理未完成的批量任务: " + jobs.size() + " 个");
+            }
+        } catch (Exception e) {
+            logger.severe("恢复批量任务失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 提交批量任务
+     * 未指定会话的提示词在提交时分配新会话ID，重启后继续写入同一会话
+     *
+     * @param prompts 提示词列表
+     * @param parallelism 并行度，为空时使用默认值，超过上限时取上限
+     * @return 任务ID
+     * @throws IllegalArgumentException 提示词列表为空、超过数量上限、包含空提示词或会话ID过长
+     */
+    public String submit(List<BatchPrompt> prompts, Integer parallelism) {
+        if (prompts == null || prompts.isEmpty()) {
+            throw new IllegalArgumentException("提示词列表为空");
+        }
+        if (prompts.size() > maxPrompts) {
+            throw new IllegalArgumentException("提示词数量超过上限" + maxPrompts);
+        }
+        List<Object[]> rows = new ArrayList<>(prompts.size());
+        String jobId = idGenerator.next();
+        for (int i = 0; i < prompts.size(); i++) {
+            BatchPrompt prompt = prompts.get(i);
+            if (prompt == null || prompt.getPrompt() == null || prompt.getPrompt().isBlank()) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条提示词为空");
+            }
+            String sessionId = prompt.getSessionId();
+            if (sessionId == null || sessionId.isEmpty()) {
+                sessionId = idGenerator.next();
+            } else if (sessionId.length() > ChatSession.MAX_ID_LENGTH) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条提示词的会话ID过长，最多" + ChatSession.MAX_ID_LENGTH + "个字符");
+            }
+            rows.add(new Object[] {jobId, i, sessionId, prompt.getPrompt(), ITEM_PENDING});
+        }
+        int effectiveParallelism = parallelism == null
+            ? defaultParallelism
+            : Math.max(1, Math.min(maxParallelism, parallelism));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(INSERT_JOB_SQL, jobId, JOB_PENDING, rows.size(), effectiveParallelism,
+                Timestamp.valueOf(LocalDateTime.now()));
+            jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, rows);
+        });
+        logger.info(String.format("批量任务已提交 - 任务ID: %s, 提示词: %d条, 并行度: %d",
+            jobId, rows.size(), effectiveParallelism));
+
+        schedule(jobId, effectiveParallelism);
+        return jobId;
+    }
+
+    /**
+     * 解析上传的提示词文件：每行一条，以 { 开头的行按JSON解析（prompt、sessionId字段），其余行整行作为提示词，空行忽略
+     *
+     * @param input 文件内容（UTF-8）
+     * @return 提示词列表
+     * @throws IllegalArgumentException JSON行格式错误
+     */
+    public List<BatchPrompt> parsePrompts(InputStream input) throws IOException {
+        List<BatchPrompt> prompts = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.startsWith("{")) {
+                try {
+                    prompts.add(objectMapper.readValue(trimmed, BatchPrompt.class));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("第" + lineNumber + "行不是合法的JSON");
+                }
+            } else {
+                prompts.add(new BatchPrompt(line, null));
+            }
+        }
+        return prompts;
+    }
+
+    /**
+     * 获取任务状态和各状态的条目数
+     *
+     * @param jobId 任务ID
+     * @return 任务状态，任务不存在时为空
+     */
+    public Optional<Map<String, Object>> getStatus(String jobId) {
+        List<Map<String, Object>> jobs = jdbcTemplate.queryForList(SELECT_JOB_SQL, jobId);
+        if (jobs.isEmpty()) {
+            return Optional.empty();
+        }
+        Map<String, Object> job = jobs.get(0);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query(COUNT_ITEMS_SQL, rs -> {
+            counts.put(rs.getString("status"), rs.getLong("cnt"));
+        }, jobId);
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", jobId);
+        status.put("status", job.get("status"));
+        status.put("total", job.get("total"));
+        status.put("succeeded", counts.getOrDefault(ITEM_SUCCEEDED, 0L));
+        status.put("failed", counts.getOrDefault(ITEM_FAILED, 0L));
+        status.put("pending", counts.getOrDefault(ITEM_PENDING, 0L));
+        status.put("parallelism", job.get("parallelism"));
+        status.put("createdAt", toEpochMilli(job.get("created_at")));
+        status.put("finishedAt", toEpochMilli(job.get("finished_at")));
+        return Optional.of(status);
+    }
+
+    /**
+     * 按完成顺序读取任务结果，任务运行期间持续轮询新结果，任务结束且结果读完后以一条 done 记录结束
+     * 每条结果带完成序号seq，连接中断后以最后收到的seq作为after重新读取即可继续
+     *
+     * @param jobId 任务ID
+     * @param after 只返回序号大于该值的结果
+     * @return 结果流
+     */
+    public Flux<Map<String, Object>> streamResults(String jobId, int after) {
+        AtomicInteger cursor = new AtomicInteger(after);
+        AtomicBoolean drained = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        return Mono.fromCallable(() -> nextResults(jobId, cursor, drained, done))
+            .subscribeOn(Schedulers.boundedElastic())
+            // 读满一页时立即读下一页，否则等待一个轮询间隔
+            .repeatWhen(completions -> completions.concatMap(signal -> drained.get()
+                ? Mono.delay(Duration.ofMillis(pollIntervalMs))
+                : Mono.just(signal)))
+            .takeUntil(page -> done.get())
+            .concatMapIterable(page -> page);
+    }
+
+    /**
+     * 读取一页新结果；任务已结束且没有更多结果时追加 done 记录
+     */
+    private List<Map<String, Object>> nextResults(String jobId, AtomicInteger cursor, AtomicBoolean drained,
+                                                  AtomicBoolean done) {
+        // 先读任务状态再读结果：读到已结束时，之后读到的就是全部结果
+        String jobStatus = jdbcTemplate.queryForObject(SELECT_JOB_STATUS_SQL, String.class, jobId);
+        List<Map<String, Object>> page = jdbcTemplate.query(SELECT_RESULTS_SQL, (rs, rowNum) -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("seq", rs.getInt("seq"));
+            result.put("index", rs.getInt("item_index"));
+            result.put("sessionId", rs.getString("session_id"));
+            String status = rs.getString("status");
+            result.put("status", status);
+            if (ITEM_SUCCEEDED.equals(status)) {
+                result.put("response", rs.getString("response"));
+            } else {
+                result.put("error", rs.getString("error"));
+            }
+            return result;
+        }, jobId, cursor.get(), RESULT_PAGE_SIZE);
+
+        if (!page.isEmpty()) {
+            cursor.set((Integer) page.get(page.size() - 1).get("seq"));
+        }
+        drained.set(page.size() < RESULT_PAGE_SIZE);
+        if (drained.get() && JOB_COMPLETED.equals(jobStatus)) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("done", true);
+            getStatus(jobId).ifPresent(summary::putAll);
+            page = new ArrayList<>(page);
+            page.add(summary);
+            done.set(true);
+        }
+        return page;
+    }
+
+    /**
+     * 把任务交给任务线程池，已在运行或排队的任务不重复调度
+     */
+    private void schedule(String jobId, int parallelism) {
+        if (!scheduled.add(jobId)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                runJob(jobId, parallelism);
+            } catch (Exception e) {
+                // 任务保持RUNNING，下次启动时继续
+                logger.severe(String.format("批量任务中断 - 任务ID: %s, 错误: %s", jobId, e.getMessage()));
+            } finally {
+                scheduled.remove(jobId);
+            }
+        });
+    }
+
+    /**
+     * 处理任务中所有未完成的条目
+     * 同一会话的条目按提交顺序依次处理，后一条能看到前一条的对话；不同会话之间按并行度同时处理
+     */
+    private void runJob(String jobId, int parallelism) {
+        long startTime = System.currentTimeMillis();
+        jdbcTemplate.update(UPDATE_JOB_STATUS_SQL, JOB_RUNNING, null, jobId);
+
+        List<PendingItem> pending = jdbcTemplate.query(SELECT_PENDING_ITEMS_SQL,
+            (rs, rowNum) -> new PendingItem(rs.getInt("item_index"), rs.getString("session_id")), jobId);
+        Map<String, List<PendingItem>> bySession = new LinkedHashMap<>();
+        for (PendingItem item : pending) {
+            bySession.computeIfAbsent(item.sessionId, key -> new ArrayList<>()).add(item);
+        }
+        JobProgress progress = new JobProgress(jobId,
+            jdbcTemplate.queryForObject(SELECT_MAX_SEQ_SQL, Integer.class, jobId));
+
+        Flux.fromIterable(bySession.values())
+            .flatMap(items -> Flux.fromIterable(items).concatMap(item -> process(progress, item)), parallelism)
+            .blockLast();
+
+        jdbcTemplate.update(UPDATE_JOB_STATUS_SQL, JOB_COMPLETED, Timestamp.valueOf(LocalDateTime.now()), jobId);
+        logger.info(String.format("批量任务完成 - 任务ID: %s, 本次处理: %d条, 耗时: %dms",
+            jobId, pending.size(), System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * 处理一条提示词并写回结果；模型调用失败时记录为FAILED，不影响其他条目
+     */
+    private Mono<Void> process(JobProgress progress, PendingItem item) {
+        return Mono.fromCallable(() -> loadRequest(progress.jobId, item))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(request -> chatService.complete(item.sessionId, request.prompt, request.userMessageId))
+            .flatMap(response -> Mono.fromRunnable(() -> finishItem(progress, item, ITEM_SUCCEEDED, response, null)))
+            .onErrorResume(error -> {
+                logger.warning(String.format("批量任务条目失败 - 任务ID: %s, 序号: %d, 错误: %s",
+                    progress.jobId, item.index, error.getMessage()));
+                return Mono.fromRunnable(() -> finishItem(progress, item, ITEM_FAILED, null, truncate(error.getMessage())))
+                    .subscribeOn(Schedulers.boundedElastic());
+            })
+            .then();
+    }
+
+    /**
+     * 读取条目的提示词和用户消息ID；首次处理时分配ID并先写入条目，再调用模型
+     */
+    private ItemRequest loadRequest(String jobId, PendingItem item) {
+        ItemRequest request = jdbcTemplate.queryForObject(SELECT_ITEM_REQUEST_SQL,
+            (rs, rowNum) -> new ItemRequest(rs.getString("prompt"), rs.getString("user_message_id")), jobId, item.index);
+        if (request.userMessageId != null) {
+            return request;
+        }
+        String userMessageId = idGenerator.next();
+        jdbcTemplate.update(ASSIGN_USER_MESSAGE_ID_SQL, userMessageId, jobId, item.index);
+        return new ItemRequest(request.prompt, userMessageId);
+    }
+
+    /**
+     * 写回条目结果并分配完成序号
+     * 序号分配和写入在同一把锁内完成，已提交的序号始终连续，读取结果时不会跳过尚未提交的较小序号
+     */
+    private void finishItem(JobProgress progress, PendingItem item, String status, String response, String error) {
+        synchronized (progress) {
+            int seq = progress.seq + 1;
+            int updated = jdbcTemplate.update(FINISH_ITEM_SQL, status, response, error, seq,
+                Timestamp.valueOf(LocalDateTime.now()), progress.jobId, item.index);
+            if (updated == 1) {
+                progress.seq = seq;
+            }
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "未知错误";
+        }
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    private static Long toEpochMilli(Object value) {
+        // 驱动版本不同，DATETIME列可能以Timestamp或LocalDateTime返回
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).getTime();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return null;
+    }
+
+    private static final class PendingItem {
+        private final int index;
+        private final String sessionId;
+
+        private PendingItem(int index, String sessionId) {
+            this.index = index;
+            this.sessionId = sessionId;
+        }
+    }
+
+    private static final class ItemRequest {
+        private final String prompt;
+        private final String userMessageId;
+
+        private ItemRequest(String prompt, String userMessageId) {
+            this.prompt = prompt;
+            this.userMessageId = userMessageId;
+        }
+    }
+
+    /**
+     * 运行中任务的完成序号
+     */
+    private static final class JobProgress {
+        private final String jobId;
+        private int seq;
+
+        private JobProgress(String jobId, int seq) {
+            this.jobId = jobId;
+            this.seq = seq;
+        }
+    }
+}
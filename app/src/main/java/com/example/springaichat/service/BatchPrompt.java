@@ -0,0 +1,36 @@
+package com.example.springaichat.service;
+
+/**
+ * 批量任务中的一条提示词
+ */
+public class BatchPrompt {
+
+    private String prompt;
+
+    // 所属会话，不填时为该条提示词创建新会话
+    private String sessionId;
+
+    public BatchPrompt() {
+    }
+
+    public BatchPrompt(String prompt, String sessionId) {
+        this.prompt = prompt;
+        this.sessionId = sessionId;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.springaichat.service;
+
+/**
+ * 模型调用错误分类 - 按异常信息归类，给出面向用户的提示并作为指标标签
+ */
+public enum ChatErrorCategory {
+
+    // DNS解析错误
+    UNRESOLVED_ADDRESS("unresolved_address", "无法连接到AI服务，请检查网络连接或DNS设置", "UnresolvedAddressException"),
+    // 连接异常
+    CONNECT("connect", "连接AI服务失败，请检查网络连接或防火墙设置", "ConnectException"),
+    // 未知主机
+    UNKNOWN_HOST("unknown_host", "无法解析AI服务地址，请检查DNS设置或网络连接", "UnknownHostException"),
+    // API余额不足
+    INSUFFICIENT_BALANCE("insufficient_balance", "API余额不足，请检查您的DeepSeek账户余额", "Insufficient Balance"),
+    // 本地上游并发名额不足，排队已满或超时
+    UPSTREAM_BUSY("upstream_busy", "AI服务繁忙，当前请求过多，请稍后再试", "upstream busy"),
+    // API限流
+    RATE_LIMIT("rate_limit", "API请求过于频繁，请稍后再试", "rate limit", "Too Many Requests"),
+    // 网络超时
+    TIMEOUT("timeout", "网络连接超时，请检查网络连接或稍后重试", "timeout", "connection"),
+    // API密钥错误
+    API_KEY("api_key", "API密钥配置错误，请检查配置文件", "API key"),
+    // 其他错误
+    OTHER("other", "处理请求时发生错误，请稍后再试"),
+    // 没有错误信息
+    UNKNOWN("unknown", "发生未知错误，请稍后再试。");
+
+    private final String tag;
+    private final String userMessage;
+    private final String[] markers;
+
+    ChatErrorCategory(String tag, String userMessage, String... markers) {
+        this.tag = tag;
+        this.userMessage = userMessage;
+        this.markers = markers;
+    }
+
+    /**
+     * 按异常信息归类，按声明顺序匹配第一个分类
+     *
+     * @param errorMessage 异常信息
+     * @return 错误分类
+     */
+    public static ChatErrorCategory classify(String errorMessage) {
+        if (errorMessage == null) {
+            return UNKNOWN;
+        }
+        for (ChatErrorCategory category : values()) {
+            for (String marker : category.markers) {
+                if (errorMessage.contains(marker)) {
+                    return category;
+                }
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * 指标标签值
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * 面向用户的错误提示
+     */
+    public String getUserMessage() {
+        return userMessage;
+    }
+}
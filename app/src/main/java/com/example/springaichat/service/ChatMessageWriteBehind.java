@@ -0,0 +1,417 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 消息异步批量持久化（write-behind）
+ * 消息先进入有界队列，按批大小或时间间隔以JDBC批量写入；
+ * 会话摘要更新只针对写入成功的消息，同一会话在一批内合并为一条UPDATE，与消息插入在同一事务中。
+ * 应用关闭时在时限内刷完队列。
+ */
+@Component
+public class ChatMessageWriteBehind {
+
+    private static final Logger logger = Logger.getLogger(ChatMessageWriteBehind.class.getName());
+
+    private static final String INSERT_MESSAGE_SQL =
+        "INSERT INTO chat_messages (id, session_id, role, timestamp, status, token_count) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // 正文存放在副表，与消息行在同一事务中写入
+    private static final String INSERT_CONTENT_SQL =
+        "INSERT INTO chat_message_contents (message_id, content) VALUES (?, ?)";
+
+    private static final String UPDATE_SESSION_SQL =
+        "UPDATE chat_sessions SET message_count = message_count + ?, last_preview = COALESCE(?, last_preview), " +
+        "last_activity_at = ?, updated_at = ? WHERE id = ?";
+
+    // 是否启用异步批量持久化，关闭时所有写入走同步JPA路径
+    @Value("${chat.persistence.write-behind.enabled:false}")
+    private boolean enabled;
+
+    // 单批最多写入的消息条数
+    @Value("${chat.persistence.write-behind.batch-size:100}")
+    private int batchSize;
+
+    // 最长刷新间隔（毫秒）
+    @Value("${chat.persistence.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    // 队列容量，队列已满时调用方回退为同步写入
+    @Value("${chat.persistence.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 关闭时刷完队列的最长时间（毫秒），超时仍未写入的消息记录日志后丢弃
+    @Value("${chat.persistence.write-behind.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatMetrics chatMetrics;
+
+    private BlockingQueue<PendingMessage> queue;
+    // 已从队列取出、正在写入的批次，读取未落库消息时一并查看
+    private volatile List<PendingMessage> inFlight = Collections.emptyList();
+
+    // 入队序号在锁内分配，队列中的消息严格按序号排列
+    private final Object enqueueLock = new Object();
+    private long lastSequence;
+
+    // 写入一批时持有；丢弃会话时持有，保证丢弃返回后不会再有该会话的旧消息写入
+    private final Object flushLock = new Object();
+    // 会话ID -> 丢弃时的入队序号，序号不大于它的消息不再写入
+    private final Map<String, Long> discardMarks = new HashMap<>();
+
+    private final AtomicLong flushedMessages = new AtomicLong();
+    private final AtomicLong flushedBatches = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Autowired
+    public ChatMessageWriteBehind(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ChatMetrics chatMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.chatMetrics = chatMetrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = new Thread(this::flushLoop, "chat-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info(String.format("消息异步批量持久化已启用 - 批大小: %d, 刷新间隔: %dms, 队列容量: %d",
+            batchSize, flushIntervalMs, queueCapacity));
+    }
+
+    /**
+     * 关闭时停止接收新消息，由刷新线程在时限内把队列中剩余的消息写入数据库
+     * 不中断刷新线程，正在进行的JDBC批量写入会正常完成
+     */
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        try {
+            // 刷新线程最多再凑一批（两个刷新间隔）后开始收尾
+            flusher.join(2 * flushIntervalMs + shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            logger.severe(String.format("关闭时未能在 %dms 内写完异步写入队列，剩余 %d 条消息",
+                shutdownTimeoutMs, queue.size()));
+        }
+        logger.info(String.format("消息异步批量持久化已停止 - 共写入 %d 条消息, %d 个批次, 失败 %d 条",
+            flushedMessages.get(), flushedBatches.get(), failedMessages.get()));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将消息加入写入队列
+     *
+     * @param sessionId 会话ID
+     * @param message 待保存的消息
+     * @param preview 用户消息的会话预览，AI消息传null
+     * @return 是否已入队；未启用或队列已满时返回false，调用方应同步写入
+     */
+    public boolean enqueue(String sessionId, ChatMessage message, String preview) {
+        if (!enabled || !running) {
+            return false;
+        }
+        boolean accepted;
+        synchronized (enqueueLock) {
+            accepted = queue.offer(new PendingMessage(lastSequence + 1, sessionId, message, preview));
+            if (accepted) {
+                lastSequence++;
+            }
+        }
+        if (!accepted) {
+            logger.warning("异步写入队列已满，回退为同步写入 - 会话ID: " + sessionId);
+        }
+        return accepted;
+    }
+
+    /**
+     * 获取指定会话尚未落库的消息
+     */
+    public List<ChatMessage> pendingMessages(String sessionId) {
+        List<ChatMessage> pending = new ArrayList<>();
+        if (!enabled) {
+            return pending;
+        }
+        for (PendingMessage item : inFlight) {
+            if (item.sessionId.equals(sessionId)) {
+                pending.add(item.message);
+            }
+        }
+        for (PendingMessage item : queue) {
+            if (item.sessionId.equals(sessionId)) {
+                pending.add(item.message);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 丢弃指定会话尚未写入的消息，在清除历史或删除会话前调用
+     * 包括已从队列取出、尚未写入的批次；该会话的消息正在写入时等待写入结束，之后的删除会一并清除
+     */
+    public void discardSession(String sessionId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (flushLock) {
+            long mark;
+            synchronized (enqueueLock) {
+                mark = lastSequence;
+            }
+            discardMarks.put(sessionId, mark);
+            queue.removeIf(item -> item.sessionId.equals(sessionId));
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                flushMessages(collectBatch());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.severe("异步批量写入失败: " + e.getMessage());
+            }
+        }
+        drainAll(System.currentTimeMillis() + shutdownTimeoutMs);
+    }
+
+    /**
+     * 等待第一条消息，然后在刷新间隔内凑满一批
+     */
+    private List<PendingMessage> collectBatch() throws InterruptedException {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + flushIntervalMs;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    /**
+     * 关闭时写完队列，超过时限后停止并记录未写入的条数
+     */
+    private void drainAll(long deadline) {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flushMessages(batch);
+            batch = new ArrayList<>(batchSize);
+            if (System.currentTimeMillis() >= deadline && !queue.isEmpty()) {
+                logger.severe(String.format("关闭时刷新超时，丢弃 %d 条未写入的消息", queue.size()));
+                return;
+            }
+        }
+    }
+
+    private void flushMessages(List<PendingMessage> taken) {
+        if (taken.isEmpty()) {
+            return;
+        }
+        synchronized (flushLock) {
+            List<PendingMessage> batch = withoutDiscarded(taken);
+            if (batch.isEmpty()) {
+                return;
+            }
+            inFlight = batch;
+            long startNanos = System.nanoTime();
+            try {
+                List<Object[]> args = new ArrayList<>(batch.size());
+                List<Object[]> contentArgs = new ArrayList<>(batch.size());
+                for (PendingMessage item : batch) {
+                    args.add(toInsertArgs(item));
+                    contentArgs.add(toContentArgs(item));
+                }
+                List<Object[]> sessionArgs = toSessionArgs(batch);
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, args);
+                    jdbcTemplate.batchUpdate(INSERT_CONTENT_SQL, contentArgs);
+                    jdbcTemplate.batchUpdate(UPDATE_SESSION_SQL, sessionArgs);
+                });
+                flushedMessages.addAndGet(batch.size());
+                flushedBatches.incrementAndGet();
+            } catch (Exception e) {
+                // 批量失败时逐条重试，隔离出问题的消息（例如所属会话已被删除），失败的消息不更新会话摘要
+                logger.warning("批量写入消息失败，改为逐条写入: " + e.getMessage());
+                for (PendingMessage item : batch) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> {
+                            jdbcTemplate.update(INSERT_MESSAGE_SQL, toInsertArgs(item));
+                            jdbcTemplate.update(INSERT_CONTENT_SQL, toContentArgs(item));
+                            jdbcTemplate.update(UPDATE_SESSION_SQL, toSessionArgs(List.of(item)).get(0));
+                        });
+                        flushedMessages.incrementAndGet();
+                    } catch (Exception rowError) {
+                        failedMessages.incrementAndGet();
+                        logger.severe(String.format("写入消息失败 - 消息ID: %s, 会话ID: %s, 原因: %s",
+                            item.message.getId(), item.sessionId, rowError.getMessage()));
+                    }
+                }
+            } finally {
+                inFlight = Collections.emptyList();
+                chatMetrics.recordWriteBehindFlush(System.nanoTime() - startNanos, batch.size());
+            }
+        }
+    }
+
+    /**
+     * 去掉取出后才被丢弃的会话的消息，须持有flushLock
+     * 队列按序号排列，取到的最大序号之前的消息都已出队，不大于它的丢弃标记不再需要
+     */
+    private List<PendingMessage> withoutDiscarded(List<PendingMessage> taken) {
+        long maxSequence = taken.get(taken.size() - 1).sequence;
+        if (discardMarks.isEmpty()) {
+            return taken;
+        }
+        List<PendingMessage> batch = new ArrayList<>(taken.size());
+        for (PendingMessage item : taken) {
+            Long mark = discardMarks.get(item.sessionId);
+            if (mark == null || item.sequence > mark) {
+                batch.add(item);
+            }
+        }
+        discardMarks.values().removeIf(mark -> mark <= maxSequence);
+        return batch;
+    }
+
+    /**
+     * 合并一批消息的会话摘要更新，每个会话一条UPDATE
+     */
+    private static List<Object[]> toSessionArgs(List<PendingMessage> batch) {
+        Map<String, SessionTouch> touches = new LinkedHashMap<>();
+        for (PendingMessage item : batch) {
+            touches.merge(item.sessionId, new SessionTouch(1, item.preview, item.message.getTimestamp()), SessionTouch::merge);
+        }
+        List<Object[]> args = new ArrayList<>(touches.size());
+        touches.forEach((sessionId, touch) -> {
+            Timestamp at = Timestamp.valueOf(touch.lastActivity);
+            args.add(new Object[]{touch.messageDelta, touch.preview, at, at, sessionId});
+        });
+        return args;
+    }
+
+    private static Object[] toInsertArgs(PendingMessage item) {
+        ChatMessage message = item.message;
+        return new Object[]{
+            message.getId(),
+            item.sessionId,
+            message.getRole(),
+            Timestamp.valueOf(message.getTimestamp()),
+            message.getStatus(),
+            message.getTokenCount()
+        };
+    }
+
+    private static Object[] toContentArgs(PendingMessage item) {
+        return new Object[]{item.message.getId(), item.message.getContent()};
+    }
+
+    public int getQueueSize() {
+        return enabled ? queue.size() : 0;
+    }
+
+    public long getFlushedMessages() {
+        return flushedMessages.get();
+    }
+
+    public long getFlushedBatches() {
+        return flushedBatches.get();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    /**
+     * 待写入的消息
+     */
+    private static final class PendingMessage {
+        private final long sequence;
+        private final String sessionId;
+        private final ChatMessage message;
+        // 用户消息的会话预览，AI消息为null
+        private final String preview;
+
+        private PendingMessage(long sequence, String sessionId, ChatMessage message, String preview) {
+            this.sequence = sequence;
+            this.sessionId = sessionId;
+            this.message = message;
+            this.preview = preview;
+        }
+    }
+
+    /**
+     * 合并后的会话摘要更新
+     */
+    private static final class SessionTouch {
+        private final int messageDelta;
+        private final String preview;
+        private final LocalDateTime lastActivity;
+
+        private SessionTouch(int messageDelta, String preview, LocalDateTime lastActivity) {
+            this.messageDelta = messageDelta;
+            this.preview = preview;
+            this.lastActivity = lastActivity;
+        }
+
+        private SessionTouch merge(SessionTouch newer) {
+            return new SessionTouch(
+                messageDelta + newer.messageDelta,
+                newer.preview != null ? newer.preview : preview,
+                newer.lastActivity.isAfter(lastActivity) ? newer.lastActivity : lastActivity);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.springaichat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 聊天链路指标 - 首个片段延迟、片段间隔、流总时长、吞吐、进行中和排队的流数量、模型调用错误
+ * 单轮输出的指标带有实际输出回答的服务和模型标签（endpoint、model），路由到多个服务时分别统计；
+ * 仓库方法的读写耗时由Spring Data的spring.data.repository.invocations指标提供
+ */
+@Component
+public class ChatMetrics {
+
+    private final MeterRegistry registry;
+
+    public ChatMetrics(MeterRegistry registry,
+                       StreamDispatcher streamDispatcher,
+                       SessionTurnScheduler sessionTurnScheduler,
+                       StreamCancellation streamCancellation,
+                       SessionCache sessionCache) {
+        this.registry = registry;
+
+        Gauge.builder("chat.streams.active", streamCancellation, StreamCancellation::getActiveCount)
+            .description("正在输出的回答数量（两种模式）")
+            .register(registry);
+        Gauge.builder("chat.streams.dispatcher.active", streamDispatcher, StreamDispatcher::getActiveStreams)
+            .description("占用流式调度名额的流数量")
+            .register(registry);
+        Gauge.builder("chat.streams.flush.threads", streamDispatcher, StreamDispatcher::getFlushThreads)
+            .description("执行SSE延迟发送的线程数")
+            .register(registry);
+        Gauge.builder("chat.streams.queued", streamDispatcher, StreamDispatcher::getQueuedStreams)
+            .tag("queue", "dispatcher")
+            .description("等待流式调度名额的流数量")
+            .register(registry);
+        Gauge.builder("chat.streams.queued", sessionTurnScheduler, SessionTurnScheduler::getQueuedTurns)
+            .tag("queue", "session")
+            .description("等待同一会话前一轮结束的消息数量")
+            .register(registry);
+        Gauge.builder("chat.session.cache.size", sessionCache, SessionCache::size)
+            .description("会话缓存中的会话数量")
+            .register(registry);
+        FunctionCounter.builder("chat.session.cache.requests", sessionCache, SessionCache::getHits)
+            .tag("result", "hit")
+            .description("会话缓存的查询次数")
+            .register(registry);
+        FunctionCounter.builder("chat.session.cache.requests", sessionCache, SessionCache::getMisses)
+            .tag("result", "miss")
+            .description("会话缓存的查询次数")
+            .register(registry);
+    }
+
+    /**
+     * 开始记录一轮输出
+     *
+     * @param mode 流式模式：emitter或reactive
+     * @param source 内容来源：model或cache
+     * @param startNanos 开始处理的时间（System.nanoTime），首个片段延迟从此时算起
+     * @param route 路由模型写入的实际输出回答的服务，缓存回放时不会写入
+     * @return 本轮的记录器
+     */
+    public StreamRecorder startStream(String mode, String source, long startNanos, RoutingChatModel.Route route) {
+        return new StreamRecorder(mode, source, startNanos, route);
+    }
+
+    /**
+     * 记录一次模型调用错误
+     */
+    public void recordError(ChatErrorCategory category) {
+        Counter.builder("chat.upstream.errors")
+            .description("模型调用错误次数")
+            .tag("category", category.getTag())
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * 记录一次异步批量写入
+     *
+     * @param nanos 耗时（纳秒）
+     * @param rows 写入的消息条数
+     */
+    public void recordWriteBehindFlush(long nanos, int rows) {
+        Timer.builder("chat.persistence.flush")
+            .description("消息批量写入耗时")
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("chat.persistence.flush.rows")
+            .description("每批写入的消息条数")
+            .register(registry)
+            .record(rows);
+    }
+
+    /**
+     * 记录一个会话的归档
+     *
+     * @param rawBytes 归档前的NDJSON字节数
+     * @param compressedBytes 压缩后的字节数
+     */
+    public void recordArchive(long rawBytes, long compressedBytes) {
+        Counter.builder("chat.archive.sessions")
+            .description("已归档的会话数")
+            .register(registry)
+            .increment();
+        DistributionSummary.builder("chat.archive.compression_ratio")
+            .description("归档压缩比（原始字节/压缩字节）")
+            .register(registry)
+            .record(compressedBytes > 0 ? (double) rawBytes / compressedBytes : 0);
+    }
+
+    /**
+     * 记录一次归档会话的恢复
+     *
+     * @param nanos 耗时（纳秒）
+     * @param rows 恢复的消息条数
+     */
+    public void recordRehydration(long nanos, int rows) {
+        Timer.builder("chat.archive.rehydration")
+            .description("归档会话恢复耗时")
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("chat.archive.rehydration.rows")
+            .description("每次恢复的消息条数")
+            .register(registry)
+            .record(rows);
+    }
+
+    /**
+     * 记录一次路由到模型服务的请求
+     *
+     * @param endpoint 服务名称
+     * @param outcome 结束方式：completed、cancelled或error
+     */
+    public void recordRoutedRequest(String endpoint, String outcome) {
+        Counter.builder("chat.routing.requests")
+            .description("路由到各模型服务的请求数")
+            .tags("endpoint", endpoint, "outcome", outcome)
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * 登记一个模型服务的并发限制器，导出当前上限、进行中和排队的请求数
+     *
+     * @param endpoint 服务名称
+     * @param limiter 并发限制器
+     */
+    public void registerLimiter(String endpoint, AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("chat.upstream.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .description("对模型服务的自适应并发上限")
+            .tag("endpoint", endpoint)
+            .register(registry);
+        Gauge.builder("chat.upstream.in_flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .description("已发往模型服务的请求数")
+            .tag("endpoint", endpoint)
+            .register(registry);
+        Gauge.builder("chat.upstream.queued", limiter, AdaptiveConcurrencyLimiter::getQueued)
+            .description("等待并发名额的请求数")
+            .tag("endpoint", endpoint)
+            .register(registry);
+    }
+
+    /**
+     * 记录一次对冲请求
+     *
+     * @param primary 首个片段超时的服务
+     * @param backup 发起对冲请求的服务
+     */
+    public void recordHedge(String primary, String backup) {
+        Counter.builder("chat.routing.hedges")
+            .description("首个片段超时后发起的对冲请求数")
+            .tags("primary", primary, "backup", backup)
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * 单轮输出的记录器，片段到达时在上游线程上调用，不需要同步
+     */
+    public final class StreamRecorder {
+        private final String mode;
+        private final String source;
+        private final long startNanos;
+        private final RoutingChatModel.Route route;
+        // 只由输出片段的线程写入，结束时可能在取消或超时线程上读取
+        private volatile long firstNanos;
+        private volatile long lastNanos;
+        private volatile long tokens;
+        private volatile long bytes;
+        // 完成、取消和超时可能在不同线程上同时结束本轮，只记录一次
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private StreamRecorder(String mode, String source, long startNanos, RoutingChatModel.Route route) {
+            this.mode = mode;
+            this.source = source;
+            this.startNanos = startNanos;
+            this.route = route;
+        }
+
+        /**
+         * 记录一个内容片段
+         */
+        public void onContent(String chunk) {
+            long now = System.nanoTime();
+            if (firstNanos == 0) {
+                firstNanos = now;
+                timer("chat.stream.ttft", "从开始处理到首个片段的时间").record(now - startNanos, TimeUnit.NANOSECONDS);
+            } else {
+                timer("chat.stream.inter_token_gap", "相邻片段的间隔").record(now - lastNanos, TimeUnit.NANOSECONDS);
+            }
+            lastNanos = now;
+            tokens += TokenEstimator.estimate(chunk);
+            bytes += SseFrameWriter.utf8Length(chunk);
+        }
+
+        /**
+         * 记录本轮结束，可重复调用
+         *
+         * @param outcome 结束方式：completed、cancelled或error
+         */
+        public void finish(String outcome) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            Timer.builder("chat.stream.duration")
+                .description("一轮输出的总时长")
+                .tags(tags())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+            counter("chat.stream.tokens", "输出的token数（估算）").increment(tokens);
+            counter("chat.stream.bytes", "输出的内容字节数").increment(bytes);
+
+            // 吞吐按首个片段之后的时长计算，排除等待首个片段的时间
+            if (firstNanos != 0 && lastNanos > firstNanos) {
+                double seconds = (lastNanos - firstNanos) / 1e9;
+                summary("chat.stream.tokens_per_second", "单轮输出的token速率").record(tokens / seconds);
+                summary("chat.stream.bytes_per_second", "单轮输出的字节速率").record(bytes / seconds);
+            }
+        }
+
+        /**
+         * 模式、来源、服务和模型标签；缓存回放、以及与其他请求共享上游流的一轮没有服务，标为none
+         */
+        private String[] tags() {
+            String endpoint = route != null ? route.getEndpoint() : null;
+            String model = route != null ? route.getModel() : null;
+            return new String[]{
+                "mode", mode,
+                "source", source,
+                "endpoint", endpoint != null ? endpoint : "none",
+                "model", model != null ? model : "none"
+            };
+        }
+
+        private Timer timer(String name, String description) {
+            return Timer.builder(name)
+                .description(description)
+                .tags(tags())
+                .publishPercentileHistogram()
+                .register(registry);
+        }
+
+        private Counter counter(String name, String description) {
+            return Counter.builder(name)
+                .description(description)
+                .tags(tags())
+                .register(registry);
+        }
+
+        private DistributionSummary summary(String name, String description) {
+            return DistributionSummary.builder(name)
+                .description(description)
+                .tags(tags())
+                .publishPercentileHistogram()
+                .register(registry);
+        }
+    }
+}
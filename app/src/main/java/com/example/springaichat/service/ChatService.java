@@ -0,0 +1,1233 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.entity.ChatSession;
+import com.example.springaichat.repository.ChatMessageRepository;
+import com.example.springaichat.repository.ChatSessionRepository;
+import com.example.springaichat.repository.ChatSessionSummary;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.logging.Logger;
+
+/**
+ * 聊天服务类 - 封装AI模型交互逻辑
+ * 负责处理用户消息、管理对话历史和调用AI模型
+ */
+@Service
+public class ChatService {
+    
+    private static final Logger logger = Logger.getLogger(ChatService.class.getName());
+    
+    private final ChatClient chatClient;
+    private final ChatSessionRepository sessionRepository;
+    private final ChatMessageRepository messageRepository;
+    
+    // 流式请求调度器，负责执行线程和准入控制；会话轮次调度器保证同一会话逐轮处理
+    private final StreamDispatcher streamDispatcher;
+    private final SessionTurnScheduler sessionTurnScheduler;
+    
+    // 最近对话缓存，构建提示词时优先使用
+    private final RecentTurnCache recentTurnCache;
+    
+    // 消息异步批量持久化
+    private final ChatMessageWriteBehind writeBehind;
+    
+    // SSE写入器工厂和可续传事件流登记
+    private final SseFrameWriterFactory sseFrameWriterFactory;
+    private final TurnStreamRegistry turnStreamRegistry;
+    
+    // 断开、超时和主动停止时取消模型输出
+    private final StreamCancellation streamCancellation;
+    
+    // 链路指标
+    private final ChatMetrics chatMetrics;
+    
+    // 消息和会话ID生成器
+    private final IdGenerator idGenerator;
+    
+    // 冷会话归档和按需恢复
+    private final SessionArchiver sessionArchiver;
+    
+    // 会话元数据缓存
+    private final SessionCache sessionCache;
+    
+    // 聊天记录全文索引
+    private final SearchIndex searchIndex;
+    
+    // 多模型服务路由，ChatClient的调用都经过它
+    private final RoutingChatModel routingChatModel;
+    
+    // 模型响应缓存和相同提示词的并发合并
+    private final PromptFingerprint promptFingerprint;
+    private final ResponseCache responseCache;
+    private final SingleFlight singleFlight;
+    
+    // 上下文窗口构建和滚动摘要
+    private final ContextWindowBuilder contextWindowBuilder;
+    private final ConversationSummarizer conversationSummarizer;
+    
+    // 会话预览的最大字符数
+    private static final int PREVIEW_LENGTH = 30;
+    
+    // 消息分页的最大页大小
+    private static final int MAX_PAGE_SIZE = 200;
+    
+    // 全文检索单次返回的最大条数
+    private static final int MAX_SEARCH_RESULTS = 100;
+    
+    // 缓存回放时每个片段的字符数
+    private static final int REPLAY_CHUNK_CHARS = 16;
+    
+    // 取消时发送给客户端的完成事件
+    private static final String CANCELLED_EVENT = "{\"done\":true,\"cancelled\":true}";
+    
+    // SSE超时时间（5分钟）
+    private static final long SSE_TIMEOUT = 5 * 60 * 1000L;
+
+    @Autowired
+    public ChatService(ChatClient chatClient, 
+                      ChatSessionRepository sessionRepository,
+                      ChatMessageRepository messageRepository,
+                      StreamDispatcher streamDispatcher,
+                      SessionTurnScheduler sessionTurnScheduler,
+                      RecentTurnCache recentTurnCache,
+                      ChatMessageWriteBehind writeBehind,
+                      SseFrameWriterFactory sseFrameWriterFactory,
+                      TurnStreamRegistry turnStreamRegistry,
+                      ContextWindowBuilder contextWindowBuilder,
+                      ConversationSummarizer conversationSummarizer,
+                      PromptFingerprint promptFingerprint,
+                      ResponseCache responseCache,
+                      SingleFlight singleFlight,
+                      StreamCancellation streamCancellation,
+                      ChatMetrics chatMetrics,
+                      IdGenerator idGenerator,
+                      SessionArchiver sessionArchiver,
+                      SessionCache sessionCache,
+                      SearchIndex searchIndex,
+                      RoutingChatModel routingChatModel) {
+        this.chatClient = chatClient;
+        this.sessionRepository = sessionRepository;
+        this.messageRepository = messageRepository;
+        this.streamDispatcher = streamDispatcher;
+        this.sessionTurnScheduler = sessionTurnScheduler;
+        this.recentTurnCache = recentTurnCache;
+        this.writeBehind = writeBehind;
+        this.sseFrameWriterFactory = sseFrameWriterFactory;
+        this.turnStreamRegistry = turnStreamRegistry;
+        this.contextWindowBuilder = contextWindowBuilder;
+        this.conversationSummarizer = conversationSummarizer;
+        this.promptFingerprint = promptFingerprint;
+        this.responseCache = responseCache;
+        this.singleFlight = singleFlight;
+        this.streamCancellation = streamCancellation;
+        this.chatMetrics = chatMetrics;
+        this.idGenerator = idGenerator;
+        this.sessionArchiver = sessionArchiver;
+        this.sessionCache = sessionCache;
+        this.searchIndex = searchIndex;
+        this.routingChatModel = routingChatModel;
+    }
+    
+    /**
+     * 处理聊天请求，使用SseEmitter返回标准SSE流式响应
+     * 
+     * @param sessionId 会话ID
+     * @param userMessage 用户消息内容
+     * @return SseEmitter对象，用于流式推送AI响应
+     */
+    public SseEmitter chatStream(String sessionId, String userMessage) {
+        logger.info(String.format("开始流式聊天 - 会话ID: %s, 消息长度: %d", sessionId, userMessage.length()));
+        
+        // 创建SseEmitter，设置超时时间
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        // 本轮的事件流（可续传时带事件ID和回放缓冲）和合并式写入器
+        TurnStream turn = turnStreamRegistry.open(emitter);
+        SseFrameWriter writer = sseFrameWriterFactory.create(turn);
+        
+        // 同一会话的消息按顺序逐轮处理，轮到本轮后再经准入控制异步执行，饱和时以SSE错误事件拒绝
+        String sessionKey = (sessionId == null || sessionId.isEmpty()) ? "default" : sessionId;
+        // 本轮的模型输出：断开、超时或主动停止时取消上游订阅，保存已生成的部分
+        ActiveStream active = new ActiveStream(sessionKey, cancelled -> onStreamCancelled(writer, cancelled));
+        SessionTurnScheduler.Turn sessionTurn = sessionTurnScheduler.submit(sessionKey, started -> {
+            StreamDispatcher.Ticket ticket = streamDispatcher.dispatch(() -> {
+                try {
+                    processStreamingChat(writer, active, userMessage);
+                } catch (Exception e) {
+                    logger.severe("流式聊天处理异常: " + e.getMessage());
+                    handleStreamError(writer, e);
+                }
+            }, reason -> rejectStream(writer, reason));
+            // 本轮结束时归还并发名额
+            turn.onFinish(ticket::release);
+        }, reason -> rejectStream(writer, reason));
+        
+        // 本轮结束时停止写入并让会话的下一轮开始；客户端离开（断开且不再续传）而结束时取消仍在进行的模型输出。
+        // 服务端完成、出错或拒绝时本轮已结束或从未开始，不计为断开
+        turn.onFinish(() -> {
+            if (writer.isFinishedByServer()) {
+                active.end();
+            } else {
+                streamCancellation.cancel(active, "disconnect");
+            }
+            writer.close();
+            sessionTurn.release();
+        });
+        
+        // 连接结束（完成、超时或出错）时移除连接；不可续传时直接结束本轮
+        emitter.onCompletion(() -> {
+            turn.detach(emitter);
+            if (!turn.isResumable()) {
+                turn.finish(null);
+            }
+        });
+        
+        // 设置超时回调
+        emitter.onTimeout(() -> {
+            logger.warning("SSE连接超时 - 会话ID: " + sessionId);
+            streamCancellation.cancel(active, "timeout");
+            emitter.complete();
+        });
+        
+        // 设置错误回调
+        emitter.onError((ex) -> {
+            logger.severe("SSE连接错误: " + ex.getMessage());
+            emitter.complete();
+        });
+        
+        return emitter;
+    }
+    
+    /**
+     * 处理流式聊天的核心逻辑
+     */
+    private void processStreamingChat(SseFrameWriter writer, ActiveStream active, String userMessage) {
+        final String sessionId = active.getSessionId();
+        long startNanos = System.nanoTime();
+        
+        try {
+            // 保存用户消息、构建上下文并查询响应缓存
+            PreparedTurn prepared = prepareTurn(sessionId, userMessage);
+            ChatMetrics.StreamRecorder recorder = chatMetrics.startStream("emitter", prepared.source(), startNanos, prepared.route);
+            
+            // 完全相同的提示词命中缓存时直接回放，不再调用模型；
+            // 未命中时与正在进行的相同调用共享上游流，节省的token在共享的上游被取消时统计
+            Flux<String> contentStream = prepared.cachedResponse != null
+                ? Flux.fromIterable(splitForReplay(prepared.cachedResponse))
+                : singleFlight.share(prepared.cacheKey,
+                    () -> streamCancellation.trackUpstream(streamModelContent(prepared.messages, prepared.route)));
+            streamCancellation.register(active);
+            
+            // 流式返回模型输出或缓存回放，保留订阅以便取消
+            active.bind(contentStream
+                .doOnNext(content -> {
+                    try {
+                        // 收集完整响应
+                        active.append(content);
+                        recorder.onContent(content);
+                        
+                        // 追加到当前帧，由写入器决定何时发送
+                        writer.append(content);
+                    } catch (IOException e) {
+                        logger.severe("发送SSE数据失败: " + e.getMessage());
+                        throw new RuntimeException(e);
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (!active.end()) {
+                        // 已被取消，部分回答由取消流程保存
+                        return;
+                    }
+                    streamCancellation.unregister(active);
+                    recorder.finish("completed");
+                    try {
+                        // 保存完整响应到数据库并写入响应缓存
+                        String completeResponse = active.getContent();
+                        completeTurn(prepared, completeResponse);
+                        
+                        // 发送剩余内容和完成事件
+                        writer.sendEvent("message", "{\"done\":true}");
+                        
+                        // 结束本轮的所有连接
+                        writer.complete();
+                        
+                        logger.info(String.format("流式响应完成 - 会话ID: %s, 响应长度: %d", 
+                            sessionId, completeResponse.length()));
+                    } catch (IOException e) {
+                        logger.severe("发送完成事件失败: " + e.getMessage());
+                        writer.completeWithError(e);
+                    }
+                })
+                .doOnError(error -> {
+                    if (writer.isClientGone()) {
+                        // 写入时发现客户端已断开，按断开取消并保存已生成的部分，不计为模型错误
+                        if (streamCancellation.cancel(active, "disconnect")) {
+                            recorder.finish("cancelled");
+                        }
+                        return;
+                    }
+                    if (!active.end()) {
+                        return;
+                    }
+                    streamCancellation.unregister(active);
+                    recorder.finish("error");
+                    chatMetrics.recordError(ChatErrorCategory.classify(error.getMessage()));
+                    logger.severe("AI模型调用错误: " + error.getMessage());
+                    handleStreamError(writer, error);
+                })
+                .doOnCancel(() -> recorder.finish("cancelled"))
+                .subscribe());
+                
+        } catch (Exception e) {
+            logger.severe("处理流式聊天时发生错误: " + e.getMessage());
+            handleStreamError(writer, e);
+        }
+    }
+    
+    /**
+     * 处理聊天请求，直接返回响应式SSE事件流（/ai/chat?mode=reactive）
+     * 客户端的读取速度通过背压传递到模型的流式响应，流的生命周期内不占用执行线程；
+     * 与默认模式共用流式调度的并发名额和排队；阻塞的数据库操作在boundedElastic上执行
+     * 
+     * @param sessionIdParam 会话ID
+     * @param userMessage 用户消息内容
+     * @return SSE事件流
+     */
+    public Flux<ServerSentEvent<String>> chatReactive(String sessionIdParam, String userMessage) {
+        final String sessionId = (sessionIdParam == null || sessionIdParam.isEmpty()) ? "default" : sessionIdParam;
+        logger.info(String.format("开始响应式流式聊天 - 会话ID: %s, 消息长度: %d", sessionId, userMessage.length()));
+        
+        // 主动停止或客户端断开时保存已生成的部分（在boundedElastic上写库）
+        ActiveStream active = new ActiveStream(sessionId,
+            cancelled -> Schedulers.boundedElastic().schedule(() -> persistCancelled(cancelled)));
+        
+        return Flux.usingWhen(acquireTurn(sessionId),
+                turn -> Flux.usingWhen(admitStream(),
+                    ticket -> {
+                        long startNanos = System.nanoTime();
+                        return Mono.fromCallable(() -> prepareTurn(sessionId, userMessage))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMapMany(prepared -> reactiveContent(prepared, active,
+                                chatMetrics.startStream("reactive", prepared.source(), startNanos, prepared.route)));
+                    },
+                    ticket -> Mono.fromRunnable(ticket::release)),
+                turn -> Mono.fromRunnable(turn::release))
+            .onErrorResume(error -> {
+                String errorMessage = error instanceof StreamRejectedException
+                    ? error.getMessage()
+                    : handleErrorMessage(error.getMessage());
+                logger.severe("响应式流式聊天错误: " + error.getMessage());
+                return Mono.just(sseEvent("error",
+                    String.format("{\"error\":\"%s\",\"done\":true}", JsonEscaper.escape(errorMessage))));
+            });
+    }
+    
+    /**
+     * 非流式完成一轮对话，供批量任务使用
+     * 与流式接口共用会话逐轮调度、上下文构建、响应缓存和持久化；失败时以异常结束，由调用方决定是否重试
+     * 
+     * @param sessionIdParam 会话ID，为空时使用默认会话
+     * @param userMessage 用户消息
+     * @return 完整的回答
+     */
+    public Mono<String> complete(String sessionIdParam, String userMessage) {
+        return complete(sessionIdParam, userMessage, null);
+    }
+    
+    /**
+     * 非流式完成一轮对话，用户消息使用调用方预先分配的ID，重复调用时不会重复写入同一轮
+     * 该ID的用户消息已保存且紧随其后有成功的回答时直接返回该回答，不再调用模型；
+     * 只保存了用户消息时沿用它重新生成回答
+     * 
+     * @param sessionIdParam 会话ID，为空时使用默认会话
+     * @param userMessage 用户消息
+     * @param userMessageId 用户消息ID，为null时生成新ID
+     * @return 完整的回答
+     */
+    public Mono<String> complete(String sessionIdParam, String userMessage, String userMessageId) {
+        final String sessionId = (sessionIdParam == null || sessionIdParam.isEmpty()) ? "default" : sessionIdParam;
+        
+        return Mono.usingWhen(acquireTurn(sessionId),
+            turn -> Mono.fromCallable(() -> findSavedReply(sessionId, userMessageId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(Mono.defer(() -> {
+                    long startNanos = System.nanoTime();
+                    return Mono.fromCallable(() -> prepareTurn(sessionId, userMessage, userMessageId))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(prepared -> {
+                            ChatMetrics.StreamRecorder recorder = chatMetrics.startStream("batch", prepared.source(), startNanos, prepared.route);
+                            Mono<String> response = prepared.cachedResponse != null
+                                ? Mono.just(prepared.cachedResponse)
+                                : streamModelContent(prepared.messages, prepared.route)
+                                    .doOnNext(recorder::onContent)
+                                    .collect(StringBuilder::new, StringBuilder::append)
+                                    .map(StringBuilder::toString);
+                            return response
+                                .publishOn(Schedulers.boundedElastic())
+                                .map(completeResponse -> {
+                                    recorder.finish("completed");
+                                    completeTurn(prepared, completeResponse);
+                                    return completeResponse;
+                                })
+                                .doOnError(error -> {
+                                    recorder.finish("error");
+                                    chatMetrics.recordError(ChatErrorCategory.classify(error.getMessage()));
+                                })
+                                .doOnCancel(() -> recorder.finish("cancelled"));
+                        });
+                })),
+            turn -> Mono.fromRunnable(turn::release));
+    }
+    
+    /**
+     * 查找指定ID的用户消息之后已保存的成功回答
+     * 
+     * @return 回答内容；未指定ID、用户消息不存在或其后没有成功的回答时为null
+     */
+    private String findSavedReply(String sessionId, String userMessageId) {
+        if (userMessageId == null) {
+            return null;
+        }
+        sessionArchiver.rehydrateIfArchived(sessionId);
+        Optional<ChatMessage> userMsg = messageRepository.findById(userMessageId);
+        if (userMsg.isEmpty()) {
+            return null;
+        }
+        List<ChatMessage> next = messageRepository.findPageAfter(
+            sessionId, userMsg.get().getTimestamp(), userMessageId, PageRequest.of(0, 1));
+        if (next.isEmpty() || !"assistant".equals(next.get(0).getRole()) || !"success".equals(next.get(0).getStatus())) {
+            return null;
+        }
+        logger.info(String.format("沿用已保存的回答 - 会话ID: %s, 用户消息ID: %s", sessionId, userMessageId));
+        return next.get(0).getContent();
+    }
+    
+    /**
+     * 获取会话的处理轮次：同一会话逐轮处理，排队期间不占用线程，取消订阅时退出队列
+     */
+    private Mono<SessionTurnScheduler.Turn> acquireTurn(String sessionId) {
+        return Mono.create(sink -> {
+            AtomicReference<SessionTurnScheduler.Turn> pending = new AtomicReference<>();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            sink.onCancel(() -> {
+                cancelled.set(true);
+                SessionTurnScheduler.Turn turn = pending.get();
+                if (turn != null) {
+                    turn.release();
+                }
+            });
+            pending.set(sessionTurnScheduler.submit(sessionId, sink::success,
+                reason -> sink.error(new StreamRejectedException(reason))));
+            if (cancelled.get()) {
+                pending.get().release();
+            }
+        });
+    }
+    
+    /**
+     * 获取流式调度名额，与默认模式共用并发上限和排队；排队期间不占用线程，取消订阅时退出队列或归还名额
+     */
+    private Mono<StreamDispatcher.Ticket> admitStream() {
+        return Mono.create(sink -> {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            AtomicReference<StreamDispatcher.Ticket> pending = new AtomicReference<>();
+            sink.onCancel(() -> {
+                cancelled.set(true);
+                StreamDispatcher.Ticket ticket = pending.get();
+                if (ticket != null) {
+                    ticket.release();
+                }
+            });
+            pending.set(streamDispatcher.admit(sink::success,
+                reason -> sink.error(new StreamRejectedException(reason))));
+            if (cancelled.get()) {
+                pending.get().release();
+            }
+        });
+    }
+    
+    /**
+     * 将模型输出或缓存回放转换为SSE事件，结束后保存完整响应并发送完成事件
+     * 不经过并发合并：共享流的回放缓冲会截断客户端到模型的背压
+     */
+    private Flux<ServerSentEvent<String>> reactiveContent(PreparedTurn prepared, ActiveStream active,
+                                                          ChatMetrics.StreamRecorder recorder) {
+        Flux<String> contentStream = prepared.cachedResponse != null
+            ? Flux.fromIterable(splitForReplay(prepared.cachedResponse))
+            : streamCancellation.trackUpstream(streamModelContent(prepared.messages, prepared.route));
+        streamCancellation.register(active);
+        
+        return contentStream
+            // 主动停止时截断上游
+            .takeUntilOther(active.whenCancelled())
+            .map(content -> {
+                active.append(content);
+                recorder.onContent(content);
+                return sseEvent("message", "{\"content\":\"" + JsonEscaper.escape(content) + "\",\"done\":false}");
+            })
+            .concatWith(Mono.defer(() -> {
+                if (!active.end()) {
+                    recorder.finish("cancelled");
+                    return Mono.just(sseEvent("message", CANCELLED_EVENT));
+                }
+                streamCancellation.unregister(active);
+                recorder.finish("completed");
+                return Mono.fromCallable(() -> {
+                    String completeResponse = active.getContent();
+                    completeTurn(prepared, completeResponse);
+                    logger.info(String.format("响应式流式响应完成 - 会话ID: %s, 响应长度: %d",
+                        prepared.sessionId, completeResponse.length()));
+                    return sseEvent("message", "{\"done\":true}");
+                }).subscribeOn(Schedulers.boundedElastic());
+            }))
+            .doOnError(error -> {
+                if (active.end()) {
+                    streamCancellation.unregister(active);
+                    recorder.finish("error");
+                    chatMetrics.recordError(ChatErrorCategory.classify(error.getMessage()));
+                }
+            })
+            // 客户端断开
+            .doOnCancel(() -> {
+                recorder.finish("cancelled");
+                streamCancellation.cancel(active, "disconnect");
+            });
+    }
+    
+    private static ServerSentEvent<String> sseEvent(String name, String json) {
+        return ServerSentEvent.builder(json).event(name).build();
+    }
+    
+    /**
+     * 准备一轮对话：保存用户消息、按token预算构建上下文并查询响应缓存（阻塞的数据库操作）
+     */
+    private PreparedTurn prepareTurn(String sessionId, String userMessage) {
+        return prepareTurn(sessionId, userMessage, null);
+    }
+    
+    /**
+     * 准备一轮对话，用户消息使用指定的ID；该ID的消息已保存时不再重复保存，作为本轮的最后一条消息构建上下文
+     */
+    private PreparedTurn prepareTurn(String sessionId, String userMessage, String userMessageId) {
+        // 获取或创建会话
+        ChatSession session = getOrCreateSession(sessionId);
+        
+        // 先读取最近的会话历史，再保存用户消息，异步持久化时也不会漏掉当前消息
+        List<ChatMessage> history = new ArrayList<>(loadRecentHistory(sessionId));
+        
+        Optional<ChatMessage> saved = userMessageId == null
+            ? Optional.empty()
+            : messageRepository.findById(userMessageId);
+        ChatMessage userMsg;
+        if (saved.isPresent()) {
+            userMsg = saved.get();
+            history.removeIf(m -> userMessageId.equals(m.getId()));
+        } else {
+            // 保存用户消息到数据库
+            userMsg = new ChatMessage(
+                userMessageId != null ? userMessageId : generateMessageId(), 
+                "user", 
+                userMessage, 
+                "success"
+            );
+            userMsg.setSession(sessionReference(session));
+            saveMessage(sessionId, userMsg);
+        }
+        history.add(userMsg);
+        
+        // 按token预算构建消息列表
+        List<Message> messages = buildContext(session, history);
+        
+        // 缓存按模型区分，按最可能处理本轮的服务所用的模型查询
+        String model = routingChatModel.preferredModel();
+        String cacheKey = promptFingerprint.of(model, messages);
+        Optional<String> cached = responseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            logger.info("响应缓存命中 - 会话ID: " + sessionId);
+        }
+        return new PreparedTurn(sessionId, messages, model, cacheKey, cached.orElse(null));
+    }
+    
+    /**
+     * 完成一轮对话：保存完整响应，非缓存回放的响应按实际输出它的模型写入响应缓存
+     * 与其他请求共享上游流时本轮不知道由哪个服务输出，由发起上游调用的请求写入
+     */
+    private void completeTurn(PreparedTurn prepared, String completeResponse) {
+        if (!completeResponse.isEmpty()) {
+            saveChatHistory(prepared.sessionId, completeResponse, "success");
+        }
+        if (prepared.cachedResponse == null) {
+            String servedModel = prepared.route.getModel();
+            if (servedModel != null) {
+                String key = servedModel.equals(prepared.model)
+                    ? prepared.cacheKey
+                    : promptFingerprint.of(servedModel, prepared.messages);
+                responseCache.put(key, completeResponse);
+            }
+            streamCancellation.recordCompletion(completeResponse);
+        }
+    }
+    
+    /**
+     * 模型输出被取消后：保存已生成的部分，向仍连接的客户端发送取消完成事件并结束本轮
+     */
+    private void onStreamCancelled(SseFrameWriter writer, ActiveStream stream) {
+        persistCancelled(stream);
+        try {
+            writer.sendEvent("message", CANCELLED_EVENT);
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+        }
+        writer.complete();
+    }
+    
+    /**
+     * 以cancelled状态保存已生成的部分回答
+     */
+    private void persistCancelled(ActiveStream stream) {
+        String partial = stream.getContent();
+        if (!partial.isEmpty()) {
+            saveChatHistory(stream.getSessionId(), partial, "cancelled");
+        }
+    }
+    
+    /**
+     * 停止会话正在进行的回答，已生成的部分以cancelled状态保存
+     * 
+     * @param sessionId 会话ID
+     * @return 会话有进行中的回答并已停止时返回true
+     */
+    public boolean stopGeneration(String sessionId) {
+        return streamCancellation.stop(sessionId);
+    }
+    
+    /**
+     * 调用AI模型，返回非空的内容片段流
+     *
+     * @param route 由路由模型写入实际输出回答的服务
+     */
+    private Flux<String> streamModelContent(List<Message> messages, RoutingChatModel.Route route) {
+        return chatClient.prompt()
+            .messages(messages)
+            .stream()
+            .chatResponse()
+            .<String>handle((response, sink) -> {
+                if (response.getResult() == null || response.getResult().getOutput() == null) {
+                    return;
+                }
+                String content = response.getResult().getOutput().getContent();
+                if (content != null && !content.isEmpty()) {
+                    sink.next(content);
+                }
+            })
+            .contextWrite(Context.of(RoutingChatModel.Route.class, route));
+    }
+    
+    /**
+     * 将缓存的完整响应切分为片段，按与实时流相同的事件格式回放
+     */
+    private static List<String> splitForReplay(String response) {
+        List<String> chunks = new ArrayList<>();
+        int offset = 0;
+        while (offset < response.length()) {
+            int end = Math.min(response.length(), offset + REPLAY_CHUNK_CHARS);
+            // 不在代理对中间切分
+            if (end < response.length() && Character.isHighSurrogate(response.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(response.substring(offset, end));
+            offset = end;
+        }
+        return chunks;
+    }
+    
+    /**
+     * 处理流式错误
+     */
+    private void handleStreamError(SseFrameWriter writer, Throwable error) {
+        try {
+            String errorMessage = handleErrorMessage(error.getMessage());
+            String errorData = String.format("{\"error\":\"%s\",\"done\":true}", JsonEscaper.escape(errorMessage));
+            
+            writer.sendEvent("error", errorData);
+            
+            writer.completeWithError(error);
+        } catch (IOException | IllegalStateException e) {
+            logger.severe("发送错误事件失败: " + e.getMessage());
+            writer.completeWithError(e);
+        }
+    }
+    
+    /**
+     * 拒绝流式请求，发送错误事件后正常结束连接
+     */
+    private void rejectStream(SseFrameWriter writer, String reason) {
+        try {
+            String errorData = String.format("{\"error\":\"%s\",\"done\":true}", JsonEscaper.escape(reason));
+            writer.sendEvent("error", errorData);
+            writer.complete();
+        } catch (IOException | IllegalStateException e) {
+            logger.severe("发送拒绝事件失败: " + e.getMessage());
+            writer.completeWithError(e);
+        }
+    }
+    
+    /**
+     * 断线续传：从回放缓冲补发Last-Event-ID之后的事件，本轮仍在进行时继续接收后续事件
+     * 不会再次调用模型；事件流已过期时发送错误事件
+     * 
+     * @param lastEventId 客户端收到的最后一个事件ID
+     * @return SseEmitter对象
+     */
+    public SseEmitter resumeStream(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT);
+        try {
+            if (turnStreamRegistry.resume(lastEventId, emitter)) {
+                logger.info("断线续传 - 事件ID: " + lastEventId);
+                emitter.onCompletion(() -> turnStreamRegistry.detach(lastEventId, emitter));
+                emitter.onTimeout(emitter::complete);
+                return emitter;
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.warning("续传补发失败: " + e.getMessage());
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        rejectStream(sseFrameWriterFactory.create(TurnStream.direct(emitter)), "回答已过期，无法继续接收，请重新发送");
+        return emitter;
+    }
+    
+    /**
+     * 处理聊天请求，返回流式响应（保留旧的Flux方法以兼容）
+     * 
+     * @param sessionId 会话ID
+     * @param userMessage 用户消息内容
+     * @return 流式AI响应
+     */
+    @Transactional
+    public Flux<String> chat(String sessionId, String userMessage) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            sessionId = "default";
+        }
+        
+        // 获取或创建会话
+        ChatSession session = getOrCreateSession(sessionId);
+        
+        // 保存用户消息到数据库
+        ChatMessage userMsg = new ChatMessage(
+            generateMessageId(), 
+            "user", 
+            userMessage, 
+            "success"
+        );
+        userMsg.setSession(sessionReference(session));
+        
+        // 先读取最近的会话历史，再保存用户消息
+        List<ChatMessage> history = new ArrayList<>(loadRecentHistory(sessionId));
+        saveMessage(sessionId, userMsg);
+        history.add(userMsg);
+        
+        // 创建响应收集器
+        final ResponseCollector collector = new ResponseCollector(sessionId);
+        
+        try {
+            // 按token预算构建消息列表，包含历史记录作为上下文
+            List<Message> messages = buildContext(session, history);
+            
+            // 调用AI模型并返回流式响应
+            return chatClient.prompt()
+                    .messages(messages)
+                    .stream()
+                    .chatResponse()
+                    .map(response -> {
+                        String content = response.getResult().getOutput().getContent();
+                        
+                        if (content != null && !content.isEmpty()) {
+                            // 收集响应内容
+                            collector.addContent(content);
+                            
+                            // 返回标准SSE格式数据
+                            String escapedContent = JsonEscaper.escape(content);
+                            return "data: {\"content\": \"" + escapedContent + "\"}\n\n";
+                        }
+                        
+                        return "data: {\"content\": \"\"}\n\n";
+                    })
+                    .filter(content -> !content.isEmpty()) // 过滤空内容
+                    .doFinally(signal -> {
+                        // 在流完成时保存历史记录
+                        if (signal == reactor.core.publisher.SignalType.ON_COMPLETE) {
+                            collector.saveHistory();
+                        }
+                    })
+                    .onErrorResume(e -> {
+                        logger.severe("AI模型调用错误: " + e.getMessage());
+                        logger.severe("错误类型: " + e.getClass().getSimpleName());
+                        
+                        // 特殊处理网络连接错误
+                        if (e.getMessage() != null && 
+                            (e.getMessage().contains("UnresolvedAddressException") || 
+                             e.getMessage().contains("ConnectException") ||
+                             e.getMessage().contains("UnknownHostException"))) {
+                            logger.severe("检测到网络连接问题，建议检查网络配置或代理设置");
+                        }
+                        
+                        String errorMessage = handleErrorMessage(e.getMessage());
+                        return Flux.just(
+                            "data: {\"error\": \"" + JsonEscaper.escape(errorMessage) + "\"}\n\n",
+                            "[DONE]\n\n"
+                        );
+                    })
+                    .concatWithValues("[DONE]\n\n");
+                    
+        } catch (Exception e) {
+            logger.severe("处理聊天请求时发生错误: " + e.getMessage());
+            logger.severe("错误类型: " + e.getClass().getSimpleName());
+            String errorMessage = handleErrorMessage(e.getMessage());
+            return Flux.just(
+                "data: {\"error\": \"" + JsonEscaper.escape(errorMessage) + "\"}\n\n",
+                "[DONE]\n\n"
+            );
+        }
+    }
+    
+    /**
+     * 按token预算构建发送给模型的消息列表
+     * 超出预算的较早消息交给滚动摘要异步处理
+     * 
+     * @param session 会话对象
+     * @param history 按时间升序排列的历史消息，最后一条为当前用户消息
+     * @return 构建好的消息列表
+     */
+    private List<Message> buildContext(ChatSession session, List<ChatMessage> history) {
+        // 最近历史读满了条数上限（最后一条是当前消息），更早的消息没有加载
+        boolean truncated = history.size() > contextWindowBuilder.getMaxMessages();
+        ContextWindow window = contextWindowBuilder.build(history, session.getSummary(), session.getSummarizedUntil(), truncated);
+        if (window.getUnsummarizedBefore() != null) {
+            conversationSummarizer.foldBefore(session.getId(), session.getSummary(), session.getSummarizedUntil(),
+                window.getUnsummarizedBefore());
+        } else if (!window.getEvicted().isEmpty()) {
+            conversationSummarizer.fold(session.getId(), session.getSummary(), window.getEvicted());
+        }
+        logger.fine(String.format("构建上下文 - 会话ID: %s, 消息数: %d, 估算token: %d",
+            session.getId(), window.getMessages().size(), window.getEstimatedTokens()));
+        return window.getMessages();
+    }
+    
+    /**
+     * 加载会话最近的历史消息（按时间升序）
+     * 优先使用最近对话缓存，未命中时只查询尾部的消息并回填缓存
+     * 
+     * @param sessionId 会话ID
+     * @return 最近的历史消息
+     */
+    private List<ChatMessage> loadRecentHistory(String sessionId) {
+        int window = contextWindowBuilder.getMaxMessages();
+        Optional<List<ChatMessage>> cached = recentTurnCache.getRecent(sessionId, window);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        
+        RecentTurnCache.Entry loading = recentTurnCache.beginLoad(sessionId);
+        List<ChatMessage> tail = new ArrayList<>(
+            messageRepository.findBySessionIdOrderByTimestampDescIdDesc(sessionId, PageRequest.of(0, window)));
+        Collections.reverse(tail);
+        boolean complete = tail.size() < window;
+        
+        // 合并异步写入队列中尚未落库的消息
+        List<ChatMessage> pending = writeBehind.pendingMessages(sessionId);
+        if (!pending.isEmpty()) {
+            Set<String> loadedIds = tail.stream().map(ChatMessage::getId).collect(Collectors.toSet());
+            pending.stream().filter(m -> !loadedIds.contains(m.getId())).forEach(tail::add);
+            tail.sort(Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId));
+        }
+        
+        recentTurnCache.finishLoad(sessionId, loading, tail, complete);
+        return tail;
+    }
+    
+    /**
+     * 保存消息，追加到最近对话缓存并增量更新会话摘要
+     */
+    private void saveMessage(String sessionId, ChatMessage message) {
+        message.setTokenCount(TokenEstimator.estimateMessage(message.getContent()));
+        String preview = "user".equals(message.getRole()) ? buildPreview(message.getContent()) : null;
+        
+        // 优先进入异步批量写入队列，未启用或队列已满时同步写入
+        if (!writeBehind.enqueue(sessionId, message, preview)) {
+            messageRepository.save(message);
+            if (preview != null) {
+                sessionRepository.recordUserMessage(sessionId, preview, message.getTimestamp());
+            } else {
+                sessionRepository.recordAssistantMessage(sessionId, message.getTimestamp());
+            }
+        }
+        sessionCache.recordMessage(sessionId, preview, message.getTimestamp());
+        recentTurnCache.append(sessionId, message);
+        searchIndex.add(sessionId, message);
+    }
+    
+    /**
+     * 生成会话列表中显示的消息预览
+     */
+    private String buildPreview(String content) {
+        return content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) + "..." : content;
+    }
+    
+    /**
+     * 保存AI响应到对话历史
+     * 
+     * @param sessionId 会话ID
+     * @param aiResponse AI响应内容
+     * @param status 消息状态：success或cancelled（被取消时的部分回答）
+     */
+    @Transactional
+    private void saveChatHistory(String sessionId, String aiResponse, String status) {
+        if (aiResponse != null && !aiResponse.isEmpty()) {
+            ChatSession session = getOrCreateSession(sessionId);
+            
+            ChatMessage aiMessage = new ChatMessage(
+                generateMessageId(),
+                "assistant",
+                aiResponse,
+                status
+            );
+            aiMessage.setSession(sessionReference(session));
+            // 同时更新会话的消息数和最后更新时间
+            saveMessage(sessionId, aiMessage);
+            
+            logger.info(String.format("保存对话历史 - 会话ID: %s, 消息长度: %d", sessionId, aiResponse.length()));
+        }
+    }
+    
+    /**
+     * 获取或创建会话
+     * 
+     * @param sessionId 会话ID
+     * @return 会话对象
+     */
+    private ChatSession getOrCreateSession(String sessionId) {
+        Optional<ChatSession> sessionOpt = findSession(sessionId);
+        if (sessionOpt.isPresent()) {
+            ChatSession session = sessionOpt.get();
+            // 已归档的会话先恢复消息，再读取历史和保存新消息
+            if (session.getArchivedAt() != null) {
+                sessionArchiver.rehydrate(sessionId);
+                session.setArchivedAt(null);
+            }
+            return session;
+        }
+        
+        // 创建新会话
+        ChatSession newSession = new ChatSession(sessionId, "新对话");
+        long loadGeneration = sessionCache.beginLoad();
+        ChatSession saved = sessionRepository.save(newSession);
+        sessionCache.put(saved, loadGeneration);
+        recentTurnCache.initEmpty(sessionId);
+        return saved;
+    }
+    
+    /**
+     * 按ID读取会话，优先从会话缓存读取
+     */
+    private Optional<ChatSession> findSession(String sessionId) {
+        Optional<ChatSession> cached = sessionCache.get(sessionId);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        long loadGeneration = sessionCache.beginLoad();
+        Optional<ChatSession> loaded = sessionRepository.findById(sessionId);
+        loaded.ifPresent(session -> sessionCache.put(session, loadGeneration));
+        return loaded;
+    }
+    
+    /**
+     * 消息关联的会话：外键只需要会话ID，使用不加载实体的引用，
+     * 避免保存消息时为确认脱离上下文的会话对象是否存在再查询一次
+     */
+    private ChatSession sessionReference(ChatSession session) {
+        return sessionRepository.getReferenceById(session.getId());
+    }
+    
+    /**
+     * 生成消息ID
+     */
+    private String generateMessageId() {
+        return idGenerator.next();
+    }
+    
+    /**
+     * 处理错误消息，转换为友好的用户提示
+     * 
+     * @param errorMessage 原始错误消息
+     * @return 友好的错误提示
+     */
+    private String handleErrorMessage(String errorMessage) {
+        return ChatErrorCategory.classify(errorMessage).getUserMessage();
+    }
+    
+    /**
+     * 响应收集器，用于收集AI响应内容并保存历史记录
+     */
+    private class ResponseCollector {
+        private final String sessionId;
+        private final StringBuilder contentBuilder = new StringBuilder();
+        
+        public ResponseCollector(String sessionId) {
+            this.sessionId = sessionId;
+        }
+        
+        public void addContent(String content) {
+            contentBuilder.append(content);
+        }
+        
+        public void saveHistory() {
+            String fullResponse = contentBuilder.toString();
+            if (!fullResponse.isEmpty()) {
+                saveChatHistory(sessionId, fullResponse, "success");
+            }
+        }
+    }
+    
+    /**
+     * 清除指定会话的历史记录
+     * 
+     * @param sessionId 会话ID
+     */
+    @Transactional
+    public void clearHistory(String sessionId) {
+        if (sessionId != null && !sessionId.isEmpty()) {
+            writeBehind.discardSession(sessionId);
+            messageRepository.deleteBySessionId(sessionId);
+            sessionArchiver.discard(sessionId);
+            sessionRepository.resetSummary(sessionId, LocalDateTime.now());
+            sessionCache.invalidate(sessionId);
+            recentTurnCache.invalidate(sessionId);
+            searchIndex.removeSession(sessionId);
+            logger.info("已清除会话历史: " + sessionId);
+        }
+    }
+    
+    /**
+     * 获取所有会话的摘要，用于会话列表
+     */
+    public List<ChatSessionSummary> getSessionSummaries() {
+        return sessionRepository.findAllSummaries();
+    }
+    
+    /**
+     * 获取指定会话
+     */
+    public Optional<ChatSession> getSession(String sessionId) {
+        return findSession(sessionId);
+    }
+    
+    /**
+     * 创建新会话
+     * 未指定会话ID时由服务端生成；客户端自带的ID仅为兼容旧版前端保留
+     */
+    @Transactional
+    public ChatSession createSession(String sessionId, String name) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            sessionId = idGenerator.next();
+        } else if (sessionId.length() > ChatSession.MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("会话ID过长，最多" + ChatSession.MAX_ID_LENGTH + "个字符");
+        }
+        ChatSession session = new ChatSession(sessionId, name);
+        return sessionRepository.save(session);
+    }
+    
+    /**
+     * 删除会话
+     */
+    @Transactional
+    public void deleteSession(String sessionId) {
+        writeBehind.discardSession(sessionId);
+        sessionRepository.deleteById(sessionId);
+        sessionCache.invalidate(sessionId);
+        recentTurnCache.invalidate(sessionId);
+        searchIndex.removeSession(sessionId);
+        logger.info("已删除会话: " + sessionId);
+    }
+    
+    /**
+     * 重命名会话
+     */
+    @Transactional
+    public void renameSession(String sessionId, String newName) {
+        if (sessionRepository.rename(sessionId, newName, LocalDateTime.now()) > 0) {
+            sessionCache.invalidate(sessionId);
+            logger.info("已重命名会话: " + sessionId + " -> " + newName);
+        }
+    }
+    
+    /**
+     * 获取会话的所有消息，已归档的会话先恢复到热表
+     */
+    public List<ChatMessage> getSessionMessages(String sessionId) {
+        sessionArchiver.rehydrateIfArchived(sessionId);
+        return messageRepository.findBySessionIdOrderByTimestampAsc(sessionId);
+    }
+    
+    /**
+     * 按键集分页获取会话消息
+     * 不带游标时返回最新的一页；before和after最多指定一个；已归档的会话先恢复到热表
+     * 
+     * @param sessionId 会话ID
+     * @param before 返回该游标之前（更早）的消息
+     * @param after 返回该游标之后（更新）的消息
+     * @param limit 页大小
+     * @return 按时间升序排列的一页消息
+     * @throws IllegalArgumentException 游标无效或同时指定了before和after
+     */
+    public MessagePage getMessagePage(String sessionId, String before, String after, int limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("before和after不能同时指定");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        sessionArchiver.rehydrateIfArchived(sessionId);
+        // 多取一条用于判断是否还有更多
+        PageRequest page = PageRequest.of(0, size + 1);
+        
+        List<ChatMessage> rows;
+        boolean descending;
+        if (after != null) {
+            MessageCursor cursor = MessageCursor.decode(after);
+            rows = messageRepository.findPageAfter(sessionId, cursor.getTimestamp(), cursor.getId(), page);
+            descending = false;
+        } else if (before != null) {
+            MessageCursor cursor = MessageCursor.decode(before);
+            rows = messageRepository.findPageBefore(sessionId, cursor.getTimestamp(), cursor.getId(), page);
+            descending = true;
+        } else {
+            rows = messageRepository.findBySessionIdOrderByTimestampDescIdDesc(sessionId, page);
+            descending = true;
+        }
+        
+        boolean hasMore = rows.size() > size;
+        List<ChatMessage> messages = new ArrayList<>(rows.subList(0, Math.min(size, rows.size())));
+        if (descending) {
+            Collections.reverse(messages);
+        }
+        return new MessagePage(messages, hasMore);
+    }
+    
+    /**
+     * 全文检索聊天记录，并补充命中消息所属会话的名称
+     * 
+     * @param query 查询文本
+     * @param sessionId 限定会话，为空时检索全部会话
+     * @param limit 返回的最大条数，最大100
+     * @return 检索结果
+     */
+    public SearchResult search(String query, String sessionId, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS));
+        SearchResult result = searchIndex.search(query, sessionId != null && !sessionId.isEmpty() ? sessionId : null, size);
+        Set<String> sessionIds = result.getHits().stream()
+            .map(SearchHit::getSessionId)
+            .collect(Collectors.toSet());
+        if (!sessionIds.isEmpty()) {
+            Map<String, String> names = new HashMap<>();
+            sessionRepository.findAllById(sessionIds).forEach(session -> names.put(session.getId(), session.getName()));
+            result.getHits().forEach(hit -> hit.setSessionName(names.get(hit.getSessionId())));
+        }
+        return result;
+    }
+    
+    /**
+     * 获取全文索引统计
+     */
+    public Map<String, Object> getSearchStats() {
+        return searchIndex.getStats();
+    }
+    
+    /**
+     * 获取流式调度统计：活跃、排队和被拒绝的流数量，SSE延迟发送的线程数，以及各模型服务的路由统计
+     */
+    public Map<String, Object> getStreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executorMode", streamDispatcher.getExecutorMode());
+        stats.put("maxInFlight", streamDispatcher.getMaxInFlight());
+        stats.put("active", streamDispatcher.getActiveStreams());
+        stats.put("queued", streamDispatcher.getQueuedStreams());
+        stats.put("rejected", streamDispatcher.getRejectedStreams());
+        stats.put("flushThreads", streamDispatcher.getFlushThreads());
+        stats.put("flushing", streamDispatcher.getRunningFlushes());
+        stats.put("sessions", sessionTurnScheduler.getStats());
+        stats.put("cancellation", streamCancellation.getStats());
+        stats.put("resume", turnStreamRegistry.getStats());
+        stats.put("routing", routingChatModel.getStats());
+        return stats;
+    }
+    
+    /**
+     * 获取响应缓存统计：命中率、条目数和内存占用，以及会话缓存的命中率
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(responseCache.getStats());
+        stats.put("singleFlight", singleFlight.getStats());
+        stats.put("sessions", sessionCache.getStats());
+        return stats;
+    }
+    
+    /**
+     * 已准备好的一轮对话：发送给模型的消息、查询缓存用的模型和缓存键、命中的缓存响应，以及实际输出回答的服务
+     */
+    private static final class PreparedTurn {
+        private final String sessionId;
+        private final List<Message> messages;
+        private final String model;
+        private final String cacheKey;
+        private final String cachedResponse;
+        private final RoutingChatModel.Route route = new RoutingChatModel.Route();
+        
+        private PreparedTurn(String sessionId, List<Message> messages, String model, String cacheKey,
+                             String cachedResponse) {
+            this.sessionId = sessionId;
+            this.messages = messages;
+            this.model = model;
+            this.cacheKey = cacheKey;
+            this.cachedResponse = cachedResponse;
+        }
+        
+        /**
+         * 内容来源，作为指标标签
+         */
+        private String source() {
+            return cachedResponse != null ? "cache" : "model";
+        }
+    }
+    
+    /**
+     * 请求被会话轮次调度拒绝，消息直接展示给用户
+     */
+    private static final class StreamRejectedException extends RuntimeException {
+        private StreamRejectedException(String message) {
+            super(message);
+        }
+    }
+}
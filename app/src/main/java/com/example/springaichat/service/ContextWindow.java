@@ -0,0 +1,48 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 上下文窗口构建结果
+ * messages为发送给模型的消息，evicted为超出预算且尚未并入摘要的历史消息；
+ * unsummarizedBefore不为null时，该时间之前还有未加载、也未并入摘要的消息，应先并入这部分
+ */
+public class ContextWindow {
+
+    private final List<Message> messages;
+    private final List<ChatMessage> evicted;
+    private final LocalDateTime unsummarizedBefore;
+    private final int estimatedTokens;
+
+    public ContextWindow(List<Message> messages, List<ChatMessage> evicted, int estimatedTokens) {
+        this(messages, evicted, null, estimatedTokens);
+    }
+
+    public ContextWindow(List<Message> messages, List<ChatMessage> evicted, LocalDateTime unsummarizedBefore,
+                         int estimatedTokens) {
+        this.messages = messages;
+        this.evicted = evicted;
+        this.unsummarizedBefore = unsummarizedBefore;
+        this.estimatedTokens = estimatedTokens;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public List<ChatMessage> getEvicted() {
+        return evicted;
+    }
+
+    public LocalDateTime getUnsummarizedBefore() {
+        return unsummarizedBefore;
+    }
+
+    public int getEstimatedTokens() {
+        return estimatedTokens;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 上下文窗口构建器 - 按token预算组装发送给模型的消息
+ * 从最新的消息开始向前填充，直到用完预算；更早的消息由会话摘要概括。
+ * 历史按条数截断时，截断之前尚未并入摘要的消息先于被挤出窗口的消息并入摘要，摘要始终从最早的消息向后推进
+ */
+@Component
+public class ContextWindowBuilder {
+
+    // 系统提示词，指导AI模型的行为
+    public static final String SYSTEM_PROMPT = "你是一个友好、专业的AI助手。请用简洁、准确的中文回答用户的问题。";
+
+    private static final String SUMMARY_PREFIX = "以下是本次对话更早部分的摘要，供参考：\n";
+
+    // 提示词的token预算（系统提示、摘要和历史消息合计）
+    @Value("${chat.context.token-budget:6000}")
+    private int tokenBudget;
+
+    // 每轮最多读取的历史消息条数
+    @Value("${chat.context.max-messages:50}")
+    private int maxMessages;
+
+    public ContextWindowBuilder() {
+    }
+
+    public ContextWindowBuilder(int tokenBudget, int maxMessages) {
+        this.tokenBudget = tokenBudget;
+        this.maxMessages = maxMessages;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * 构建上下文窗口，历史包含会话的全部消息
+     *
+     * @param history 按时间升序排列的历史消息，最后一条为当前用户消息
+     * @param summary 会话摘要，可为null
+     * @param summarizedUntil 摘要已覆盖到的消息时间，可为null
+     * @return 上下文窗口
+     */
+    public ContextWindow build(List<ChatMessage> history, String summary, LocalDateTime summarizedUntil) {
+        return build(history, summary, summarizedUntil, false);
+    }
+
+    /**
+     * 构建上下文窗口
+     *
+     * @param history 按时间升序排列的历史消息，最后一条为当前用户消息
+     * @param summary 会话摘要，可为null
+     * @param summarizedUntil 摘要已覆盖到的消息时间，可为null
+     * @param truncated 历史是否按条数截断（第一条之前可能还有消息）
+     * @return 上下文窗口
+     */
+    public ContextWindow build(List<ChatMessage> history, String summary, LocalDateTime summarizedUntil,
+                               boolean truncated) {
+        int used = TokenEstimator.estimateMessage(SYSTEM_PROMPT);
+        boolean hasSummary = summary != null && !summary.isEmpty();
+        if (hasSummary) {
+            used += TokenEstimator.estimateMessage(SUMMARY_PREFIX) + TokenEstimator.estimate(summary);
+        }
+
+        // 从最新的消息向前填充，当前用户消息无论多长都保留
+        int start = history.size();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            int cost = tokensOf(history.get(i));
+            if (i < history.size() - 1 && used + cost > tokenBudget) {
+                break;
+            }
+            used += cost;
+            start = i;
+        }
+
+        List<Message> messages = new ArrayList<>(history.size() - start + 2);
+        messages.add(new SystemMessage(SYSTEM_PROMPT));
+        if (hasSummary) {
+            messages.add(new SystemMessage(SUMMARY_PREFIX + summary));
+        }
+        for (ChatMessage message : history.subList(start, history.size())) {
+            if ("user".equals(message.getRole())) {
+                messages.add(new UserMessage(message.getContent()));
+            } else if ("assistant".equals(message.getRole())) {
+                messages.add(new AssistantMessage(message.getContent()));
+            }
+        }
+
+        // 截断之前还有未并入摘要的消息时先并入那部分，被挤出窗口的消息留到之后的轮次
+        LocalDateTime oldestLoaded = history.get(0).getTimestamp();
+        if (truncated && (summarizedUntil == null || oldestLoaded.isAfter(summarizedUntil))) {
+            return new ContextWindow(messages, Collections.emptyList(), oldestLoaded, used);
+        }
+
+        // 窗口之外、摘要尚未覆盖的消息需要并入摘要
+        List<ChatMessage> evicted = Collections.emptyList();
+        if (start > 0) {
+            evicted = new ArrayList<>();
+            for (ChatMessage message : history.subList(0, start)) {
+                if (summarizedUntil == null || message.getTimestamp().isAfter(summarizedUntil)) {
+                    evicted.add(message);
+                }
+            }
+        }
+        return new ContextWindow(messages, evicted, used);
+    }
+
+    /**
+     * 获取消息的token数，优先使用已缓存的值
+     */
+    private static int tokensOf(ChatMessage message) {
+        Integer cached = message.getTokenCount();
+        if (cached == null) {
+            cached = TokenEstimator.estimateMessage(message.getContent());
+            message.setTokenCount(cached);
+        }
+        return cached;
+    }
+}
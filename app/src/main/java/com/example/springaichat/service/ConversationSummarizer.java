@@ -0,0 +1,159 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.repository.ChatMessageRepository;
+import com.example.springaichat.repository.ChatSessionRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * 会话滚动摘要 - 把超出上下文预算的较早对话增量并入会话摘要
+ * 在后台线程中调用模型，同一会话同时最多一个摘要任务
+ */
+@Component
+public class ConversationSummarizer {
+
+    private static final Logger logger = Logger.getLogger(ConversationSummarizer.class.getName());
+
+    private static final String SUMMARY_INSTRUCTION =
+        "你负责维护一段对话的摘要。请把新增的对话内容合并进已有摘要，保留关键事实、用户偏好、结论和未解决的问题，" +
+        "省略寒暄和重复内容。直接输出更新后的摘要正文，不超过%d字。";
+
+    // 是否启用滚动摘要，关闭时超出预算的消息直接丢弃
+    @Value("${chat.context.summary.enabled:true}")
+    private boolean enabled;
+
+    // 摘要的最大字数
+    @Value("${chat.context.summary.max-chars:800}")
+    private int maxChars;
+
+    // 补并截断之前的消息时，每次最多并入的条数
+    @Value("${chat.context.summary.fold-batch-size:50}")
+    private int foldBatchSize;
+
+    // 会话还没有摘要时，补并的起点
+    private static final LocalDateTime SUMMARY_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ChatClient chatClient;
+    private final ChatSessionRepository sessionRepository;
+    private final ChatMessageRepository messageRepository;
+    private final SessionCache sessionCache;
+
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "conversation-summarizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ConversationSummarizer(ChatClient chatClient, ChatSessionRepository sessionRepository,
+                                  ChatMessageRepository messageRepository, SessionCache sessionCache) {
+        this.chatClient = chatClient;
+        this.sessionRepository = sessionRepository;
+        this.messageRepository = messageRepository;
+        this.sessionCache = sessionCache;
+    }
+
+    /**
+     * 请求把被挤出窗口的消息并入会话摘要，已有任务进行中时忽略本次请求
+     *
+     * @param sessionId 会话ID
+     * @param previousSummary 当前摘要，可为null
+     * @param evicted 按时间升序排列、尚未并入摘要的消息
+     */
+    public void fold(String sessionId, String previousSummary, List<ChatMessage> evicted) {
+        if (!enabled || evicted.isEmpty() || !inProgress.add(sessionId)) {
+            return;
+        }
+        submit(sessionId, () -> foldNow(sessionId, previousSummary, evicted));
+    }
+
+    /**
+     * 请求把最近历史之前、摘要尚未覆盖的消息并入摘要（历史按条数截断时这部分消息不会被挤出窗口）
+     * 从最早的消息开始，每次最多并入一批，剩余部分由之后的轮次继续
+     *
+     * @param sessionId 会话ID
+     * @param previousSummary 当前摘要，可为null
+     * @param summarizedUntil 摘要已覆盖到的消息时间，可为null
+     * @param before 已加载的最早一条历史消息的时间
+     */
+    public void foldBefore(String sessionId, String previousSummary, LocalDateTime summarizedUntil, LocalDateTime before) {
+        if (!enabled || !inProgress.add(sessionId)) {
+            return;
+        }
+        LocalDateTime after = summarizedUntil != null ? summarizedUntil : SUMMARY_START;
+        submit(sessionId, () -> foldNow(sessionId, previousSummary,
+            messageRepository.findBetween(sessionId, after, before, PageRequest.of(0, foldBatchSize))));
+    }
+
+    private void submit(String sessionId, Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.warning("更新会话摘要失败 - 会话ID: " + sessionId + ", 原因: " + e.getMessage());
+                } finally {
+                    inProgress.remove(sessionId);
+                }
+            });
+        } catch (RuntimeException e) {
+            inProgress.remove(sessionId);
+            logger.warning("提交摘要任务失败: " + e.getMessage());
+        }
+    }
+
+    private void foldNow(String sessionId, String previousSummary, List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        String summary = summarize(previousSummary, messages);
+        if (summary != null && !summary.isBlank()) {
+            ChatMessage last = messages.get(messages.size() - 1);
+            if (sessionRepository.updateConversationSummary(sessionId, summary.trim(), last.getTimestamp()) > 0) {
+                sessionCache.invalidate(sessionId);
+            }
+            logger.info(String.format("已更新会话摘要 - 会话ID: %s, 并入消息: %d, 摘要长度: %d",
+                sessionId, messages.size(), summary.length()));
+        }
+    }
+
+    private String summarize(String previousSummary, List<ChatMessage> evicted) {
+        StringBuilder input = new StringBuilder();
+        input.append("已有摘要：\n")
+            .append(previousSummary == null || previousSummary.isEmpty() ? "（无）" : previousSummary)
+            .append("\n\n新增对话：\n");
+        for (ChatMessage message : evicted) {
+            input.append("user".equals(message.getRole()) ? "用户：" : "助手：")
+                .append(message.getContent())
+                .append('\n');
+        }
+
+        return chatClient.prompt()
+            .messages(List.of(
+                new SystemMessage(String.format(SUMMARY_INSTRUCTION, maxChars)),
+                new UserMessage(input.toString())))
+            .call()
+            .content();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.springaichat.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.LongSupplier;
+
+/**
+ * ID生成器 - 为消息和会话生成按时间递增的紧凑ID（Snowflake风格）
+ * 64位数值由41位毫秒时间戳、10位节点号和12位序号组成，编码为13位Crockford Base32字符串。
+ * 定长编码使字符串顺序与数值顺序一致，新行总是追加在主键索引的末端；
+ * 同一毫秒内序号用尽或系统时钟回拨时沿用上一个时间戳继续递增，保证同一节点内严格单调
+ */
+@Component
+public class IdGenerator {
+
+    // 自定义纪元 2024-01-01T00:00:00Z，41位毫秒可用约69年
+    private static final long EPOCH_MILLIS = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // 编码后的固定长度，13 x 5位 >= 63位
+    public static final int LENGTH = 13;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    // 节点号（0~1023），多实例部署时每个实例必须不同
+    @Value("${chat.id.node-id:0}")
+    private int nodeId;
+
+    // 毫秒时钟，测试中可替换以模拟同一毫秒和时钟回拨
+    private final LongSupplier clock;
+
+    private long lastTimestamp = -1;
+    private long sequence;
+
+    public IdGenerator() {
+        this.clock = System::currentTimeMillis;
+    }
+
+    public IdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    IdGenerator(int nodeId, LongSupplier clock) {
+        this.nodeId = nodeId;
+        this.clock = clock;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("chat.id.node-id 必须在 0~" + MAX_NODE_ID + " 之间: " + nodeId);
+        }
+    }
+
+    /**
+     * 生成下一个ID
+     *
+     * @return 13位ID
+     */
+    public String next() {
+        return encode(nextLong());
+    }
+
+    /**
+     * 生成下一个ID的数值形式
+     */
+    public synchronized long nextLong() {
+        long now = clock.getAsLong() - EPOCH_MILLIS;
+        if (now > lastTimestamp) {
+            lastTimestamp = now;
+            sequence = 0;
+        } else {
+            // 同一毫秒或时钟回拨：沿用上一个时间戳，序号用尽时借用下一毫秒
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                lastTimestamp++;
+            }
+        }
+        return (lastTimestamp << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * 将数值编码为定长Crockford Base32字符串
+     */
+    static String encode(long value) {
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.springaichat.service;
+
+/**
+ * JSON字符串转义工具
+ * 单次遍历完成转义，可直接写入调用方复用的缓冲区
+ */
+public final class JsonEscaper {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonEscaper() {
+    }
+
+    /**
+     * 转义JSON字符串中的特殊字符，无需转义时直接返回原字符串
+     *
+     * @param content 原始内容
+     * @return 转义后的内容
+     */
+    public static String escape(String content) {
+        int length = content.length();
+        for (int i = 0; i < length; i++) {
+            if (needsEscape(content.charAt(i))) {
+                StringBuilder out = new StringBuilder(length + 16);
+                out.append(content, 0, i);
+                escapeFrom(content, i, out);
+                return out.toString();
+            }
+        }
+        return content;
+    }
+
+    /**
+     * 将转义后的内容追加到缓冲区
+     *
+     * @param content 原始内容
+     * @param out 目标缓冲区
+     */
+    public static void escapeInto(CharSequence content, StringBuilder out) {
+        escapeFrom(content, 0, out);
+    }
+
+    private static void escapeFrom(CharSequence content, int start, StringBuilder out) {
+        int length = content.length();
+        for (int i = start; i < length; i++) {
+            char c = content.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        // 其余控制字符使用\\u00XX形式
+                        out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+
+    private static boolean needsEscape(char c) {
+        return c < 0x20 || c == '"' || c == '\\';
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 消息分页游标 - 以 (timestamp, id) 定位消息在会话中的位置
+ * 对外以不透明的Base64字符串传递
+ */
+public final class MessageCursor {
+
+    private final LocalDateTime timestamp;
+    private final String id;
+
+    public MessageCursor(LocalDateTime timestamp, String id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * 生成指向指定消息的游标字符串
+     */
+    public static String encode(ChatMessage message) {
+        String raw = message.getTimestamp().toString() + "|" + message.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @throws IllegalArgumentException 游标格式无效时抛出
+     */
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+            return new MessageCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+        }
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
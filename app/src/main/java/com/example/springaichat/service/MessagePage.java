@@ -0,0 +1,39 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 消息分页结果
+ * 消息按时间升序排列，beforeCursor用于加载更早的一页，afterCursor用于加载更新的一页
+ */
+public class MessagePage {
+
+    private final List<ChatMessage> messages;
+    private final boolean hasMore;
+
+    public MessagePage(List<ChatMessage> messages, boolean hasMore) {
+        this.messages = messages;
+        this.hasMore = hasMore;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * 在查询方向上是否还有更多消息
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public String getBeforeCursor() {
+        return messages.isEmpty() ? null : MessageCursor.encode(messages.get(0));
+    }
+
+    public String getAfterCursor() {
+        return messages.isEmpty() ? null : MessageCursor.encode(messages.get(messages.size() - 1));
+    }
+}
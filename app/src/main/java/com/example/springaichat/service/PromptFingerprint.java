@@ -0,0 +1,53 @@
+package com.example.springaichat.service;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 提示词指纹 - 模型、参数、系统提示和实际发送的消息窗口的SHA-256摘要
+ * 指纹相同的两次调用会得到同分布的回答，供响应缓存和并发合并使用；
+ * 路由到不同模型的服务时，模型不同的指纹不同，一个模型的回答不会作为另一个模型的缓存返回
+ */
+@Component
+public class PromptFingerprint {
+
+    @Value("${spring.ai.openai.chat.options.temperature:}")
+    private String temperature;
+
+    /**
+     * 计算指定模型下消息窗口的指纹
+     *
+     * @param model 模型名称
+     * @param messages 实际发送给模型的消息（含系统提示）
+     * @return 十六进制指纹
+     */
+    public String of(String model, List<Message> messages) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, model);
+            update(digest, temperature);
+            for (Message message : messages) {
+                update(digest, message.getMessageType().name());
+                update(digest, message.getContent());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        // 写入长度前缀，避免不同字段拼接后产生相同的输入
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 最近对话缓存 - 按会话保存最近若干条消息的环形缓冲
+ * 消息保存时同步追加，构建提示词时通常无需再读数据库
+ */
+@Component
+public class RecentTurnCache {
+
+    // 最多缓存的会话数量，超出后淘汰最久未访问的会话
+    @Value("${chat.history.cache.max-sessions:1000}")
+    private int maxSessions;
+
+    // 每个会话缓存的消息条数
+    @Value("${chat.history.cache.messages-per-session:50}")
+    private int messagesPerSession;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSessions;
+        }
+    };
+
+    /**
+     * 获取会话最近的消息（按时间升序）
+     * 缓存中的消息不足所需条数且不是完整会话时返回空，由调用方回源数据库
+     *
+     * @param sessionId 会话ID
+     * @param count 需要的消息条数
+     * @return 最近的消息列表
+     */
+    public Optional<List<ChatMessage>> getRecent(String sessionId, int count) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(sessionId);
+        }
+        if (entry == null) {
+            return Optional.empty();
+        }
+        synchronized (entry) {
+            if (entry.loading || (entry.messages.size() < count && !entry.complete)) {
+                return Optional.empty();
+            }
+            List<ChatMessage> snapshot = new ArrayList<>(entry.messages);
+            int from = Math.max(0, snapshot.size() - count);
+            return Optional.of(snapshot.subList(from, snapshot.size()));
+        }
+    }
+
+    /**
+     * 开始从数据库加载会话尾部，加载期间追加的消息会使本次加载作废
+     *
+     * @param sessionId 会话ID
+     * @return 加载占位条目，交给finishLoad使用
+     */
+    public Entry beginLoad(String sessionId) {
+        Entry entry = new Entry(true);
+        synchronized (entries) {
+            entries.put(sessionId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 完成加载，将数据库读取的尾部消息写入缓存
+     *
+     * @param sessionId 会话ID
+     * @param entry beginLoad返回的占位条目
+     * @param messages 按时间升序排列的尾部消息
+     * @param complete 是否已包含会话的全部消息
+     */
+    public void finishLoad(String sessionId, Entry entry, List<ChatMessage> messages, boolean complete) {
+        boolean discard;
+        synchronized (entry) {
+            discard = entry.dirty;
+            if (!discard) {
+                int from = Math.max(0, messages.size() - messagesPerSession);
+                entry.messages.addAll(messages.subList(from, messages.size()));
+                entry.complete = complete && from == 0;
+                entry.loading = false;
+            }
+        }
+        if (discard) {
+            synchronized (entries) {
+                entries.remove(sessionId, entry);
+            }
+        }
+    }
+
+    /**
+     * 将新会话登记为空的完整缓存
+     */
+    public void initEmpty(String sessionId) {
+        Entry entry = new Entry(false);
+        entry.complete = true;
+        synchronized (entries) {
+            entries.putIfAbsent(sessionId, entry);
+        }
+    }
+
+    /**
+     * 追加一条已保存的消息，只更新已缓存的会话
+     */
+    public void append(String sessionId, ChatMessage message) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(sessionId);
+        }
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.loading) {
+                entry.dirty = true;
+                return;
+            }
+            entry.messages.addLast(message);
+            while (entry.messages.size() > messagesPerSession) {
+                entry.messages.pollFirst();
+                entry.complete = false;
+            }
+        }
+    }
+
+    /**
+     * 使会话缓存失效，在清除历史或删除会话时调用
+     */
+    public void invalidate(String sessionId) {
+        synchronized (entries) {
+            entries.remove(sessionId);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 单个会话的缓存条目
+     */
+    public static final class Entry {
+        private final Deque<ChatMessage> messages = new ArrayDeque<>();
+        private boolean loading;
+        private boolean dirty;
+        private boolean complete;
+
+        private Entry(boolean loading) {
+            this.loading = loading;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.springaichat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 模型响应缓存 - 对完全相同的提示词直接返回之前的完整回答
+ * 缓存键为提示词指纹（见PromptFingerprint），按LRU和TTL淘汰，并限制总内存占用
+ */
+@Component
+public class ResponseCache {
+
+    // 是否启用响应缓存
+    @Value("${chat.cache.enabled:true}")
+    private boolean enabled;
+
+    // 缓存有效期（秒）
+    @Value("${chat.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    // 最多缓存的响应条数
+    @Value("${chat.cache.max-entries:1000}")
+    private int maxEntries;
+
+    // 缓存内容占用的内存上限（字节，按UTF-16估算）
+    @Value("${chat.cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询缓存的完整响应
+     */
+    public Optional<String> get(String key) {
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+                if (entry != null) {
+                    remove(key, entry);
+                }
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+            return Optional.of(entry.response);
+        }
+    }
+
+    /**
+     * 缓存一次成功完成的完整响应
+     */
+    public void put(String key, String response) {
+        if (!enabled || key == null || response == null || response.isEmpty()) {
+            return;
+        }
+        long bytes = (long) response.length() * 2;
+        if (bytes > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(response, System.currentTimeMillis() + ttlSeconds * 1000, bytes));
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += bytes;
+            evictOverflow();
+        }
+    }
+
+    /**
+     * 淘汰超出容量的最久未使用条目，过期条目在读取时惰性清除
+     */
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || totalBytes > maxBytes)) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue().bytes;
+            evictions++;
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalBytes -= entry.bytes;
+        evictions++;
+    }
+
+    /**
+     * 获取缓存统计：命中、未命中、淘汰次数和当前占用
+     */
+    public Map<String, Object> getStats() {
+        synchronized (entries) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", enabled);
+            stats.put("entries", entries.size());
+            stats.put("bytes", totalBytes);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            long lookups = hits + misses;
+            stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+            stats.put("evictions", evictions);
+            return stats;
+        }
+    }
+
+    private static final class Entry {
+        private final String response;
+        private final long expiresAt;
+        private final long bytes;
+
+        private Entry(String response, long expiresAt, long bytes) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.ChatRoutingProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * 多服务路由模型 - 在多个OpenAI兼容的模型服务之间按首个片段延迟和错误率选择
+ * 每个服务在最近若干个请求的窗口内统计首个片段延迟（TTFT）和错误率，请求路由到延迟估计最低的健康服务，
+ * 错误率过高的服务暂停路由一段时间。首个片段到达之前失败的请求立即转到下一个服务；
+ * 启用对冲时，若首个片段超过所选服务延迟分位数仍未到达，再向另一个服务发起请求，
+ * 先输出的一方胜出，另一方被取消，对冲请求的比例受额度限制
+ */
+public class RoutingChatModel implements ChatModel {
+
+    private static final Logger logger = Logger.getLogger(RoutingChatModel.class.getName());
+
+    private final List<Endpoint> endpoints;
+    private final ChatRoutingProperties properties;
+    private final ChatMetrics chatMetrics;
+
+    // 对冲额度：每个请求累积maxRatio，每次对冲消耗1
+    private final Object hedgeLock = new Object();
+    private double hedgeCredits;
+
+    public RoutingChatModel(List<Endpoint> endpoints, ChatRoutingProperties properties, ChatMetrics chatMetrics) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个模型服务");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.properties = properties;
+        this.chatMetrics = chatMetrics;
+    }
+
+    /**
+     * 关闭各服务的并发限制器，停止排队超时清理
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.limiter != null) {
+                endpoint.limiter.close();
+            }
+        }
+    }
+
+    /**
+     * 同步调用，失败时转到下一个服务重试一次
+     * 同步调用的耗时是完整回答的生成时间，不是首个片段延迟，不计入延迟窗口，只记录结果
+     */
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<Endpoint> ranked = rank();
+        RuntimeException failure = null;
+        for (Endpoint endpoint : ranked.subList(0, Math.min(2, ranked.size()))) {
+            endpoint.begin();
+            try {
+                ChatResponse response = endpoint.call(() -> endpoint.chatModel.call(prompt));
+                endpoint.recordOutcome(true);
+                chatMetrics.recordRoutedRequest(endpoint.name, "completed");
+                return response;
+            } catch (RuntimeException e) {
+                // 本地并发名额不足不计入服务的错误率
+                if (!(e instanceof AdaptiveConcurrencyLimiter.UpstreamBusyException)) {
+                    endpoint.recordOutcome(false);
+                }
+                chatMetrics.recordRoutedRequest(endpoint.name, "error");
+                logger.warning(String.format("模型服务调用失败 - 服务: %s, 原因: %s", endpoint.name, e.getMessage()));
+                failure = e;
+            } finally {
+                endpoint.end();
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * 流式调用：主请求在首个片段前失败或超过对冲等待时间时，向排名第二的服务发起备用请求，
+     * 两者中先输出片段的一方胜出；两者都失败时抛出最后一个服务的原始异常
+     */
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.deferContextual(context -> {
+            Route route = context.getOrDefault(Route.class, null);
+            List<Endpoint> ranked = rank();
+            Endpoint primary = ranked.get(0);
+            if (ranked.size() == 1) {
+                return attempt(primary, prompt, null, route);
+            }
+            Endpoint backup = ranked.get(1);
+
+            // 主请求在首个片段之前失败时立即启动备用请求
+            Sinks.One<Boolean> primaryFailed = Sinks.one();
+            // 两个请求都失败时firstWithValue只抛出NoSuchElementException，保留真实原因供错误分类
+            AtomicReference<Throwable> lastFailure = new AtomicReference<>();
+            Flux<ChatResponse> first = attempt(primary, prompt, primaryFailed, route).doOnError(lastFailure::set);
+
+            // 触发信号：true为主请求失败，false为对冲等待超时；额度不足时只保留失败转移
+            Mono<Boolean> trigger = primaryFailed.asMono();
+            long hedgeDelay = hedgeDelayMillis(primary);
+            if (hedgeDelay >= 0) {
+                Mono<Boolean> hedgeTimer = Mono.delay(Duration.ofMillis(hedgeDelay))
+                    .flatMap(tick -> acquireHedgeCredit() ? Mono.just(false) : Mono.<Boolean>never());
+                trigger = Mono.firstWithSignal(primaryFailed.asMono(), hedgeTimer);
+            }
+            Flux<ChatResponse> second = trigger.flatMapMany(failedOver -> {
+                if (!failedOver) {
+                    chatMetrics.recordHedge(primary.name, backup.name);
+                    logger.info(String.format("首个片段超过%dms未到达，向 %s 发起对冲请求（主服务: %s）",
+                        hedgeDelay, backup.name, primary.name));
+                }
+                return attempt(backup, prompt, null, route).doOnError(lastFailure::set);
+            });
+            return Flux.firstWithValue(first, second)
+                .onErrorMap(NoSuchElementException.class, e -> lastFailure.get() != null ? lastFailure.get() : e);
+        });
+    }
+
+    /**
+     * 向单个服务发起流式请求并记录其首个片段延迟和结果
+     * 首个片段前被取消（对冲落败或客户端断开）时，把已等待的时长记为延迟样本
+     *
+     * @param failedBeforeFirst 首个片段前失败或无输出结束时通知，可为null
+     * @param route 调用方传入的路由结果，首个片段到达时写入本服务，可为null
+     */
+    private Flux<ChatResponse> attempt(Endpoint endpoint, Prompt prompt, Sinks.One<Boolean> failedBeforeFirst,
+                                       Route route) {
+        return Flux.defer(() -> {
+            // 首个片段延迟从取得并发名额、请求真正发出时算起
+            AtomicLong startNanos = new AtomicLong();
+            AtomicBoolean started = new AtomicBoolean();
+            endpoint.begin();
+            return endpoint.stream(Flux.defer(() -> {
+                    startNanos.set(System.nanoTime());
+                    return endpoint.chatModel.stream(prompt);
+                }))
+                .doOnNext(response -> {
+                    if (started.compareAndSet(false, true)) {
+                        endpoint.recordFirstToken(System.nanoTime() - startNanos.get());
+                        if (route != null) {
+                            route.servedBy(endpoint);
+                        }
+                    }
+                })
+                .doOnComplete(() -> {
+                    endpoint.recordOutcome(true);
+                    chatMetrics.recordRoutedRequest(endpoint.name, "completed");
+                    // 没有任何输出就结束时也转到备用服务，否则会一直等待对冲计时
+                    if (failedBeforeFirst != null && !started.get()) {
+                        failedBeforeFirst.tryEmitValue(true);
+                    }
+                })
+                .doOnError(e -> {
+                    if (!(e instanceof AdaptiveConcurrencyLimiter.UpstreamBusyException)) {
+                        endpoint.recordOutcome(false);
+                    }
+                    chatMetrics.recordRoutedRequest(endpoint.name, "error");
+                    logger.warning(String.format("模型服务流式调用失败 - 服务: %s, 原因: %s", endpoint.name, e.getMessage()));
+                    if (failedBeforeFirst != null && !started.get()) {
+                        failedBeforeFirst.tryEmitValue(true);
+                    }
+                })
+                .doOnCancel(() -> {
+                    if (!started.get() && startNanos.get() != 0) {
+                        endpoint.recordFirstToken(System.nanoTime() - startNanos.get());
+                    }
+                    chatMetrics.recordRoutedRequest(endpoint.name, "cancelled");
+                })
+                .doFinally(signal -> endpoint.end());
+        });
+    }
+
+    /**
+     * 当前最可能处理请求的服务所用的模型：延迟估计最低的健康服务，不含随机探索
+     * 响应缓存按模型区分，查询缓存时使用
+     */
+    public String preferredModel() {
+        return rank(false).get(0).model;
+    }
+
+    private List<Endpoint> rank() {
+        return rank(true);
+    }
+
+    /**
+     * 按延迟估计对健康的服务排序；explore为true时小概率把随机一个服务排到首位以更新其统计；
+     * 全部服务都被暂停时按暂停前的统计排序，仍然尝试
+     */
+    private List<Endpoint> rank(boolean explore) {
+        long now = System.currentTimeMillis();
+        List<Endpoint> healthy = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now, properties)) {
+                healthy.add(endpoint);
+            }
+        }
+        if (healthy.isEmpty()) {
+            healthy.addAll(endpoints);
+        }
+        healthy.sort(Comparator.comparingDouble(endpoint -> endpoint.cost(properties)));
+        if (explore && healthy.size() > 1 && ThreadLocalRandom.current().nextDouble() < properties.getExplorationRatio()) {
+            Endpoint explored = healthy.remove(1 + ThreadLocalRandom.current().nextInt(healthy.size() - 1));
+            healthy.add(0, explored);
+        }
+        return healthy;
+    }
+
+    /**
+     * 对冲等待时间：所选服务首个片段延迟的分位数，限制在上下限之间；未启用对冲时返回-1
+     */
+    private long hedgeDelayMillis(Endpoint endpoint) {
+        ChatRoutingProperties.Hedge hedge = properties.getHedge();
+        if (!hedge.isEnabled()) {
+            return -1;
+        }
+        synchronized (hedgeLock) {
+            hedgeCredits = Math.min(hedgeCredits + hedge.getMaxRatio(), 10);
+        }
+        long percentile = endpoint.ttftPercentileMillis(hedge.getPercentile(), properties.getMinSamples());
+        if (percentile < 0) {
+            return hedge.getMaxDelayMs();
+        }
+        return Math.max(hedge.getMinDelayMs(), Math.min(hedge.getMaxDelayMs(), percentile));
+    }
+
+    private boolean acquireHedgeCredit() {
+        synchronized (hedgeLock) {
+            if (hedgeCredits < 1) {
+                return false;
+            }
+            hedgeCredits -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * 获取各服务的路由统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (Endpoint endpoint : endpoints) {
+            stats.put(endpoint.name, endpoint.getStats(now, properties));
+        }
+        return stats;
+    }
+
+    /**
+     * 一次流式调用实际由哪个服务输出
+     * 调用方以 Route.class 为键放入Reactor上下文，胜出的服务在首个片段到达时写入；
+     * 没有输出任何片段的调用保持为空
+     */
+    public static final class Route {
+        private volatile Endpoint endpoint;
+
+        private void servedBy(Endpoint endpoint) {
+            if (this.endpoint == null) {
+                this.endpoint = endpoint;
+            }
+        }
+
+        /**
+         * 输出回答的服务名称，尚无输出时为null
+         */
+        public String getEndpoint() {
+            Endpoint served = endpoint;
+            return served != null ? served.name : null;
+        }
+
+        /**
+         * 输出回答的服务所用的模型，尚无输出时为null
+         */
+        public String getModel() {
+            Endpoint served = endpoint;
+            return served != null ? served.model : null;
+        }
+    }
+
+    /**
+     * 单个模型服务及其滑动窗口统计
+     */
+    public static final class Endpoint {
+        private final String name;
+        // 模型名称，响应缓存键和指标标签使用
+        private final String model;
+        private final ChatModel chatModel;
+        // 自适应并发限制，未启用时为null
+        private final AdaptiveConcurrencyLimiter limiter;
+
+        // 最近的首个片段延迟（纳秒）和请求结果，环形缓冲
+        private final long[] ttftNanos;
+        private final boolean[] outcomes;
+        private int ttftCount;
+        private int ttftNext;
+        private int outcomeCount;
+        private int outcomeNext;
+        private int failures;
+        private int inFlight;
+        private long ejectedUntil;
+
+        public Endpoint(String name, String model, ChatModel chatModel, AdaptiveConcurrencyLimiter limiter, int windowSize) {
+            this.name = name;
+            this.model = model;
+            this.chatModel = chatModel;
+            this.limiter = limiter;
+            this.ttftNanos = new long[windowSize];
+            this.outcomes = new boolean[windowSize];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        private <T> T call(Supplier<T> request) {
+            return limiter != null ? limiter.limit(request) : request.get();
+        }
+
+        private <T> Flux<T> stream(Flux<T> request) {
+            return limiter != null ? limiter.limit(request) : request;
+        }
+
+        private synchronized void begin() {
+            inFlight++;
+        }
+
+        private synchronized void end() {
+            inFlight--;
+        }
+
+        private synchronized void recordFirstToken(long nanos) {
+            ttftNanos[ttftNext] = nanos;
+            ttftNext = (ttftNext + 1) % ttftNanos.length;
+            ttftCount = Math.min(ttftCount + 1, ttftNanos.length);
+        }
+
+        private synchronized void recordOutcome(boolean success) {
+            if (outcomeCount == outcomes.length && !outcomes[outcomeNext]) {
+                failures--;
+            }
+            outcomes[outcomeNext] = success;
+            outcomeNext = (outcomeNext + 1) % outcomes.length;
+            outcomeCount = Math.min(outcomeCount + 1, outcomes.length);
+            if (!success) {
+                failures++;
+            }
+        }
+
+        private synchronized double errorRate() {
+            return outcomeCount == 0 ? 0 : (double) failures / outcomeCount;
+        }
+
+        /**
+         * 错误率超过阈值时暂停一段时间，到期后清空结果窗口重新统计
+         */
+        private synchronized boolean isEjected(long now, ChatRoutingProperties properties) {
+            if (ejectedUntil > now) {
+                return true;
+            }
+            if (ejectedUntil != 0) {
+                ejectedUntil = 0;
+                Arrays.fill(outcomes, false);
+                outcomeCount = 0;
+                outcomeNext = 0;
+                failures = 0;
+                return false;
+            }
+            if (outcomeCount >= properties.getMinSamples() && errorRate() >= properties.getEjectErrorRate()) {
+                ejectedUntil = now + properties.getEjectMillis();
+                logger.warning(String.format("模型服务错误率过高，暂停路由 %dms - 服务: %s, 错误率: %.2f",
+                    properties.getEjectMillis(), name, errorRate()));
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 路由代价：延迟中位数按错误率和进行中（含在并发限制中排队）的请求数放大；样本不足且没有失败的服务代价为0，优先获得样本
+         */
+        private synchronized double cost(ChatRoutingProperties properties) {
+            long median = ttftPercentileMillis(0.5, properties.getMinSamples());
+            if (median < 0) {
+                // 只有失败没有延迟样本的服务排在最后
+                return errorRate() > 0 ? Double.MAX_VALUE : 0;
+            }
+            return median * (1 + 4 * errorRate()) * (1 + 0.1 * inFlight);
+        }
+
+        /**
+         * 首个片段延迟的分位数（毫秒），样本不足时返回-1
+         */
+        private synchronized long ttftPercentileMillis(double percentile, int minSamples) {
+            if (ttftCount < Math.max(1, minSamples)) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(ttftNanos, ttftCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000;
+        }
+
+        private synchronized Map<String, Object> getStats(long now, ChatRoutingProperties properties) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("ttftP50Ms", ttftPercentileMillis(0.5, 1));
+            stats.put("ttftP90Ms", ttftPercentileMillis(0.9, 1));
+            stats.put("errorRate", errorRate());
+            stats.put("samples", outcomeCount);
+            stats.put("inFlight", inFlight);
+            stats.put("ejected", ejectedUntil > now);
+            if (limiter != null) {
+                stats.put("limiter", limiter.getStats());
+            }
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.springaichat.service;
+
+import java.util.List;
+
+/**
+ * 全文检索命中的一条消息
+ * snippet是包含查询词的正文片段，highlights是片段中需要高亮的字符区间 [start, end)
+ */
+public class SearchHit {
+
+    private final String messageId;
+    private final String sessionId;
+    private final String role;
+    private final long timestamp;
+    private final double score;
+    private final String snippet;
+    private final List<int[]> highlights;
+    private String sessionName;
+
+    public SearchHit(String messageId, String sessionId, String role, long timestamp, double score,
+                     String snippet, List<int[]> highlights) {
+        this.messageId = messageId;
+        this.sessionId = sessionId;
+        this.role = role;
+        this.timestamp = timestamp;
+        this.score = score;
+        this.snippet = snippet;
+        this.highlights = highlights;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    /**
+     * 消息时间（毫秒时间戳）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public List<int[]> getHighlights() {
+        return highlights;
+    }
+
+    public String getSessionName() {
+        return sessionName;
+    }
+
+    public void setSessionName(String sessionName) {
+        this.sessionName = sessionName;
+    }
+}
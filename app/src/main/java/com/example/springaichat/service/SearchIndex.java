@@ -0,0 +1,752 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * 聊天记录全文索引 - 进程内倒排索引，按BM25排序
+ * 消息保存时同步写入内存中的可变段，后台线程定期把可变段刷成磁盘上的不可变段，段数过多时合并。
+ * 启动时在后台加载已有的段，再从数据库补齐上次刷盘之后的消息；索引目录为空时从热表和归档块全量重建。
+ * 删除会话和清除历史记为会话级墓碑，查询时过滤，合并时物理删除。
+ * 归档只移动数据库中的消息，已建立的索引不受影响，归档会话仍可被搜索到
+ */
+@Component
+public class SearchIndex {
+
+    private static final Logger logger = Logger.getLogger(SearchIndex.class.getName());
+
+    private static final String SELECT_MESSAGES_SQL =
+        "SELECT m.id, m.session_id, m.role, m.timestamp, m.status, c.content FROM chat_messages m " +
+        "JOIN chat_message_contents c ON c.message_id = m.id WHERE m.timestamp >= ?";
+
+    private static final String TOMBSTONE_FILE = "tombstones.log";
+
+    // BM25参数
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // 启动补齐时向前多回看的时间，覆盖异步批量写入造成的乱序
+    private static final long CATCH_UP_MARGIN_MS = 5 * 60 * 1000L;
+
+    // 摘要长度和命中位置之前保留的字符数
+    private static final int SNIPPET_LENGTH = 120;
+    private static final int SNIPPET_LEAD = 30;
+
+    // 是否启用全文索引
+    @Value("${chat.search.enabled:true}")
+    private boolean enabled;
+
+    // 索引段文件所在目录
+    @Value("${chat.search.index-dir:data/search-index}")
+    private String indexDir;
+
+    // 可变段定期刷盘的间隔（秒）
+    @Value("${chat.search.flush-interval-seconds:10}")
+    private long flushIntervalSeconds;
+
+    // 可变段达到该文档数时立即刷盘
+    @Value("${chat.search.flush-docs:1000}")
+    private int flushDocs;
+
+    // 不可变段数量超过该值时合并为一个段
+    @Value("${chat.search.max-segments:10}")
+    private int maxSegments;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SessionArchiver sessionArchiver;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<SearchSegment> segments = new ArrayList<>();
+    private SearchSegment live = SearchSegment.live();
+    private SearchSegment flushing;
+    private long nextSegmentId = 1;
+
+    // 会话ID -> 删除时间（毫秒），该时间及之前的文档视为已删除
+    private final Map<String, Long> tombstones = new ConcurrentHashMap<>();
+
+    // 启动补齐期间已入索引的消息ID，用于去重；补齐完成后置空
+    private volatile Set<String> catchUpSeen = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+
+    private Path dir;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SearchIndex(JdbcTemplate jdbcTemplate, SessionArchiver sessionArchiver) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sessionArchiver = sessionArchiver;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        dir = Paths.get(indexDir);
+        // 加载、刷盘和合并都在同一个线程上执行，彼此不会并发
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::load);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (ready) {
+            flushQuietly();
+        }
+        lock.writeLock().lock();
+        try {
+            for (SearchSegment segment : segments) {
+                closeQuietly(segment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把一条已保存的消息加入索引，出错的回复不建索引
+     *
+     * @param sessionId 会话ID
+     * @param message 消息
+     */
+    public void add(String sessionId, ChatMessage message) {
+        if (!enabled || "error".equals(message.getStatus())) {
+            return;
+        }
+        Set<String> seen = catchUpSeen;
+        if (seen != null && !seen.add(message.getId())) {
+            return;
+        }
+        index(message.getId(), sessionId, message.getRole(), toEpochMilli(message.getTimestamp()), message.getContent());
+    }
+
+    /**
+     * 写入可变段，返回可变段当前的文档数
+     */
+    private int index(String messageId, String sessionId, String role, long timestamp, String content) {
+        if (content == null || content.isEmpty()) {
+            return 0;
+        }
+        List<String> tokens = SearchTokenizer.tokenize(content);
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        int size;
+        lock.writeLock().lock();
+        try {
+            live.add(messageId, sessionId, role, timestamp, content, tokens);
+            size = live.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (size == flushDocs && ready) {
+            scheduler.execute(this::flushQuietly);
+        }
+        return size;
+    }
+
+    /**
+     * 删除会话在索引中的全部文档，在删除会话和清除历史时调用
+     *
+     * @param sessionId 会话ID
+     */
+    public void removeSession(String sessionId) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        tombstones.put(sessionId, now);
+        synchronized (tombstones) {
+            try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(TOMBSTONE_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(sessionId + "\t" + now);
+                writer.newLine();
+            } catch (IOException e) {
+                logger.warning(String.format("写入索引墓碑失败 - 会话ID: %s, 原因: %s", sessionId, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * 全文检索：查询词全部出现的消息按BM25得分降序返回
+     * 连续的汉字按二字切分后全部命中即视为匹配，近似短语查询
+     *
+     * @param query 查询文本
+     * @param sessionId 限定会话，为null时检索全部会话
+     * @param limit 返回的最大条数
+     * @return 检索结果
+     */
+    public SearchResult search(String query, String sessionId, int limit) {
+        List<String> terms = SearchTokenizer.queryTerms(query);
+        if (!enabled || terms.isEmpty() || limit <= 0) {
+            return new SearchResult(List.of(), 0, ready);
+        }
+
+        lock.readLock().lock();
+        try {
+            List<SearchSegment> view = new ArrayList<>(segments);
+            if (flushing != null) {
+                view.add(flushing);
+            }
+            view.add(live);
+
+            long docCount = 0;
+            long totalTokens = 0;
+            for (SearchSegment segment : view) {
+                docCount += segment.size();
+                totalTokens += segment.getTotalTokens();
+            }
+            if (docCount == 0) {
+                return new SearchResult(List.of(), 0, ready);
+            }
+            double avgLength = (double) totalTokens / docCount;
+
+            double[] idf = new double[terms.size()];
+            for (int t = 0; t < terms.size(); t++) {
+                long df = 0;
+                for (SearchSegment segment : view) {
+                    SearchSegment.IntList postings = segment.postings(terms.get(t));
+                    df += postings != null ? postings.docCount() : 0;
+                }
+                if (df == 0) {
+                    return new SearchResult(List.of(), 0, ready);
+                }
+                idf[t] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            }
+
+            // 最小堆保留得分最高的limit条，同分时较新的消息优先
+            Comparator<Candidate> order = Comparator.<Candidate>comparingDouble(c -> c.score)
+                .thenComparingLong(c -> c.doc.timestamp);
+            PriorityQueue<Candidate> top = new PriorityQueue<>(order);
+            int total = 0;
+
+            for (SearchSegment segment : view) {
+                Map<Integer, double[]> scores = scoreSegment(segment, terms, idf, avgLength);
+                for (Map.Entry<Integer, double[]> entry : scores.entrySet()) {
+                    double[] acc = entry.getValue();
+                    if (acc[1] < terms.size()) {
+                        continue;
+                    }
+                    SearchSegment.Doc doc = segment.doc(entry.getKey());
+                    if ((sessionId != null && !sessionId.equals(doc.sessionId)) || isDeleted(doc)) {
+                        continue;
+                    }
+                    total++;
+                    Candidate candidate = new Candidate(segment, doc, acc[0]);
+                    if (top.size() < limit) {
+                        top.add(candidate);
+                    } else if (order.compare(candidate, top.peek()) > 0) {
+                        top.poll();
+                        top.add(candidate);
+                    }
+                }
+            }
+
+            List<Candidate> ranked = new ArrayList<>(top);
+            ranked.sort(order.reversed());
+            List<SearchHit> hits = new ArrayList<>(ranked.size());
+            for (Candidate candidate : ranked) {
+                hits.add(toHit(candidate, terms));
+            }
+            return new SearchResult(hits, total, ready);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 计算段内命中文档的得分，返回 文档号 -> [得分, 命中的查询词数]
+     */
+    private Map<Integer, double[]> scoreSegment(SearchSegment segment, List<String> terms, double[] idf, double avgLength) {
+        Map<Integer, double[]> scores = new HashMap<>();
+        for (int t = 0; t < terms.size(); t++) {
+            SearchSegment.IntList postings = segment.postings(terms.get(t));
+            if (postings == null) {
+                // 段内缺少任一查询词时没有文档能全部命中
+                return Map.of();
+            }
+            for (int i = 0; i < postings.size(); i += 2) {
+                int docId = postings.get(i);
+                int tf = postings.get(i + 1);
+                double length = segment.doc(docId).length;
+                double score = idf[t] * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+                double[] acc = scores.computeIfAbsent(docId, id -> new double[2]);
+                acc[0] += score;
+                acc[1]++;
+            }
+        }
+        return scores;
+    }
+
+    private boolean isDeleted(SearchSegment.Doc doc) {
+        Long deletedAt = tombstones.get(doc.sessionId);
+        return deletedAt != null && doc.timestamp <= deletedAt;
+    }
+
+    /**
+     * 读取正文并截取包含查询词的片段，计算高亮区间
+     */
+    private SearchHit toHit(Candidate candidate, List<String> terms) {
+        String content;
+        try {
+            content = candidate.segment.content(candidate.doc);
+        } catch (IOException e) {
+            logger.warning("读取索引正文失败: " + e.getMessage());
+            content = "";
+        }
+        String lower = content.toLowerCase(Locale.ROOT);
+        if (lower.length() != content.length()) {
+            lower = content;
+        }
+
+        int first = -1;
+        for (String term : terms) {
+            int index = lower.indexOf(term);
+            if (index >= 0 && (first < 0 || index < first)) {
+                first = index;
+            }
+        }
+        int start = Math.max(0, first - SNIPPET_LEAD);
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start--;
+        }
+        int end = Math.min(content.length(), start + SNIPPET_LENGTH);
+        if (end < content.length() && Character.isLowSurrogate(content.charAt(end))) {
+            end--;
+        }
+        String prefix = start > 0 ? "..." : "";
+        String snippet = prefix + content.substring(start, end).replace('\n', ' ').replace('\r', ' ')
+            + (end < content.length() ? "..." : "");
+
+        List<int[]> ranges = new ArrayList<>();
+        for (String term : terms) {
+            int index = lower.indexOf(term, start);
+            while (index >= 0 && index < end) {
+                ranges.add(new int[]{
+                    index - start + prefix.length(),
+                    Math.min(index + term.length(), end) - start + prefix.length()
+                });
+                index = lower.indexOf(term, index + 1);
+            }
+        }
+        ranges.sort(Comparator.comparingInt(range -> range[0]));
+        List<int[]> merged = new ArrayList<>();
+        for (int[] range : ranges) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+
+        SearchSegment.Doc doc = candidate.doc;
+        return new SearchHit(doc.messageId, doc.sessionId, doc.role, doc.timestamp, candidate.score, snippet, merged);
+    }
+
+    /**
+     * 启动加载：读取已有的段和墓碑，再从数据库补齐；任一段损坏时丢弃全部段重建
+     */
+    private void load() {
+        long startMillis = System.currentTimeMillis();
+        try {
+            Files.createDirectories(dir);
+            List<SearchSegment> loaded = loadSegments();
+            loadTombstones();
+
+            long watermark = Long.MIN_VALUE;
+            for (SearchSegment segment : loaded) {
+                for (SearchSegment.Doc doc : segment.docs()) {
+                    watermark = Math.max(watermark, doc.timestamp);
+                }
+            }
+            long since = loaded.isEmpty() ? 0 : watermark - CATCH_UP_MARGIN_MS;
+            Set<String> seen = catchUpSeen;
+            for (SearchSegment segment : loaded) {
+                for (SearchSegment.Doc doc : segment.docs()) {
+                    if (doc.timestamp >= since) {
+                        seen.add(doc.messageId);
+                    }
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                segments.addAll(loaded);
+                for (SearchSegment segment : loaded) {
+                    nextSegmentId = Math.max(nextSegmentId, segment.getId() + 1);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            int added = catchUp(since, seen);
+            if (loaded.isEmpty()) {
+                added += indexArchives(seen);
+            }
+            catchUpSeen = null;
+            ready = true;
+            logger.info(String.format("全文索引已就绪 - 已有段: %d, 补齐消息: %d, 耗时: %dms",
+                loaded.size(), added, System.currentTimeMillis() - startMillis));
+            flushQuietly();
+        } catch (Exception e) {
+            catchUpSeen = null;
+            ready = true;
+            logger.severe("全文索引加载失败: " + e.getMessage());
+        }
+    }
+
+    private List<SearchSegment> loadSegments() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (name.startsWith("segment-") && name.endsWith(".idx")) {
+                    ids.add(Long.parseLong(name.substring("segment-".length(), name.length() - ".idx".length())));
+                }
+            }
+        }
+        ids.sort(Comparator.naturalOrder());
+
+        List<SearchSegment> loaded = new ArrayList<>();
+        try {
+            for (long id : ids) {
+                loaded.add(SearchSegment.load(dir, id));
+            }
+        } catch (IOException e) {
+            logger.warning("索引段损坏，将全量重建: " + e.getMessage());
+            for (SearchSegment segment : loaded) {
+                closeQuietly(segment);
+            }
+            for (long id : ids) {
+                SearchSegment.delete(dir, id);
+            }
+            Files.deleteIfExists(dir.resolve(TOMBSTONE_FILE));
+            return List.of();
+        }
+        return loaded;
+    }
+
+    private void loadTombstones() throws IOException {
+        Path file = dir.resolve(TOMBSTONE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.lastIndexOf('\t');
+            if (tab > 0) {
+                tombstones.merge(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)), Math::max);
+            }
+        }
+    }
+
+    /**
+     * 把热表中指定时间之后、尚未入索引的消息加入索引
+     */
+    private int catchUp(long sinceMillis, Set<String> seen) {
+        int[] added = {0};
+        Timestamp since = new Timestamp(sinceMillis);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_MESSAGES_SQL);
+            statement.setFetchSize(1000);
+            statement.setTimestamp(1, since);
+            return statement;
+        }, rs -> {
+            String messageId = rs.getString("id");
+            if ("error".equals(rs.getString("status")) || !seen.add(messageId)) {
+                return;
+            }
+            int size = index(messageId, rs.getString("session_id"), rs.getString("role"),
+                rs.getTimestamp("timestamp").getTime(), rs.getString("content"));
+            added[0]++;
+            // 补齐在索引线程上执行，直接分批刷盘，避免全量重建时正文全部堆在内存中
+            if (size >= flushDocs) {
+                flush();
+            }
+        });
+        return added[0];
+    }
+
+    /**
+     * 全量重建时把归档块中的消息加入索引
+     */
+    private int indexArchives(Set<String> seen) {
+        int[] added = {0};
+        try {
+            sessionArchiver.forEachArchivedMessage((sessionId, message) -> {
+                if ("error".equals(message.getStatus()) || !seen.add(message.getId())) {
+                    return;
+                }
+                int size = index(message.getId(), sessionId, message.getRole(),
+                    toEpochMilli(message.getTimestamp()), message.getContent());
+                added[0]++;
+                if (size >= flushDocs) {
+                    flush();
+                }
+            });
+        } catch (Exception e) {
+            logger.warning("读取归档会话建立索引失败: " + e.getMessage());
+        }
+        return added[0];
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+            mergeIfNeeded();
+        } catch (Exception e) {
+            logger.warning("全文索引刷盘失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把可变段写成磁盘上的不可变段；写入失败时段仍留在内存中可查，合并时会再次尝试落盘
+     */
+    private void flush() {
+        SearchSegment toWrite;
+        long segmentId;
+        lock.writeLock().lock();
+        try {
+            if (live.size() == 0) {
+                return;
+            }
+            toWrite = live;
+            flushing = live;
+            live = SearchSegment.live();
+            segmentId = nextSegmentId++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        SearchSegment written = toWrite;
+        try {
+            written = toWrite.writeTo(dir, segmentId);
+        } catch (IOException e) {
+            logger.warning("写入索引段失败: " + e.getMessage());
+        }
+
+        lock.writeLock().lock();
+        try {
+            segments.add(written);
+            flushing = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 段数超过上限时合并全部不可变段，同时物理删除墓碑覆盖的文档并清理不再需要的墓碑
+     * 合并逐篇复制正文、重映射倒排表，不在内存中重建段
+     */
+    private void mergeIfNeeded() throws IOException {
+        List<SearchSegment> sources;
+        long segmentId;
+        lock.readLock().lock();
+        try {
+            if (segments.size() <= maxSegments) {
+                return;
+            }
+            sources = new ArrayList<>(segments);
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            segmentId = nextSegmentId++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long startMillis = System.currentTimeMillis();
+        // 合并开始前已有的墓碑在合并中全部生效，合并后可以从墓碑文件中清理
+        Map<String, Long> applied = new HashMap<>(tombstones);
+        SearchSegment written = SearchSegment.merge(dir, segmentId, sources, this::isDeleted);
+
+        lock.writeLock().lock();
+        try {
+            segments.removeAll(sources);
+            segments.add(0, written);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (SearchSegment source : sources) {
+            closeQuietly(source);
+            if (source.getId() >= 0) {
+                SearchSegment.delete(dir, source.getId());
+            }
+        }
+        compactTombstones(applied, written);
+        logger.info(String.format("全文索引段已合并 - 合并段数: %d, 文档数: %d, 耗时: %dms",
+            sources.size(), written.size(), System.currentTimeMillis() - startMillis));
+    }
+
+    /**
+     * 合并后清理墓碑：合并已物理删除墓碑覆盖的文档，其他段中也没有被覆盖的文档时，
+     * 该墓碑不再需要，从内存中移除并重写墓碑文件，避免墓碑文件无限增长
+     *
+     * @param applied 合并开始前的墓碑
+     * @param merged 合并生成的段
+     */
+    private void compactTombstones(Map<String, Long> applied, SearchSegment merged) throws IOException {
+        if (applied.isEmpty()) {
+            return;
+        }
+        Set<String> stillNeeded = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            List<SearchSegment> others = new ArrayList<>(segments);
+            others.remove(merged);
+            if (flushing != null) {
+                others.add(flushing);
+            }
+            others.add(live);
+            for (SearchSegment segment : others) {
+                for (SearchSegment.Doc doc : segment.docs()) {
+                    Long deletedAt = applied.get(doc.sessionId);
+                    if (deletedAt != null && doc.timestamp <= deletedAt) {
+                        stillNeeded.add(doc.sessionId);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 删除前开始的对话可能稍后才保存时间戳更早的消息，最近的墓碑保留一段时间
+        long graceCutoff = System.currentTimeMillis() - CATCH_UP_MARGIN_MS;
+        int removed = 0;
+        for (Map.Entry<String, Long> entry : applied.entrySet()) {
+            if (entry.getValue() >= graceCutoff || stillNeeded.contains(entry.getKey())) {
+                continue;
+            }
+            // 合并期间同一会话又有新的墓碑时保留新值
+            if (tombstones.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return;
+        }
+        // 与removeSession的追加互斥；先写临时文件再原子改名
+        synchronized (tombstones) {
+            Path file = dir.resolve(TOMBSTONE_FILE);
+            Path tempFile = dir.resolve(TOMBSTONE_FILE + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> entry : tombstones.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info(String.format("已清理索引墓碑: %d 个，剩余: %d 个", removed, tombstones.size()));
+    }
+
+    private static void closeQuietly(SearchSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            logger.warning("关闭索引段失败: " + e.getMessage());
+        }
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 获取索引统计：文档数、段数、词项数和是否就绪
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        lock.readLock().lock();
+        try {
+            long docs = live.size() + (flushing != null ? flushing.size() : 0);
+            long terms = 0;
+            for (SearchSegment segment : segments) {
+                docs += segment.size();
+                terms += segment.getTermCount();
+            }
+            stats.put("documents", docs);
+            stats.put("segments", segments.size());
+            stats.put("liveDocuments", live.size());
+            stats.put("segmentTerms", terms);
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("deletedSessions", tombstones.size());
+        return stats;
+    }
+
+    /**
+     * 检索过程中的候选文档
+     */
+    private static final class Candidate {
+        private final SearchSegment segment;
+        private final SearchSegment.Doc doc;
+        private final double score;
+
+        private Candidate(SearchSegment segment, SearchSegment.Doc doc, double score) {
+            this.segment = segment;
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.springaichat.service;
+
+import java.util.List;
+
+/**
+ * 全文检索结果
+ * total是满足条件的消息总数，hits只包含得分最高的前若干条；
+ * indexReady为false时索引仍在启动加载中，结果可能不完整
+ */
+public class SearchResult {
+
+    private final List<SearchHit> hits;
+    private final int total;
+    private final boolean indexReady;
+
+    public SearchResult(List<SearchHit> hits, int total, boolean indexReady) {
+        this.hits = hits;
+        this.total = total;
+        this.indexReady = indexReady;
+    }
+
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean isIndexReady() {
+        return indexReady;
+    }
+}
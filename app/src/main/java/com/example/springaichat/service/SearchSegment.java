@@ -0,0 +1,383 @@
+package com.example.springaichat.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 全文索引段 - 一批文档的倒排表和元数据
+ * 新写入的文档先进入内存中的可变段，刷盘后成为不可变段：
+ * segment-N.idx 保存文档元数据和倒排表，segment-N.dat 保存正文，只在生成摘要时按偏移读取。
+ * .idx 先写临时文件再原子改名，存在即表示该段完整
+ */
+final class SearchSegment implements Closeable {
+
+    private static final int MAGIC = 0x43534547;
+    private static final int VERSION = 1;
+
+    private final long id;
+    private final List<Doc> docs;
+    private final Map<String, IntList> postings;
+    private long totalTokens;
+    private final RandomAccessFile contents;
+
+    private SearchSegment(long id, List<Doc> docs, Map<String, IntList> postings, long totalTokens,
+                          RandomAccessFile contents) {
+        this.id = id;
+        this.docs = docs;
+        this.postings = postings;
+        this.totalTokens = totalTokens;
+        this.contents = contents;
+    }
+
+    /**
+     * 创建内存中的可变段
+     */
+    static SearchSegment live() {
+        return new SearchSegment(-1, new ArrayList<>(), new HashMap<>(), 0, null);
+    }
+
+    /**
+     * 向可变段追加一篇文档，调用方负责同步
+     *
+     * @param tokens 文档分词结果，重复词项计入词频
+     */
+    void add(String messageId, String sessionId, String role, long timestamp, String content, List<String> tokens) {
+        int docId = docs.size();
+        docs.add(new Doc(messageId, sessionId, role, timestamp, tokens.size(), content, -1, 0));
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new IntList()).add(docId, tf));
+        totalTokens += tokens.size();
+    }
+
+    int size() {
+        return docs.size();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    long getTotalTokens() {
+        return totalTokens;
+    }
+
+    int getTermCount() {
+        return postings.size();
+    }
+
+    Doc doc(int docId) {
+        return docs.get(docId);
+    }
+
+    List<Doc> docs() {
+        return docs;
+    }
+
+    /**
+     * 词项的倒排表，按 文档号、词频 交替存放；词项不存在时返回null
+     */
+    IntList postings(String term) {
+        return postings.get(term);
+    }
+
+    /**
+     * 读取文档正文，可变段直接返回内存中的正文，不可变段从 .dat 文件按偏移读取
+     */
+    String content(Doc doc) throws IOException {
+        if (doc.content != null) {
+            return doc.content;
+        }
+        return new String(contentBytes(doc), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取文档正文的UTF-8字节
+     */
+    private byte[] contentBytes(Doc doc) throws IOException {
+        if (doc.content != null) {
+            return doc.content.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[doc.contentBytes];
+        synchronized (contents) {
+            contents.seek(doc.contentOffset);
+            contents.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * 把段写到磁盘，返回对应的不可变段，倒排表直接复用
+     *
+     * @param dir 索引目录
+     * @param segmentId 段编号
+     */
+    SearchSegment writeTo(Path dir, long segmentId) throws IOException {
+        Path dataFile = dir.resolve(dataFileName(segmentId));
+        List<Doc> written = new ArrayList<>(docs.size());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dataFile.toFile()), 64 * 1024)) {
+            long offset = 0;
+            for (Doc doc : docs) {
+                byte[] bytes = contentBytes(doc);
+                out.write(bytes);
+                written.add(new Doc(doc.messageId, doc.sessionId, doc.role, doc.timestamp, doc.length, null, offset, bytes.length));
+                offset += bytes.length;
+            }
+        }
+
+        writeIndex(dir, segmentId, written, postings);
+
+        Map<String, IntList> frozen = new HashMap<>(postings.size() * 4 / 3 + 1);
+        postings.forEach((term, list) -> frozen.put(term, list.trim()));
+        return new SearchSegment(segmentId, written, frozen, totalTokens, new RandomAccessFile(dataFile.toFile(), "r"));
+    }
+
+    /**
+     * 把多个段流式合并为一个新的不可变段，跳过被删除的文档
+     * 正文按偏移逐篇从源段复制到新的 .dat，不解码也不重新分词；倒排表按新的文档号重映射，
+     * 合并期间内存中只有文档元数据和倒排表，峰值与正文总量无关
+     *
+     * @param dir 索引目录
+     * @param segmentId 新段编号
+     * @param sources 源段，文档号按源段顺序依次分配
+     * @param deleted 判断文档是否已删除
+     */
+    static SearchSegment merge(Path dir, long segmentId, List<SearchSegment> sources, Predicate<Doc> deleted)
+            throws IOException {
+        Path dataFile = dir.resolve(dataFileName(segmentId));
+
+        List<Doc> written = new ArrayList<>();
+        // 源段文档号 -> 新文档号，-1 表示已删除
+        int[][] remap = new int[sources.size()][];
+        long totalTokens = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dataFile.toFile()), 64 * 1024)) {
+            long offset = 0;
+            for (int s = 0; s < sources.size(); s++) {
+                SearchSegment source = sources.get(s);
+                int[] ids = new int[source.size()];
+                for (int docId = 0; docId < ids.length; docId++) {
+                    Doc doc = source.doc(docId);
+                    if (deleted.test(doc)) {
+                        ids[docId] = -1;
+                        continue;
+                    }
+                    byte[] bytes = source.contentBytes(doc);
+                    out.write(bytes);
+                    ids[docId] = written.size();
+                    written.add(new Doc(doc.messageId, doc.sessionId, doc.role, doc.timestamp, doc.length, null, offset, bytes.length));
+                    offset += bytes.length;
+                    totalTokens += doc.length;
+                }
+                remap[s] = ids;
+            }
+        }
+
+        // 源段按顺序分配新文档号，逐段追加后每个词项的倒排表仍按文档号递增
+        Map<String, IntList> postings = new HashMap<>();
+        for (int s = 0; s < sources.size(); s++) {
+            int[] ids = remap[s];
+            for (Map.Entry<String, IntList> entry : sources.get(s).postings.entrySet()) {
+                IntList list = entry.getValue();
+                IntList target = null;
+                for (int i = 0; i < list.size(); i += 2) {
+                    int docId = ids[list.get(i)];
+                    if (docId < 0) {
+                        continue;
+                    }
+                    if (target == null) {
+                        target = postings.computeIfAbsent(entry.getKey(), t -> new IntList());
+                    }
+                    target.add(docId, list.get(i + 1));
+                }
+            }
+        }
+        postings.replaceAll((term, list) -> list.trim());
+
+        writeIndex(dir, segmentId, written, postings);
+        return new SearchSegment(segmentId, written, postings, totalTokens, new RandomAccessFile(dataFile.toFile(), "r"));
+    }
+
+    /**
+     * 写 .idx：先写临时文件再原子改名
+     */
+    private static void writeIndex(Path dir, long segmentId, List<Doc> docs, Map<String, IntList> postings)
+            throws IOException {
+        Path indexFile = dir.resolve(indexFileName(segmentId));
+        Path tempFile = dir.resolve(indexFileName(segmentId) + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempFile.toFile()), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docs.size());
+            for (Doc doc : docs) {
+                out.writeUTF(doc.messageId);
+                out.writeUTF(doc.sessionId);
+                out.writeUTF(doc.role);
+                out.writeLong(doc.timestamp);
+                out.writeInt(doc.length);
+                out.writeLong(doc.contentOffset);
+                out.writeInt(doc.contentBytes);
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+                IntList list = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(list.size());
+                for (int i = 0; i < list.size(); i++) {
+                    out.writeInt(list.get(i));
+                }
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 从磁盘加载不可变段
+     *
+     * @param dir 索引目录
+     * @param segmentId 段编号
+     */
+    static SearchSegment load(Path dir, long segmentId) throws IOException {
+        Path indexFile = dir.resolve(indexFileName(segmentId));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("不支持的索引段格式: " + indexFile);
+            }
+            int docCount = in.readInt();
+            List<Doc> docs = new ArrayList<>(docCount);
+            long totalTokens = 0;
+            for (int i = 0; i < docCount; i++) {
+                Doc doc = new Doc(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readInt(), null,
+                    in.readLong(), in.readInt());
+                docs.add(doc);
+                totalTokens += doc.length;
+            }
+            int termCount = in.readInt();
+            Map<String, IntList> postings = new HashMap<>(termCount * 4 / 3 + 1);
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                int[] values = new int[in.readInt()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = in.readInt();
+                }
+                postings.put(term, new IntList(values));
+            }
+            RandomAccessFile contents = new RandomAccessFile(dir.resolve(dataFileName(segmentId)).toFile(), "r");
+            return new SearchSegment(segmentId, docs, postings, totalTokens, contents);
+        }
+    }
+
+    /**
+     * 删除段文件，调用前应先close
+     */
+    static void delete(Path dir, long segmentId) throws IOException {
+        Files.deleteIfExists(dir.resolve(indexFileName(segmentId)));
+        Files.deleteIfExists(dir.resolve(dataFileName(segmentId)));
+    }
+
+    static String indexFileName(long segmentId) {
+        return String.format("segment-%08d.idx", segmentId);
+    }
+
+    static String dataFileName(long segmentId) {
+        return String.format("segment-%08d.dat", segmentId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (contents != null) {
+            synchronized (contents) {
+                contents.close();
+            }
+        }
+    }
+
+    /**
+     * 段内文档元数据
+     */
+    static final class Doc {
+        final String messageId;
+        final String sessionId;
+        final String role;
+        final long timestamp;
+        final int length;
+        private final String content;
+        private final long contentOffset;
+        private final int contentBytes;
+
+        private Doc(String messageId, String sessionId, String role, long timestamp, int length,
+                    String content, long contentOffset, int contentBytes) {
+            this.messageId = messageId;
+            this.sessionId = sessionId;
+            this.role = role;
+            this.timestamp = timestamp;
+            this.length = length;
+            this.content = content;
+            this.contentOffset = contentOffset;
+            this.contentBytes = contentBytes;
+        }
+    }
+
+    /**
+     * 可增长的int数组，倒排表按 文档号、词频 成对追加
+     */
+    static final class IntList {
+        private int[] values;
+        private int size;
+
+        private IntList() {
+            this.values = new int[4];
+        }
+
+        private IntList(int[] values) {
+            this.values = values;
+            this.size = values.length;
+        }
+
+        private void add(int docId, int tf) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = docId;
+            values[size++] = tf;
+        }
+
+        private IntList trim() {
+            return new IntList(Arrays.copyOf(values, size));
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        /**
+         * 包含的文档数
+         */
+        int docCount() {
+            return size / 2;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.springaichat.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 全文检索分词 - 中日韩文字按单字和相邻二字切分（bigram），其他字母数字按连续串切分并转小写
+ * 索引时同时产生单字和二字词项；查询时连续两个以上的汉字只用二字词项，
+ * 所有二字词项都命中即近似短语匹配，单个汉字才用单字词项
+ */
+public final class SearchTokenizer {
+
+    // 超长的字母数字串（如哈希、base64）不进入索引
+    private static final int MAX_WORD_LENGTH = 32;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 索引分词，返回的词项可重复，重复次数即词频
+     *
+     * @param text 文本
+     * @return 词项列表
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        scan(text, (run, cjk) -> {
+            if (!cjk) {
+                tokens.add(run);
+                return;
+            }
+            int[] chars = run.codePoints().toArray();
+            for (int i = 0; i < chars.length; i++) {
+                tokens.add(new String(chars, i, 1));
+                if (i + 1 < chars.length) {
+                    tokens.add(new String(chars, i, 2));
+                }
+            }
+        });
+        return tokens;
+    }
+
+    /**
+     * 查询分词，返回去重后的词项
+     *
+     * @param query 查询文本
+     * @return 词项列表
+     */
+    public static List<String> queryTerms(String query) {
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        scan(query, (run, cjk) -> {
+            if (!cjk) {
+                terms.add(run);
+                return;
+            }
+            int[] chars = run.codePoints().toArray();
+            if (chars.length == 1) {
+                terms.add(run);
+            }
+            for (int i = 0; i + 1 < chars.length; i++) {
+                terms.add(new String(chars, i, 2));
+            }
+        });
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * 把文本切成中日韩文字串和字母数字串
+     */
+    private static void scan(String text, RunConsumer consumer) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        StringBuilder run = new StringBuilder();
+        boolean runCjk = false;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            boolean cjk = isCjk(cp);
+            boolean word = !cjk && Character.isLetterOrDigit(cp);
+            if (run.length() > 0 && (!(cjk || word) || cjk != runCjk)) {
+                emit(run, runCjk, consumer);
+            }
+            if (cjk || word) {
+                runCjk = cjk;
+                run.appendCodePoint(cp);
+            }
+        }
+        emit(run, runCjk, consumer);
+    }
+
+    private static void emit(StringBuilder run, boolean cjk, RunConsumer consumer) {
+        if (run.length() == 0) {
+            return;
+        }
+        if (cjk) {
+            consumer.accept(run.toString(), true);
+        } else if (run.length() <= MAX_WORD_LENGTH) {
+            consumer.accept(run.toString().toLowerCase(Locale.ROOT), false);
+        }
+        run.setLength(0);
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private interface RunConsumer {
+        void accept(String run, boolean cjk);
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 冷会话归档 - 把长期无活动的会话的消息移出热表
+ * 后台定期把空闲超过阈值的会话的全部消息编码为NDJSON（每行一条消息）并deflate压缩，
+ * 作为一个二进制块存入 chat_session_archives，再从 chat_messages 删除，热表和索引只保留近期活跃的会话。
+ * 归档会话被读取消息或发起新一轮对话时，在同一事务中解压写回热表并删除归档块，对调用方透明
+ */
+@Component
+public class SessionArchiver {
+
+    private static final Logger logger = Logger.getLogger(SessionArchiver.class.getName());
+
+    private static final String SELECT_CANDIDATES_SQL =
+        "SELECT id FROM chat_sessions WHERE archived_at IS NULL AND message_count > 0 AND last_activity_at < ? " +
+        "ORDER BY last_activity_at LIMIT ?";
+
+    // 再次确认仍然空闲并标记，与新消息的会话摘要更新互斥
+    private static final String CLAIM_SQL =
+        "UPDATE chat_sessions SET archived_at = ? WHERE id = ? AND archived_at IS NULL AND last_activity_at < ?";
+
+    private static final String SELECT_MESSAGES_SQL =
+        "SELECT m.id, m.role, m.timestamp, m.status, m.token_count, c.content FROM chat_messages m " +
+        "JOIN chat_message_contents c ON c.message_id = m.id WHERE m.session_id = ? ORDER BY m.timestamp, m.id";
+
+    private static final String INSERT_ARCHIVE_SQL =
+        "INSERT INTO chat_session_archives (session_id, message_count, raw_bytes, payload, archived_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_ARCHIVE_SQL =
+        "SELECT payload FROM chat_session_archives WHERE session_id = ? FOR UPDATE";
+
+    private static final String INSERT_MESSAGE_SQL =
+        "INSERT INTO chat_messages (id, session_id, role, timestamp, status, token_count) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String LIST_ARCHIVES_SQL =
+        "SELECT session_id FROM chat_session_archives WHERE session_id > ? ORDER BY session_id LIMIT ?";
+
+    // 遍历归档时每批列出的会话数
+    private static final int ARCHIVE_LIST_BATCH = 100;
+
+    private static final String INSERT_CONTENT_SQL =
+        "INSERT INTO chat_message_contents (message_id, content) VALUES (?, ?)";
+
+    // 是否启用后台归档；关闭后已归档的会话仍会在访问时恢复
+    @Value("${chat.archive.enabled:true}")
+    private boolean enabled;
+
+    // 会话最后活跃超过该天数后归档
+    @Value("${chat.archive.idle-days:7}")
+    private long idleDays;
+
+    // 两次归档扫描的间隔（分钟）
+    @Value("${chat.archive.interval-minutes:60}")
+    private long intervalMinutes;
+
+    // 每次扫描最多归档的会话数，避免长时间占用数据库
+    @Value("${chat.archive.max-sessions-per-run:500}")
+    private int maxSessionsPerRun;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final RecentTurnCache recentTurnCache;
+    private final SessionCache sessionCache;
+    private final ChatMetrics chatMetrics;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SessionArchiver(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                           RecentTurnCache recentTurnCache, SessionCache sessionCache, ChatMetrics chatMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.recentTurnCache = recentTurnCache;
+        this.sessionCache = sessionCache;
+        this.chatMetrics = chatMetrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveIdleSessions, 1, intervalMinutes, TimeUnit.MINUTES);
+        logger.info(String.format("冷会话归档已启动 - 空闲阈值: %d天, 扫描间隔: %d分钟", idleDays, intervalMinutes));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 归档一批空闲超过阈值的会话
+     *
+     * @return 本次归档的会话数
+     */
+    public int archiveIdleSessions() {
+        int archived = 0;
+        try {
+            Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(idleDays));
+            List<String> candidates = jdbcTemplate.queryForList(SELECT_CANDIDATES_SQL, String.class, cutoff, maxSessionsPerRun);
+            for (String sessionId : candidates) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                try {
+                    if (archive(sessionId, cutoff)) {
+                        archived++;
+                    }
+                } catch (Exception e) {
+                    logger.warning(String.format("归档会话失败 - 会话ID: %s, 原因: %s", sessionId, e.getMessage()));
+                }
+            }
+        } catch (Exception e) {
+            logger.severe("归档扫描失败: " + e.getMessage());
+        }
+        if (archived > 0) {
+            logger.info("已归档冷会话: " + archived + " 个");
+        }
+        return archived;
+    }
+
+    /**
+     * 归档单个会话：标记、编码压缩全部消息、写入归档块并删除热表中的消息，在同一事务中完成
+     */
+    private boolean archive(String sessionId, Timestamp cutoff) {
+        Boolean done = transactionTemplate.execute(status -> {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            if (jdbcTemplate.update(CLAIM_SQL, now, sessionId, cutoff) == 0) {
+                // 扫描之后会话又有了新消息
+                return false;
+            }
+            ArchiveEncoder encoder = new ArchiveEncoder(objectMapper);
+            byte[] payload;
+            try {
+                jdbcTemplate.query(SELECT_MESSAGES_SQL, rs -> {
+                    ChatMessage message = new ChatMessage();
+                    message.setId(rs.getString("id"));
+                    message.setRole(rs.getString("role"));
+                    message.setContent(rs.getString("content"));
+                    message.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+                    message.setStatus(rs.getString("status"));
+                    message.setTokenCount(rs.getObject("token_count", Integer.class));
+                    encoder.write(message);
+                }, sessionId);
+                payload = encoder.finish();
+            } finally {
+                encoder.close();
+            }
+            if (encoder.getCount() == 0) {
+                status.setRollbackOnly();
+                return false;
+            }
+            jdbcTemplate.update(INSERT_ARCHIVE_SQL, sessionId, encoder.getCount(), encoder.getRawBytes(), payload, now);
+            // 正文随外键级联删除
+            jdbcTemplate.update("DELETE FROM chat_messages WHERE session_id = ?", sessionId);
+            chatMetrics.recordArchive(encoder.getRawBytes(), payload.length);
+            return true;
+        });
+        if (Boolean.TRUE.equals(done)) {
+            sessionCache.invalidate(sessionId);
+            recentTurnCache.invalidate(sessionId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 会话已归档时恢复到热表，未归档时只有一次主键查询的开销
+     *
+     * @param sessionId 会话ID
+     */
+    public void rehydrateIfArchived(String sessionId) {
+        if (isArchived(sessionId)) {
+            rehydrate(sessionId);
+        }
+    }
+
+    private boolean isArchived(String sessionId) {
+        List<Timestamp> archivedAt = jdbcTemplate.queryForList(
+            "SELECT archived_at FROM chat_sessions WHERE id = ?", Timestamp.class, sessionId);
+        return !archivedAt.isEmpty() && archivedAt.get(0) != null;
+    }
+
+    /**
+     * 恢复已归档的会话：解压归档块写回热表，删除归档块并清除标记
+     * 并发的恢复请求由归档行的行锁串行化，后到的请求发现归档块已不存在后直接返回
+     *
+     * @param sessionId 会话ID
+     * @return 恢复的消息条数
+     */
+    public int rehydrate(String sessionId) {
+        long startNanos = System.nanoTime();
+        Integer restored = transactionTemplate.execute(status -> {
+            List<byte[]> payloads = jdbcTemplate.query(SELECT_ARCHIVE_SQL, (rs, rowNum) -> rs.getBytes(1), sessionId);
+            if (payloads.isEmpty()) {
+                jdbcTemplate.update("UPDATE chat_sessions SET archived_at = NULL WHERE id = ?", sessionId);
+                return 0;
+            }
+            // 归档期间并发写入的消息已在热表中，跳过重复的ID
+            Set<String> existing = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM chat_messages WHERE session_id = ?", String.class, sessionId));
+            List<Object[]> messageArgs = new ArrayList<>();
+            List<Object[]> contentArgs = new ArrayList<>();
+            decode(payloads.get(0), node -> {
+                ChatMessage message = toMessage(node);
+                if (!existing.add(message.getId())) {
+                    return;
+                }
+                messageArgs.add(new Object[]{
+                    message.getId(),
+                    sessionId,
+                    message.getRole(),
+                    Timestamp.valueOf(message.getTimestamp()),
+                    message.getStatus(),
+                    message.getTokenCount()
+                });
+                contentArgs.add(new Object[]{message.getId(), message.getContent()});
+            });
+            if (!messageArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messageArgs);
+                jdbcTemplate.batchUpdate(INSERT_CONTENT_SQL, contentArgs);
+            }
+            jdbcTemplate.update("DELETE FROM chat_session_archives WHERE session_id = ?", sessionId);
+            jdbcTemplate.update("UPDATE chat_sessions SET archived_at = NULL WHERE id = ?", sessionId);
+            return messageArgs.size();
+        });
+        // 归档标记已清除
+        sessionCache.invalidate(sessionId);
+        int rows = restored != null ? restored : 0;
+        if (rows > 0) {
+            recentTurnCache.invalidate(sessionId);
+            chatMetrics.recordRehydration(System.nanoTime() - startNanos, rows);
+            logger.info(String.format("已恢复归档会话 - 会话ID: %s, 消息数: %d", sessionId, rows));
+        }
+        return rows;
+    }
+
+    /**
+     * 逐条读取全部归档块中的消息，供全文索引重建和数据导出使用
+     *
+     * @param consumer 参数为会话ID和解码出的消息
+     */
+    public void forEachArchivedMessage(BiConsumer<String, ChatMessage> consumer) {
+        // 按会话ID分批列出归档，每次只读入一个归档块，内存占用与归档总量无关
+        String after = "";
+        while (true) {
+            List<String> sessionIds = jdbcTemplate.queryForList(LIST_ARCHIVES_SQL, String.class, after, ARCHIVE_LIST_BATCH);
+            for (String sessionId : sessionIds) {
+                List<byte[]> payloads = jdbcTemplate.query("SELECT payload FROM chat_session_archives WHERE session_id = ?",
+                    (rs, rowNum) -> rs.getBytes(1), sessionId);
+                if (payloads.isEmpty()) {
+                    // 列出后已被恢复
+                    continue;
+                }
+                decode(payloads.get(0), node -> consumer.accept(sessionId, toMessage(node)));
+            }
+            if (sessionIds.size() < ARCHIVE_LIST_BATCH) {
+                return;
+            }
+            after = sessionIds.get(sessionIds.size() - 1);
+        }
+    }
+
+    /**
+     * 解压归档块并逐行解析
+     */
+    void decode(byte[] payload, Consumer<JsonNode> consumer) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new InflaterInputStream(new ByteArrayInputStream(payload)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    consumer.accept(objectMapper.readTree(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把归档中的一行还原为消息，不设置所属会话
+     */
+    static ChatMessage toMessage(JsonNode node) {
+        ChatMessage message = new ChatMessage();
+        message.setId(node.get("id").asText());
+        message.setRole(node.get("role").asText());
+        message.setContent(node.get("content").asText());
+        message.setTimestamp(LocalDateTime.parse(node.get("timestamp").asText()));
+        message.setStatus(node.get("status").isNull() ? null : node.get("status").asText());
+        JsonNode tokenCount = node.get("tokenCount");
+        message.setTokenCount(tokenCount == null || tokenCount.isNull() ? null : tokenCount.asInt());
+        return message;
+    }
+
+    /**
+     * 丢弃会话的归档块并清除标记，在清除会话历史时调用
+     *
+     * @param sessionId 会话ID
+     */
+    public void discard(String sessionId) {
+        if (isArchived(sessionId)) {
+            jdbcTemplate.update("DELETE FROM chat_session_archives WHERE session_id = ?", sessionId);
+            jdbcTemplate.update("UPDATE chat_sessions SET archived_at = NULL WHERE id = ?", sessionId);
+            sessionCache.invalidate(sessionId);
+        }
+    }
+
+    /**
+     * 归档块编码器：消息逐条编码为一行JSON并写入deflate流，统计条数和压缩前字节数
+     * 用完须调用close释放Deflater的本地内存
+     */
+    static final class ArchiveEncoder {
+
+        private final ObjectMapper objectMapper;
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater);
+        private long rawBytes;
+        private int count;
+
+        ArchiveEncoder(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+
+        void write(ChatMessage message) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("id", message.getId());
+            line.put("role", message.getRole());
+            line.put("content", message.getContent());
+            line.put("timestamp", message.getTimestamp().toString());
+            line.put("status", message.getStatus());
+            line.put("tokenCount", message.getTokenCount());
+            try {
+                byte[] json = objectMapper.writeValueAsBytes(line);
+                out.write(json);
+                out.write('\n');
+                rawBytes += json.length + 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count++;
+        }
+
+        /**
+         * 结束压缩流，返回归档块
+         */
+        byte[] finish() {
+            try {
+                out.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return compressed.toByteArray();
+        }
+
+        void close() {
+            deflater.end();
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        long getRawBytes() {
+            return rawBytes;
+        }
+    }
+}
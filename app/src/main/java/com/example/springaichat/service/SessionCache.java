@@ -0,0 +1,206 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 会话元数据缓存 - 每轮对话开始和保存回答时都要读取会话，命中时不再查询数据库
+ * 按LRU淘汰；保存的是脱离持久化上下文的副本，读取时再复制一份，调用方修改返回值不影响缓存。
+ * 重命名、删除、清除历史、滚动摘要更新和归档状态变化时失效；消息数、预览和活跃时间随消息保存同步更新
+ */
+@Component
+public class SessionCache {
+
+    // 是否启用会话缓存
+    @Value("${chat.session.cache.enabled:true}")
+    private boolean enabled;
+
+    // 最多缓存的会话数量
+    @Value("${chat.session.cache.max-sessions:10000}")
+    private int maxSessions;
+
+    private final LinkedHashMap<String, ChatSession> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    // 每次失效加一；加载期间发生过失效的结果不写入缓存，避免旧数据覆盖失效
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * 读取缓存的会话
+     *
+     * @param sessionId 会话ID
+     * @return 会话副本，未缓存时为空
+     */
+    public Optional<ChatSession> get(String sessionId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        synchronized (entries) {
+            ChatSession cached = entries.get(sessionId);
+            if (cached == null) {
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+            return Optional.of(copyOf(cached));
+        }
+    }
+
+    /**
+     * 开始从数据库加载会话，返回值交给put使用
+     */
+    public long beginLoad() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * 缓存从数据库加载的会话；加载开始后发生过失效，或在事务中（数据尚未提交，可能回滚）时放弃
+     *
+     * @param session 会话
+     * @param loadGeneration beginLoad的返回值
+     */
+    public void put(ChatSession session, long loadGeneration) {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        synchronized (entries) {
+            if (loadGeneration != generation) {
+                return;
+            }
+            entries.put(session.getId(), copyOf(session));
+            while (entries.size() > maxSessions) {
+                String eldest = entries.keySet().iterator().next();
+                entries.remove(eldest);
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * 记录一条新消息，与 ChatSessionRepository.recordUserMessage / recordAssistantMessage 的更新一致
+     *
+     * @param sessionId 会话ID
+     * @param preview 用户消息的预览，AI消息为null
+     * @param at 消息时间
+     */
+    public void recordMessage(String sessionId, String preview, LocalDateTime at) {
+        synchronized (entries) {
+            ChatSession cached = entries.get(sessionId);
+            if (cached == null) {
+                return;
+            }
+            cached.setMessageCount(cached.getMessageCount() + 1);
+            if (preview != null) {
+                cached.setLastPreview(preview);
+            }
+            cached.setLastActivityAt(at);
+            cached.setUpdatedAt(at);
+        }
+    }
+
+    /**
+     * 使会话失效
+     * 在事务中调用时提交后再失效一次：提交前其他请求仍可能读到旧数据并写回缓存
+     *
+     * @param sessionId 会话ID
+     */
+    public void invalidate(String sessionId) {
+        remove(sessionId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(sessionId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 清空缓存，在批量修改会话（如导入）后调用
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            invalidations += entries.size();
+            entries.clear();
+        }
+    }
+
+    private void remove(String sessionId) {
+        synchronized (entries) {
+            generation++;
+            if (entries.remove(sessionId) != null) {
+                invalidations++;
+            }
+        }
+    }
+
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 获取缓存统计：命中、未命中、淘汰和失效次数
+     */
+    public Map<String, Object> getStats() {
+        synchronized (entries) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", enabled);
+            stats.put("entries", entries.size());
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            long lookups = hits + misses;
+            stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+            stats.put("evictions", evictions);
+            stats.put("invalidations", invalidations);
+            return stats;
+        }
+    }
+
+    /**
+     * 复制会话的元数据字段，不包含消息集合
+     */
+    private static ChatSession copyOf(ChatSession session) {
+        ChatSession copy = new ChatSession();
+        copy.setId(session.getId());
+        copy.setName(session.getName());
+        copy.setCreatedAt(session.getCreatedAt());
+        // setName会刷新更新时间，最后再设置
+        copy.setUpdatedAt(session.getUpdatedAt());
+        copy.setMessageCount(session.getMessageCount());
+        copy.setLastPreview(session.getLastPreview());
+        copy.setLastActivityAt(session.getLastActivityAt());
+        copy.setSummary(session.getSummary());
+        copy.setSummarizedUntil(session.getSummarizedUntil());
+        copy.setArchivedAt(session.getArchivedAt());
+        return copy;
+    }
+}
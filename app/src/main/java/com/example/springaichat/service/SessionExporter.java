@@ -0,0 +1,179 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.entity.ChatSession;
+import com.example.springaichat.repository.ChatMessageRepository;
+import com.example.springaichat.repository.ChatSessionRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 会话数据导出 - 把全部会话和消息写成NDJSON（可gzip压缩）
+ * 第一行为格式头，随后是全部会话，再是全部消息（热表中的消息按会话和时间排序，之后是归档块中的消息）。
+ * 会话和消息都以流式查询逐行读取，写出后立即从持久化上下文分离，内存占用与导出数据量无关
+ */
+@Service
+public class SessionExporter {
+
+    private static final Logger logger = Logger.getLogger(SessionExporter.class.getName());
+
+    // 导出格式版本，格式变化时递增，导入时检查
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final ChatSessionRepository sessionRepository;
+    private final ChatMessageRepository messageRepository;
+    private final SessionArchiver sessionArchiver;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public SessionExporter(ChatSessionRepository sessionRepository, ChatMessageRepository messageRepository,
+                           SessionArchiver sessionArchiver, EntityManager entityManager, ObjectMapper objectMapper,
+                           TransactionTemplate transactionTemplate) {
+        this.sessionRepository = sessionRepository;
+        this.messageRepository = messageRepository;
+        this.sessionArchiver = sessionArchiver;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        // 整个导出在一个只读事务中完成，各查询读到同一个快照（InnoDB可重复读）
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 导出全部会话和消息
+     *
+     * @param output 输出流，导出结束后不关闭
+     * @param gzip 是否gzip压缩
+     */
+    public void export(OutputStream output, boolean gzip) throws IOException {
+        long startTime = System.currentTimeMillis();
+        GZIPOutputStream gzipOutput = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE) : null;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(gzip ? gzipOutput : output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // 每个记录占一行
+        generator.setRootValueSeparator(new SerializedString("\n"));
+
+        long[] counts = new long[2];
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("type", "export");
+            generator.writeNumberField("version", FORMAT_VERSION);
+            generator.writeStringField("exportedAt", LocalDateTime.now().toString());
+            generator.writeEndObject();
+
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try {
+                    counts[0] = writeSessions(generator);
+                    counts[1] = writeMessages(generator);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        generator.writeRaw('\n');
+        generator.close();
+        if (gzipOutput != null) {
+            gzipOutput.finish();
+        }
+        output.flush();
+        logger.info(String.format("导出完成 - 会话: %d, 消息: %d, 耗时: %dms",
+            counts[0], counts[1], System.currentTimeMillis() - startTime));
+    }
+
+    private long writeSessions(JsonGenerator generator) throws IOException {
+        long count = 0;
+        try (Stream<ChatSession> sessions = sessionRepository.streamAllForExport()) {
+            Iterator<ChatSession> iterator = sessions.iterator();
+            while (iterator.hasNext()) {
+                ChatSession session = iterator.next();
+                generator.writeStartObject();
+                generator.writeStringField("type", "session");
+                generator.writeStringField("id", session.getId());
+                generator.writeStringField("name", session.getName());
+                writeTimeField(generator, "createdAt", session.getCreatedAt());
+                writeTimeField(generator, "updatedAt", session.getUpdatedAt());
+                generator.writeStringField("summary", session.getSummary());
+                writeTimeField(generator, "summarizedUntil", session.getSummarizedUntil());
+                generator.writeEndObject();
+                entityManager.detach(session);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long writeMessages(JsonGenerator generator) throws IOException {
+        long count = 0;
+        try (Stream<ChatMessage> messages = messageRepository.streamAllForExport()) {
+            Iterator<ChatMessage> iterator = messages.iterator();
+            ChatSession previousSession = null;
+            while (iterator.hasNext()) {
+                ChatMessage message = iterator.next();
+                // 消息按会话排序，换到下一个会话时分离上一个会话的代理对象
+                ChatSession session = message.getSession();
+                if (previousSession != null && previousSession != session) {
+                    entityManager.detach(previousSession);
+                }
+                previousSession = session;
+                writeMessage(generator, session.getId(), message);
+                entityManager.detach(message);
+                count++;
+            }
+        }
+
+        long[] archived = new long[1];
+        try {
+            sessionArchiver.forEachArchivedMessage((sessionId, message) -> {
+                try {
+                    writeMessage(generator, sessionId, message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                archived[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count + archived[0];
+    }
+
+    private static void writeMessage(JsonGenerator generator, String sessionId, ChatMessage message) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "message");
+        generator.writeStringField("id", message.getId());
+        generator.writeStringField("sessionId", sessionId);
+        generator.writeStringField("role", message.getRole());
+        generator.writeStringField("content", message.getContent());
+        writeTimeField(generator, "timestamp", message.getTimestamp());
+        generator.writeStringField("status", message.getStatus());
+        if (message.getTokenCount() != null) {
+            generator.writeNumberField("tokenCount", message.getTokenCount());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeTimeField(JsonGenerator generator, String name, LocalDateTime time) throws IOException {
+        generator.writeStringField(name, time != null ? time.toString() : null);
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.entity.ChatSession;
+import com.example.springaichat.repository.ChatSessionRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 会话数据导入 - 读取 SessionExporter 导出的NDJSON（gzip压缩的文件自动识别）
+ * 逐条解析，攒够一批后在一个事务中批量写入，内存占用只与批大小有关。
+ * 已存在的会话不覆盖其名称和摘要，只补入缺少的消息；已存在的消息ID跳过，同一文件重复导入不会产生重复数据。
+ * 导入结束后按消息重新计算受影响会话的消息数、预览和活跃时间
+ */
+@Service
+public class SessionImporter {
+
+    private static final Logger logger = Logger.getLogger(SessionImporter.class.getName());
+
+    // 每批写入的记录数
+    private static final int BATCH_SIZE = 500;
+
+    private static final String INSERT_SESSION_SQL =
+        "INSERT INTO chat_sessions (id, name, created_at, updated_at, message_count, summary, summarized_until) " +
+        "VALUES (?, ?, ?, ?, 0, ?, ?)";
+
+    // 清空活跃时间后，会话摘要由 backfillSummaries 按消息重新计算
+    private static final String MARK_FOR_BACKFILL_SQL =
+        "UPDATE chat_sessions SET last_activity_at = NULL WHERE id = ?";
+
+    private static final String INSERT_MESSAGE_SQL =
+        "INSERT INTO chat_messages (id, session_id, role, timestamp, status, token_count) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_CONTENT_SQL =
+        "INSERT INTO chat_message_contents (message_id, content) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatSessionRepository sessionRepository;
+    private final SessionArchiver sessionArchiver;
+    private final RecentTurnCache recentTurnCache;
+    private final SessionCache sessionCache;
+    private final SearchIndex searchIndex;
+
+    @Autowired
+    public SessionImporter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                           ChatSessionRepository sessionRepository, SessionArchiver sessionArchiver,
+                           RecentTurnCache recentTurnCache, SessionCache sessionCache, SearchIndex searchIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.sessionRepository = sessionRepository;
+        this.sessionArchiver = sessionArchiver;
+        this.recentTurnCache = recentTurnCache;
+        this.sessionCache = sessionCache;
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * 导入会话和消息
+     * 每批在独立事务中提交，中途失败时已提交的批次保留，修正文件后重新导入即可补齐
+     *
+     * @param input NDJSON或gzip压缩的NDJSON
+     * @return 新建和合并的会话数、导入和跳过的消息数
+     * @throws IllegalArgumentException 记录格式错误或导出格式版本不受支持
+     */
+    public Map<String, Object> importFrom(InputStream input) throws IOException {
+        long startTime = System.currentTimeMillis();
+        ImportStats stats = new ImportStats();
+        List<JsonNode> sessions = new ArrayList<>();
+        List<JsonNode> messages = new ArrayList<>();
+
+        try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class).readValues(decompress(input))) {
+            long recordNumber = 0;
+            while (records.hasNextValue()) {
+                JsonNode record = records.nextValue();
+                recordNumber++;
+                String type = record.path("type").asText();
+                switch (type) {
+                    case "export":
+                        int version = record.path("version").asInt();
+                        if (version > SessionExporter.FORMAT_VERSION) {
+                            throw new IllegalArgumentException("不支持的导出格式版本: " + version);
+                        }
+                        break;
+                    case "session":
+                        requireFields(record, recordNumber, "id", "name");
+                        sessions.add(record);
+                        break;
+                    case "message":
+                        requireFields(record, recordNumber, "id", "sessionId", "role", "content", "timestamp");
+                        messages.add(record);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("第" + recordNumber + "条记录的类型未知: " + type);
+                }
+                if (sessions.size() + messages.size() >= BATCH_SIZE) {
+                    flush(sessions, messages, stats);
+                }
+            }
+        }
+        flush(sessions, messages, stats);
+
+        int summarized = sessionRepository.backfillSummaries();
+        // 回填改写了导入会话的消息数和预览
+        sessionCache.invalidateAll();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessionsCreated", stats.sessionsCreated);
+        result.put("sessionsMerged", stats.sessionsMerged);
+        result.put("messagesImported", stats.messagesImported);
+        result.put("messagesSkipped", stats.messagesSkipped);
+        logger.info(String.format("导入完成 - 新建会话: %d, 合并会话: %d, 导入消息: %d, 跳过消息: %d, 重算摘要: %d, 耗时: %dms",
+            stats.sessionsCreated, stats.sessionsMerged, stats.messagesImported, stats.messagesSkipped, summarized,
+            System.currentTimeMillis() - startTime));
+        return result;
+    }
+
+    /**
+     * 在一个事务中写入一批会话和消息，会话先于消息写入
+     */
+    private void flush(List<JsonNode> sessions, List<JsonNode> messages, ImportStats stats) {
+        if (sessions.isEmpty() && messages.isEmpty()) {
+            return;
+        }
+        List<ChatMessage> inserted = new ArrayList<>();
+        List<String> insertedSessionIds = new ArrayList<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sessions.isEmpty()) {
+                insertSessions(sessions, stats);
+            }
+            if (!messages.isEmpty()) {
+                insertMessages(messages, inserted, insertedSessionIds, stats);
+            }
+        });
+
+        // 提交后再更新缓存和索引
+        for (String sessionId : new LinkedHashSet<>(insertedSessionIds)) {
+            sessionCache.invalidate(sessionId);
+            recentTurnCache.invalidate(sessionId);
+        }
+        for (int i = 0; i < inserted.size(); i++) {
+            searchIndex.add(insertedSessionIds.get(i), inserted.get(i));
+        }
+        sessions.clear();
+        messages.clear();
+    }
+
+    private void insertSessions(List<JsonNode> sessions, ImportStats stats) {
+        Set<String> existing = existingIds("chat_sessions", ids(sessions, "id"));
+        List<Object[]> rows = new ArrayList<>();
+        int merged = 0;
+        for (JsonNode session : sessions) {
+            String id = session.get("id").asText();
+            if (id.length() > ChatSession.MAX_ID_LENGTH) {
+                throw new IllegalArgumentException("会话ID过长: " + id);
+            }
+            if (existing.contains(id)) {
+                merged++;
+                continue;
+            }
+            existing.add(id);
+            LocalDateTime createdAt = parseTime(session, "createdAt", LocalDateTime.now());
+            rows.add(new Object[]{
+                id,
+                session.get("name").asText(),
+                Timestamp.valueOf(createdAt),
+                Timestamp.valueOf(parseTime(session, "updatedAt", createdAt)),
+                textOrNull(session, "summary"),
+                toTimestamp(parseTime(session, "summarizedUntil", null))
+            });
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SESSION_SQL, rows);
+        }
+        stats.sessionsCreated += rows.size();
+        stats.sessionsMerged += merged;
+    }
+
+    private void insertMessages(List<JsonNode> messages, List<ChatMessage> inserted, List<String> insertedSessionIds,
+                                ImportStats stats) {
+        Set<String> knownSessions = existingIds("chat_sessions", ids(messages, "sessionId"));
+        // 已归档会话的消息不在热表中，先恢复到热表再查询已存在的消息，否则归档中的消息会被当作新消息重复写入
+        for (String sessionId : archivedIds(knownSessions)) {
+            sessionArchiver.rehydrate(sessionId);
+        }
+        Set<String> existing = existingIds("chat_messages", ids(messages, "id"));
+        List<Object[]> messageRows = new ArrayList<>();
+        List<Object[]> contentRows = new ArrayList<>();
+        for (JsonNode node : messages) {
+            String id = node.get("id").asText();
+            String sessionId = node.get("sessionId").asText();
+            // 会话不在文件中也不在数据库中的消息无法归属，跳过
+            if (!knownSessions.contains(sessionId) || !existing.add(id)) {
+                stats.messagesSkipped++;
+                continue;
+            }
+            ChatMessage message = new ChatMessage(id, node.get("role").asText(), node.get("content").asText(),
+                textOrNull(node, "status"));
+            message.setTimestamp(parseTime(node, "timestamp", null));
+            JsonNode tokenCount = node.get("tokenCount");
+            message.setTokenCount(tokenCount == null || tokenCount.isNull()
+                ? TokenEstimator.estimateMessage(message.getContent())
+                : tokenCount.asInt());
+            messageRows.add(new Object[]{
+                id,
+                sessionId,
+                message.getRole(),
+                Timestamp.valueOf(message.getTimestamp()),
+                message.getStatus(),
+                message.getTokenCount()
+            });
+            contentRows.add(new Object[]{id, message.getContent()});
+            inserted.add(message);
+            insertedSessionIds.add(sessionId);
+        }
+        if (messageRows.isEmpty()) {
+            return;
+        }
+        // 写入消息的会话：摘要在导入结束后统一按消息重算
+        List<Object[]> marks = new ArrayList<>();
+        for (String sessionId : new LinkedHashSet<>(insertedSessionIds)) {
+            marks.add(new Object[]{sessionId});
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messageRows);
+        jdbcTemplate.batchUpdate(INSERT_CONTENT_SQL, contentRows);
+        jdbcTemplate.batchUpdate(MARK_FOR_BACKFILL_SQL, marks);
+        stats.messagesImported += messageRows.size();
+    }
+
+    /**
+     * 查询已存在的ID，ids不超过一批的大小
+     */
+    private Set<String> existingIds(String table, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(
+            "SELECT id FROM " + table + " WHERE id IN (" + placeholders + ")", String.class, ids.toArray()));
+    }
+
+    /**
+     * 查询其中已归档的会话ID
+     */
+    private Set<String> archivedIds(Collection<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(sessionIds.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(
+            "SELECT id FROM chat_sessions WHERE archived_at IS NOT NULL AND id IN (" + placeholders + ")",
+            String.class, sessionIds.toArray()));
+    }
+
+    private static Set<String> ids(List<JsonNode> records, String field) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (JsonNode record : records) {
+            ids.add(record.get(field).asText());
+        }
+        return ids;
+    }
+
+    /**
+     * 以gzip魔数识别压缩输入
+     */
+    private static InputStream decompress(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input, 64 * 1024);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered, 64 * 1024);
+        }
+        return buffered;
+    }
+
+    private static void requireFields(JsonNode record, long recordNumber, String... fields) {
+        for (String field : fields) {
+            JsonNode value = record.get(field);
+            if (value == null || value.isNull()) {
+                throw new IllegalArgumentException("第" + recordNumber + "条记录缺少字段: " + field);
+            }
+        }
+    }
+
+    private static LocalDateTime parseTime(JsonNode record, String field, LocalDateTime defaultValue) {
+        String value = textOrNull(record, field);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("时间格式错误: " + field + "=" + value);
+        }
+    }
+
+    private static String textOrNull(JsonNode record, String field) {
+        JsonNode value = record.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+
+    private static final class ImportStats {
+        private long sessionsCreated;
+        private long sessionsMerged;
+        private long messagesImported;
+        private long messagesSkipped;
+    }
+}
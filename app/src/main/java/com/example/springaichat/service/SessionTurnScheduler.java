@@ -0,0 +1,156 @@
+package com.example.springaichat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * 会话轮次调度器 - 同一会话同一时间只处理一轮对话
+ * 每个会话一条轮次队列，后到的消息按策略排队或拒绝；排队不占用线程，
+ * 前一轮结束时直接启动下一轮。不同会话之间互不影响
+ */
+@Component
+public class SessionTurnScheduler {
+
+    private static final Logger logger = Logger.getLogger(SessionTurnScheduler.class.getName());
+
+    // 会话已有进行中的轮次时的策略：queue（排队）或reject（拒绝）
+    @Value("${chat.session.turn.policy:queue}")
+    private String policy;
+
+    // 每个会话最多排队的轮次数
+    @Value("${chat.session.turn.max-queued:3}")
+    private int maxQueued;
+
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private long rejectedTurns;
+
+    /**
+     * 提交一轮对话，会话空闲时立即启动，否则按策略排队或拒绝
+     * 返回的轮次必须在本轮结束时释放，释放排队中的轮次会将其移出队列
+     *
+     * @param sessionId 会话ID
+     * @param start 轮次开始时执行，参数为本轮（应快速返回，如提交给流式调度器）
+     * @param onRejected 被拒绝时的回调，参数为面向用户的拒绝原因
+     * @return 会话轮次
+     */
+    public Turn submit(String sessionId, Consumer<Turn> start, Consumer<String> onRejected) {
+        Turn turn = new Turn(sessionId, start);
+        boolean run = false;
+        boolean reject = false;
+
+        synchronized (lanes) {
+            Lane lane = lanes.computeIfAbsent(sessionId, key -> new Lane());
+            if (lane.running == null) {
+                lane.running = turn;
+                run = true;
+            } else if ("reject".equalsIgnoreCase(policy) || lane.waiting.size() >= maxQueued) {
+                turn.done = true;
+                rejectedTurns++;
+                reject = true;
+            } else {
+                lane.waiting.addLast(turn);
+            }
+        }
+
+        if (run) {
+            turn.start.accept(turn);
+        } else if (reject) {
+            logger.info("会话已有进行中的回答，拒绝新消息 - 会话ID: " + sessionId);
+            onRejected.accept("上一条消息仍在回答中，请等待回答完成后再发送");
+        }
+        return turn;
+    }
+
+    /**
+     * 释放轮次，运行中的轮次结束后启动会话的下一轮
+     */
+    private void release(Turn turn) {
+        Turn next = null;
+        synchronized (lanes) {
+            if (turn.done) {
+                return;
+            }
+            turn.done = true;
+            Lane lane = lanes.get(turn.sessionId);
+            if (lane == null) {
+                return;
+            }
+            if (lane.running == turn) {
+                next = lane.waiting.pollFirst();
+                lane.running = next;
+                if (next == null) {
+                    lanes.remove(turn.sessionId);
+                }
+            } else {
+                lane.waiting.remove(turn);
+            }
+        }
+        if (next != null) {
+            next.start.accept(next);
+        }
+    }
+
+    /**
+     * 获取所有会话排队中的轮次总数
+     */
+    public int getQueuedTurns() {
+        synchronized (lanes) {
+            int queued = 0;
+            for (Lane lane : lanes.values()) {
+                queued += lane.waiting.size();
+            }
+            return queued;
+        }
+    }
+
+    /**
+     * 获取调度统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (lanes) {
+            stats.put("policy", policy);
+            stats.put("activeSessions", lanes.size());
+            stats.put("queuedTurns", getQueuedTurns());
+            stats.put("rejectedTurns", rejectedTurns);
+        }
+        return stats;
+    }
+
+    /**
+     * 单个会话的轮次队列
+     */
+    private static final class Lane {
+        private Turn running;
+        private final Deque<Turn> waiting = new ArrayDeque<>();
+    }
+
+    /**
+     * 会话中的一轮对话
+     */
+    public final class Turn {
+        private final String sessionId;
+        private final Consumer<Turn> start;
+        private boolean done;
+
+        private Turn(String sessionId, Consumer<Turn> start) {
+            this.sessionId = sessionId;
+            this.start = start;
+        }
+
+        /**
+         * 释放轮次，可重复调用
+         */
+        public void release() {
+            SessionTurnScheduler.this.release(this);
+        }
+    }
+}
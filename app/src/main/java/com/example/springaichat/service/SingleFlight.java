@@ -0,0 +1,77 @@
+package com.example.springaichat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 并发请求合并 - 指纹相同的并发模型调用共享同一个上游流
+ * 上游流被多播给所有订阅者，后加入的订阅者会先收到已经产生的片段；
+ * 上游结束（完成、出错或全部订阅者取消）后移除，之后的请求重新调用模型
+ */
+@Component
+public class SingleFlight {
+
+    // 是否合并相同提示词的并发调用
+    @Value("${chat.single-flight.enabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentHashMap<String, Flux<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    /**
+     * 获取指纹对应的共享流，没有进行中的调用时由upstream创建
+     * 每个订阅者各自处理收到的片段（保存到各自的会话）
+     *
+     * @param key 提示词指纹
+     * @param upstream 创建上游模型流，只在成为首个调用时执行
+     * @return 可订阅的内容片段流
+     */
+    public Flux<String> share(String key, Supplier<Flux<String>> upstream) {
+        if (!enabled || key == null) {
+            return Flux.defer(upstream);
+        }
+        return Flux.defer(() -> {
+            boolean[] created = new boolean[1];
+            Flux<String> shared = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return createShared(k, upstream);
+            });
+            (created[0] ? leaders : joined).incrementAndGet();
+            return shared;
+        });
+    }
+
+    /**
+     * 创建多播流，缓存全部已产生的片段供后加入者回放
+     */
+    private Flux<String> createShared(String key, Supplier<Flux<String>> upstream) {
+        AtomicReference<Flux<String>> self = new AtomicReference<>();
+        Flux<String> shared = Flux.defer(upstream)
+            .doFinally(signal -> inFlight.remove(key, self.get()))
+            .replay()
+            .refCount();
+        self.set(shared);
+        return shared;
+    }
+
+    /**
+     * 获取合并统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("inFlight", inFlight.size());
+        stats.put("upstreamCalls", leaders.get());
+        stats.put("joinedCalls", joined.get());
+        return stats;
+    }
+}
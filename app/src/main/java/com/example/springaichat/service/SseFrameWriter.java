@@ -0,0 +1,199 @@
+package com.example.springaichat.service;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 合并式SSE写入器
+ * 将模型逐个输出的片段合并成帧，帧达到最大字节数或最长等待时间后发送；
+ * 内容在追加时即完成JSON转义并写入复用的缓冲区，每帧只写一次、刷新一次网络；
+ * 帧交给本轮的事件流分发，事件流负责编号、回放缓冲和多连接发送。
+ * 延迟发送到期时由共享计时线程交给发送执行器（StreamDispatcher.executeFlush），计时线程不做网络写入
+ */
+public class SseFrameWriter {
+
+    private static final Logger logger = Logger.getLogger(SseFrameWriter.class.getName());
+
+    private static final String CONTENT_FRAME_PREFIX = "event:message\ndata:{\"content\":\"";
+    private static final String CONTENT_FRAME_SUFFIX = "\",\"done\":false}\n\n";
+
+    private final TurnStream turn;
+    private final ScheduledExecutorService timer;
+    private final Executor flushExecutor;
+    private final int maxFrameBytes;
+    private final long maxDelayMs;
+
+    // 当前帧中已转义的内容，发送后复用
+    private final StringBuilder pending = new StringBuilder(256);
+    private final StringBuilder frame = new StringBuilder(512);
+    private int pendingBytes;
+    private volatile ScheduledFuture<?> scheduledFlush;
+    private volatile boolean closed;
+    // 服务端主动结束本轮（完成、出错或拒绝）
+    private volatile boolean finishedByServer;
+    // 写入失败：不可续传的连接已断开，或事件流已被结束
+    private volatile boolean writeFailed;
+
+    public SseFrameWriter(TurnStream turn, ScheduledExecutorService timer, Executor flushExecutor,
+                          int maxFrameBytes, long maxDelayMs) {
+        this.turn = turn;
+        this.timer = timer;
+        this.flushExecutor = flushExecutor;
+        this.maxFrameBytes = maxFrameBytes;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public TurnStream getTurn() {
+        return turn;
+    }
+
+    /**
+     * 追加一个内容片段，按需立即发送或安排延迟发送
+     *
+     * @param content 模型输出的内容片段
+     */
+    public synchronized void append(String content) throws IOException {
+        if (closed) {
+            return;
+        }
+        JsonEscaper.escapeInto(content, pending);
+        pendingBytes += utf8Length(content);
+
+        if (maxDelayMs <= 0 || pendingBytes >= maxFrameBytes) {
+            flush();
+        } else if (scheduledFlush == null) {
+            // 发送完成（flush清空scheduledFlush）之前不再安排新的延迟发送
+            scheduledFlush = timer.schedule(this::handOffFlush, maxDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 发送当前积累的内容帧
+     */
+    public synchronized void flush() throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (closed || pending.length() == 0) {
+            return;
+        }
+        frame.setLength(0);
+        frame.append(CONTENT_FRAME_PREFIX).append(pending).append(CONTENT_FRAME_SUFFIX);
+        pending.setLength(0);
+        pendingBytes = 0;
+        writeFrame(frame.toString());
+    }
+
+    /**
+     * 先发送积累的内容，再发送一个命名事件
+     *
+     * @param name 事件名称
+     * @param json 事件数据（已是JSON）
+     */
+    public synchronized void sendEvent(String name, String json) throws IOException {
+        flush();
+        if (closed) {
+            return;
+        }
+        frame.setLength(0);
+        frame.append("event:").append(name).append("\ndata:").append(json).append("\n\n");
+        writeFrame(frame.toString());
+    }
+
+    /**
+     * 停止写入并取消尚未执行的延迟发送
+     */
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> future = scheduledFlush;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 停止写入并正常结束事件流的所有连接
+     */
+    public void complete() {
+        finishedByServer = true;
+        close();
+        turn.finish(null);
+    }
+
+    /**
+     * 停止写入并以错误结束事件流的所有连接
+     */
+    public void completeWithError(Throwable error) {
+        finishedByServer = true;
+        close();
+        turn.finish(error);
+    }
+
+    /**
+     * 本轮是否由服务端结束（正常完成、出错或拒绝），而不是因客户端离开而结束
+     */
+    public boolean isFinishedByServer() {
+        return finishedByServer;
+    }
+
+    /**
+     * 服务端结束本轮之前写入失败，说明客户端已离开
+     */
+    public boolean isClientGone() {
+        return writeFailed && !finishedByServer;
+    }
+
+    private void writeFrame(String text) throws IOException {
+        try {
+            turn.publish(text);
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开且不可续传，或事件流已结束，后续写入全部丢弃
+            writeFailed = true;
+            closed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * 在计时线程上执行，只把发送交给发送执行器
+     */
+    private void handOffFlush() {
+        try {
+            flushExecutor.execute(this::scheduledFlush);
+        } catch (RejectedExecutionException e) {
+            // 应用正在关闭
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (IOException | IllegalStateException e) {
+            logger.warning("发送SSE数据失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 计算内容的UTF-8字节数，不分配字节数组
+     */
+    static int utf8Length(String content) {
+        int bytes = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
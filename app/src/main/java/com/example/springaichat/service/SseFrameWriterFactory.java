@@ -0,0 +1,55 @@
+package com.example.springaichat.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * SSE写入器工厂 - 持有合并参数和共享的延迟发送计时线程
+ * 计时线程只负责到期后把发送交给 StreamDispatcher 执行，本身不做网络写入，一个慢客户端不会拖住其他流的延迟发送
+ */
+@Component
+public class SseFrameWriterFactory {
+
+    // 是否合并多个片段为一帧，关闭时每个片段单独发送
+    @Value("${chat.stream.coalesce.enabled:true}")
+    private boolean coalesceEnabled;
+
+    // 单帧最大字节数，达到后立即发送
+    @Value("${chat.stream.coalesce.max-bytes:1024}")
+    private int maxFrameBytes;
+
+    // 片段在帧中的最长等待时间（毫秒）
+    @Value("${chat.stream.coalesce.max-delay-ms:20}")
+    private long maxDelayMs;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sse-frame-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 执行到期的延迟发送
+    private final StreamDispatcher streamDispatcher;
+
+    @Autowired
+    public SseFrameWriterFactory(StreamDispatcher streamDispatcher) {
+        this.streamDispatcher = streamDispatcher;
+    }
+
+    /**
+     * 为事件流创建写入器
+     */
+    public SseFrameWriter create(TurnStream turn) {
+        return new SseFrameWriter(turn, timer, streamDispatcher::executeFlush, maxFrameBytes, coalesceEnabled ? maxDelayMs : 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.springaichat.service;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 流取消管理 - 登记每个会话正在进行的模型输出，处理断开、超时和主动停止
+ * 并统计取消次数和估算节省的token（按近期完整回答的平均长度减去已生成部分）。
+ * 节省的token按模型调用统计：与其他请求共享的调用只有在最后一个订阅者离开、上游真正被取消时才计入
+ */
+@Component
+public class StreamCancellation {
+
+    private static final Logger logger = Logger.getLogger(StreamCancellation.class.getName());
+
+    // 平均回答长度的指数滑动平均系数
+    private static final double EWMA_ALPHA = 0.1;
+
+    private final ConcurrentHashMap<String, ActiveStream> active = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> cancelledByReason = new ConcurrentHashMap<>();
+    private final AtomicLong estimatedTokensSaved = new AtomicLong();
+    private volatile double averageCompletionTokens;
+
+    /**
+     * 登记开始输出的一轮，同一会话由轮次调度保证只有一轮在进行
+     */
+    public void register(ActiveStream stream) {
+        active.put(stream.getSessionId(), stream);
+        if (stream.isEnded()) {
+            // 登记前已被取消（如排队期间客户端断开）
+            active.remove(stream.getSessionId(), stream);
+        }
+    }
+
+    /**
+     * 移除结束的一轮
+     */
+    public void unregister(ActiveStream stream) {
+        active.remove(stream.getSessionId(), stream);
+    }
+
+    /**
+     * 主动停止会话正在进行的输出
+     *
+     * @return 会话有进行中的输出并已停止时返回true
+     */
+    public boolean stop(String sessionId) {
+        ActiveStream stream = active.get(sessionId);
+        return stream != null && cancel(stream, "stop");
+    }
+
+    /**
+     * 取消一轮输出，已结束时不做任何事
+     *
+     * @param stream 进行中的一轮
+     * @param reason 取消原因：disconnect、timeout或stop
+     * @return 本次调用取消了这一轮时返回true
+     */
+    public boolean cancel(ActiveStream stream, String reason) {
+        if (!stream.cancel(reason)) {
+            return false;
+        }
+        unregister(stream);
+        cancelledByReason.computeIfAbsent(reason, key -> new AtomicLong()).incrementAndGet();
+
+        logger.info(String.format("取消模型输出 - 会话ID: %s, 原因: %s, 已生成约%d token",
+            stream.getSessionId(), reason, TokenEstimator.estimate(stream.getContent())));
+
+        try {
+            stream.notifyCancelled();
+        } catch (RuntimeException e) {
+            logger.warning("处理取消后续操作失败: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * 跟踪一次模型调用：调用被取消时按已生成的部分估算节省的token
+     * 应包在共享之前的上游流上，共享的上游只在全部订阅者都离开后才会收到取消；
+     * 正常完成或出错的调用不计入
+     *
+     * @param upstream 模型输出的内容片段流
+     * @return 行为不变的内容片段流
+     */
+    public Flux<String> trackUpstream(Flux<String> upstream) {
+        return Flux.defer(() -> {
+            StringBuilder generated = new StringBuilder();
+            return upstream
+                .doOnNext(chunk -> {
+                    synchronized (generated) {
+                        generated.append(chunk);
+                    }
+                })
+                .doOnCancel(() -> {
+                    int tokens;
+                    synchronized (generated) {
+                        tokens = TokenEstimator.estimate(generated.toString());
+                    }
+                    long saved = Math.max(0, Math.round(averageCompletionTokens) - tokens);
+                    estimatedTokensSaved.addAndGet(saved);
+                    logger.info(String.format("模型调用已取消 - 已生成约%d token, 估计节省约%d token", tokens, saved));
+                });
+        });
+    }
+
+    /**
+     * 记录一次完整回答的长度，用于估算取消节省的token
+     */
+    public synchronized void recordCompletion(String response) {
+        int tokens = TokenEstimator.estimate(response);
+        averageCompletionTokens = averageCompletionTokens == 0
+            ? tokens
+            : averageCompletionTokens + EWMA_ALPHA * (tokens - averageCompletionTokens);
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * 获取取消统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> byReason = new LinkedHashMap<>();
+        cancelledByReason.forEach((reason, count) -> byReason.put(reason, count.get()));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeStreams", active.size());
+        stats.put("cancelled", byReason);
+        stats.put("averageCompletionTokens", Math.round(averageCompletionTokens));
+        stats.put("estimatedTokensSaved", estimatedTokensSaved.get());
+        return stats;
+    }
+}
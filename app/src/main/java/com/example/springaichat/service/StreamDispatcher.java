@@ -0,0 +1,383 @@
+package com.example.springaichat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * 流式请求调度器 - 为SSE流处理提供执行线程和准入控制
+ * 同时处理中的流数量受上限约束，超出部分进入带截止时间的等待队列，
+ * 队列已满或等待超时的请求会被拒绝；响应式流只占用名额，不在执行器上运行任务。
+ * SSE的延迟发送也在这里执行：虚拟线程模式下与流处理共用执行器，其他模式使用固定大小的发送线程池
+ */
+@Component
+public class StreamDispatcher {
+
+    private static final Logger logger = Logger.getLogger(StreamDispatcher.class.getName());
+
+    // 执行模式：virtual（虚拟线程）、platform（有界平台线程池）、cached（旧的无界线程池）
+    @Value("${chat.stream.executor-mode:virtual}")
+    private String executorMode;
+
+    // 同时处理中的最大流数量
+    @Value("${chat.stream.max-in-flight:200}")
+    private int maxInFlight;
+
+    // 等待队列容量
+    @Value("${chat.stream.queue-capacity:500}")
+    private int queueCapacity;
+
+    // 排队最长等待时间（毫秒）
+    @Value("${chat.stream.queue-timeout-ms:10000}")
+    private long queueTimeoutMs;
+
+    // 非虚拟线程模式下执行SSE延迟发送的线程数；慢客户端阻塞发送线程时，其他流的延迟发送排队等待
+    @Value("${chat.stream.flush-threads:8}")
+    private int flushThreads;
+
+    private final Object lock = new Object();
+    private final Deque<Ticket> queue = new ArrayDeque<>();
+    private int activeStreams;
+    private long rejectedStreams;
+
+    private ExecutorService executorService;
+    private ScheduledExecutorService expiryScheduler;
+    // 执行器是否为虚拟线程
+    private boolean virtualThreads;
+    // 执行SSE延迟发送；虚拟线程模式下即 executorService
+    private ExecutorService flushExecutor;
+    private final AtomicInteger runningFlushes = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        executorService = createExecutor();
+        flushExecutor = virtualThreads ? executorService : new ThreadPoolExecutor(
+            flushThreads, flushThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), daemonThreadFactory("sse-frame-flush"));
+        if (flushExecutor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) flushExecutor).allowCoreThreadTimeOut(true);
+        }
+        expiryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("stream-queue-expiry"));
+        expiryScheduler.scheduleWithFixedDelay(this::expireQueued, 250, 250, TimeUnit.MILLISECONDS);
+        logger.info(String.format("流式调度器已启动 - 执行模式: %s, 最大并发: %d, 队列容量: %d, 排队超时: %dms",
+            executorMode, maxInFlight, queueCapacity, queueTimeoutMs));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryScheduler.shutdownNow();
+        List<Ticket> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(queue);
+            queue.clear();
+        }
+        pending.forEach(ticket -> ticket.reject("服务正在关闭，请稍后再试"));
+        if (flushExecutor != executorService) {
+            flushExecutor.shutdownNow();
+        }
+        executorService.shutdown();
+    }
+
+    /**
+     * 执行一次SSE延迟发送
+     * 发送可能因客户端读得慢而阻塞，不能在计时线程上执行
+     *
+     * @param flush 发送任务
+     * @throws RejectedExecutionException 应用正在关闭
+     */
+    public void executeFlush(Runnable flush) {
+        flushExecutor.execute(() -> {
+            runningFlushes.incrementAndGet();
+            try {
+                flush.run();
+            } finally {
+                runningFlushes.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 提交一个流处理任务
+     * 返回的票据必须在流结束时释放（通常在SseEmitter的onCompletion回调中），
+     * 释放排队中的票据会将其从队列中移除
+     *
+     * @param task 流处理任务
+     * @param onRejected 被拒绝时的回调，参数为面向用户的拒绝原因
+     * @return 调度票据
+     */
+    public Ticket dispatch(Runnable task, Consumer<String> onRejected) {
+        return submit(new Ticket(task, null, onRejected, System.currentTimeMillis() + queueTimeoutMs));
+    }
+
+    /**
+     * 申请一个运行名额，不在执行器上运行任务，供生命周期内不占用线程的响应式流使用
+     * 获得名额时在当前线程或释放名额的线程上调用onAdmitted；票据同样必须在流结束时释放
+     *
+     * @param onAdmitted 获得名额时的回调，参数为本票据
+     * @param onRejected 被拒绝时的回调，参数为面向用户的拒绝原因
+     * @return 调度票据
+     */
+    public Ticket admit(Consumer<Ticket> onAdmitted, Consumer<String> onRejected) {
+        return submit(new Ticket(null, onAdmitted, onRejected, System.currentTimeMillis() + queueTimeoutMs));
+    }
+
+    private Ticket submit(Ticket ticket) {
+        boolean start = false;
+        boolean reject = false;
+
+        synchronized (lock) {
+            if (activeStreams < maxInFlight) {
+                activeStreams++;
+                ticket.state = TicketState.RUNNING;
+                start = true;
+            } else if (queue.size() < queueCapacity) {
+                queue.addLast(ticket);
+            } else {
+                ticket.state = TicketState.DONE;
+                rejectedStreams++;
+                reject = true;
+            }
+        }
+
+        if (start) {
+            start(ticket);
+        } else if (reject) {
+            logger.warning(String.format("流式请求被拒绝（队列已满） - 活跃: %d, 排队: %d", getActiveStreams(), getQueuedStreams()));
+            ticket.reject("服务繁忙，当前排队人数过多，请稍后再试");
+        }
+        return ticket;
+    }
+
+    /**
+     * 在执行器上启动任务，执行器已关闭时释放名额并拒绝
+     */
+    private void start(Ticket ticket) {
+        if (ticket.task == null) {
+            try {
+                ticket.onAdmitted.accept(ticket);
+            } catch (RuntimeException e) {
+                logger.severe("流处理任务异常: " + e.getMessage());
+                ticket.release();
+            }
+            return;
+        }
+        try {
+            executorService.execute(() -> {
+                try {
+                    ticket.task.run();
+                } catch (Throwable e) {
+                    logger.severe("流处理任务异常: " + e.getMessage());
+                    ticket.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ticket.release();
+            ticket.reject("服务正在关闭，请稍后再试");
+        }
+    }
+
+    /**
+     * 释放一个运行名额，并按顺序唤醒仍在截止时间内的排队任务
+     */
+    private void onRelease() {
+        List<Ticket> expired = new ArrayList<>();
+        Ticket next = null;
+        long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            activeStreams--;
+            while (!queue.isEmpty()) {
+                Ticket candidate = queue.pollFirst();
+                if (candidate.deadline < now) {
+                    candidate.state = TicketState.DONE;
+                    rejectedStreams++;
+                    expired.add(candidate);
+                } else {
+                    candidate.state = TicketState.RUNNING;
+                    activeStreams++;
+                    next = candidate;
+                    break;
+                }
+            }
+        }
+
+        expired.forEach(ticket -> ticket.reject("服务繁忙，排队等待超时，请稍后再试"));
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    /**
+     * 定期清理已超过截止时间的排队任务
+     */
+    private void expireQueued() {
+        List<Ticket> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            Iterator<Ticket> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Ticket ticket = iterator.next();
+                if (ticket.deadline < now) {
+                    iterator.remove();
+                    ticket.state = TicketState.DONE;
+                    rejectedStreams++;
+                    expired.add(ticket);
+                }
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            logger.warning(String.format("%d 个流式请求排队超时被拒绝", expired.size()));
+        }
+        expired.forEach(ticket -> ticket.reject("服务繁忙，排队等待超时，请稍后再试"));
+    }
+
+    /**
+     * 根据配置创建执行器，JVM不支持虚拟线程时回退到有界平台线程池
+     */
+    private ExecutorService createExecutor() {
+        if ("cached".equalsIgnoreCase(executorMode)) {
+            return Executors.newCachedThreadPool(daemonThreadFactory("chat-stream"));
+        }
+        if ("virtual".equalsIgnoreCase(executorMode)) {
+            try {
+                // 通过反射获取，保证在Java 17上也能编译和运行
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService executor = (ExecutorService) factory.invoke(null);
+                virtualThreads = true;
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                logger.warning("当前JVM不支持虚拟线程（需要Java 21+），回退到有界平台线程池");
+            }
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), daemonThreadFactory("chat-stream"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public int getActiveStreams() {
+        synchronized (lock) {
+            return activeStreams;
+        }
+    }
+
+    public int getQueuedStreams() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public long getRejectedStreams() {
+        synchronized (lock) {
+            return rejectedStreams;
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public String getExecutorMode() {
+        return executorMode;
+    }
+
+    /**
+     * 正在执行的SSE延迟发送数量
+     */
+    public int getRunningFlushes() {
+        return runningFlushes.get();
+    }
+
+    /**
+     * 执行SSE延迟发送的线程数：发送线程池的当前线程数，虚拟线程模式下为正在执行的发送数（每次发送一个虚拟线程）
+     */
+    public int getFlushThreads() {
+        if (flushExecutor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) flushExecutor).getPoolSize();
+        }
+        return runningFlushes.get();
+    }
+
+    private enum TicketState {
+        QUEUED, RUNNING, DONE
+    }
+
+    /**
+     * 调度票据，代表一个已提交的流处理任务
+     */
+    public final class Ticket {
+        // 在执行器上运行的任务；只申请名额时为null，改为调用onAdmitted
+        private final Runnable task;
+        private final Consumer<Ticket> onAdmitted;
+        private final Consumer<String> onRejected;
+        private final long deadline;
+        private TicketState state = TicketState.QUEUED;
+
+        private Ticket(Runnable task, Consumer<Ticket> onAdmitted, Consumer<String> onRejected, long deadline) {
+            this.task = task;
+            this.onAdmitted = onAdmitted;
+            this.onRejected = onRejected;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 释放票据，可重复调用
+         * 运行中的票据归还名额，排队中的票据从队列移除
+         */
+        public void release() {
+            boolean wasRunning;
+            synchronized (lock) {
+                if (state == TicketState.DONE) {
+                    return;
+                }
+                wasRunning = state == TicketState.RUNNING;
+                if (!wasRunning) {
+                    queue.remove(this);
+                }
+                state = TicketState.DONE;
+            }
+            if (wasRunning) {
+                onRelease();
+            }
+        }
+
+        private void reject(String reason) {
+            try {
+                onRejected.accept(reason);
+            } catch (Exception e) {
+                logger.warning("发送拒绝通知失败: " + e.getMessage());
+            }
+        }
+    }
+}
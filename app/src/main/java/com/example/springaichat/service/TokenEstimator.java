@@ -0,0 +1,51 @@
+package com.example.springaichat.service;
+
+/**
+ * Token数量估算工具
+ * 不依赖具体分词器：中日韩字符按每字一个token计，其余字符按约4个字符一个token计，
+ * 另加每条消息固定的格式开销。用于上下文预算，误差在可接受范围内
+ */
+public final class TokenEstimator {
+
+    // 每条消息的角色和格式开销
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算一段文本的token数（不含消息开销）
+     */
+    public static int estimate(String content) {
+        if (content == null || content.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (isCjk(c)) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 估算一条消息占用的token数（含消息开销）
+     */
+    public static int estimateMessage(String content) {
+        return estimate(content) + MESSAGE_OVERHEAD;
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= '\u4E00' && c <= '\u9FFF')   // CJK统一汉字
+            || (c >= '\u3400' && c <= '\u4DBF')   // CJK扩展A
+            || (c >= '\u3000' && c <= '\u303F')   // CJK标点
+            || (c >= '\u3040' && c <= '\u30FF')   // 日文假名
+            || (c >= '\uAC00' && c <= '\uD7AF')   // 韩文音节
+            || (c >= '\uFF00' && c <= '\uFFEF');  // 全角字符
+    }
+}
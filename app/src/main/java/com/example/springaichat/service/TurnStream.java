@@ -0,0 +1,219 @@
+package com.example.springaichat.service;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 单轮对话的事件流 - 将写入的SSE帧分发给所有连接的客户端
+ * 可续传时每帧带有"轮次ID-序号"形式的事件ID，并保存在有界回放缓冲中，
+ * 断线的客户端携带Last-Event-ID重连后从缓冲补发，再继续接收后续帧
+ */
+public class TurnStream {
+
+    private static final Logger logger = Logger.getLogger(TurnStream.class.getName());
+
+    private static final MediaType TEXT_PLAIN_UTF8 = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+    private final String turnId;
+    private final boolean resumable;
+    private final long maxBufferChars;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private final List<SseEmitter> subscribers = new ArrayList<>();
+    private final List<Runnable> finishCallbacks = new ArrayList<>();
+    private long bufferedChars;
+    private long nextSeq = 1;
+    private long firstBufferedSeq = 1;
+    private boolean finished;
+
+    private volatile long finishedAt;
+    private volatile long detachedAt;
+
+    TurnStream(String turnId, boolean resumable, long maxBufferChars, SseEmitter emitter) {
+        this.turnId = turnId;
+        this.resumable = resumable;
+        this.maxBufferChars = maxBufferChars;
+        this.subscribers.add(emitter);
+    }
+
+    /**
+     * 创建只对应一个连接、不可续传的事件流
+     */
+    public static TurnStream direct(SseEmitter emitter) {
+        return new TurnStream(null, false, 0, emitter);
+    }
+
+    public String getTurnId() {
+        return turnId;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * 发布一帧，分配序号后写入回放缓冲并发送给所有连接
+     * 网络发送在锁外进行，慢连接不会阻塞续传接入、结束和过期清理；
+     * 调用方须串行发布（SseFrameWriter在自身锁内调用），以保证每个连接上的帧顺序。
+     * 不可续传的流在唯一的连接失效时抛出异常，由调用方停止上游
+     *
+     * @param frame 完整的SSE帧文本（不含id行）
+     */
+    public void publish(String frame) throws IOException {
+        String text = frame;
+        List<SseEmitter> targets;
+        synchronized (this) {
+            if (finished) {
+                throw new IllegalStateException("事件流已结束");
+            }
+            if (resumable) {
+                long seq = nextSeq++;
+                text = "id:" + turnId + "-" + seq + "\n" + frame;
+                frames.addLast(new Frame(seq, text));
+                bufferedChars += text.length();
+                while (bufferedChars > maxBufferChars && frames.size() > 1) {
+                    Frame dropped = frames.pollFirst();
+                    bufferedChars -= dropped.text.length();
+                    firstBufferedSeq = dropped.seq + 1;
+                }
+            }
+            // 之后接入的续传连接从回放缓冲补发本帧，不在本次发送之列
+            targets = List.copyOf(subscribers);
+        }
+
+        for (SseEmitter emitter : targets) {
+            try {
+                send(emitter, text);
+            } catch (IOException | IllegalStateException e) {
+                detach(emitter);
+                if (!resumable) {
+                    throw e;
+                }
+                logger.fine("客户端断开，等待续传 - 轮次: " + turnId);
+            }
+        }
+    }
+
+    /**
+     * 接入一个续传连接，补发指定序号之后的帧
+     * 流已结束时补发完毕即结束连接，否则继续接收后续帧
+     *
+     * @param emitter 续传连接
+     * @param afterSeq 客户端已收到的最后一帧序号
+     * @return 缓冲中已缺失所需的帧时返回false
+     */
+    public synchronized boolean attach(SseEmitter emitter, long afterSeq) throws IOException {
+        if (!resumable || afterSeq + 1 < firstBufferedSeq || afterSeq >= nextSeq) {
+            return false;
+        }
+        for (Frame frame : frames) {
+            if (frame.seq > afterSeq) {
+                send(emitter, frame.text);
+            }
+        }
+        if (finished) {
+            emitter.complete();
+        } else {
+            subscribers.add(emitter);
+            detachedAt = 0;
+        }
+        return true;
+    }
+
+    /**
+     * 移除一个已结束的连接
+     */
+    public synchronized void detach(SseEmitter emitter) {
+        if (subscribers.remove(emitter) && subscribers.isEmpty() && !finished) {
+            detachedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 注册结束回调，流已结束时立即执行
+     */
+    public void onFinish(Runnable callback) {
+        synchronized (this) {
+            if (!finished) {
+                finishCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * 结束事件流并结束所有连接，可重复调用
+     *
+     * @param error 出错结束时的异常，正常结束为null
+     */
+    public void finish(Throwable error) {
+        List<SseEmitter> emitters;
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            finishedAt = System.currentTimeMillis();
+            emitters = new ArrayList<>(subscribers);
+            subscribers.clear();
+            callbacks = new ArrayList<>(finishCallbacks);
+            finishCallbacks.clear();
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                if (error == null) {
+                    emitter.complete();
+                } else {
+                    emitter.completeWithError(error);
+                }
+            } catch (IllegalStateException e) {
+                // 连接已结束
+            }
+        }
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                logger.warning("事件流结束回调异常: " + e.getMessage());
+            }
+        }
+    }
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    long getDetachedAt() {
+        return detachedAt;
+    }
+
+    private static void send(SseEmitter emitter, String text) throws IOException {
+        emitter.send(Collections.singleton(new ResponseBodyEmitter.DataWithMediaType(text, TEXT_PLAIN_UTF8)));
+    }
+
+    private static final class Frame {
+        private final long seq;
+        private final String text;
+
+        private Frame(long seq, String text) {
+            this.seq = seq;
+            this.text = text;
+        }
+    }
+}
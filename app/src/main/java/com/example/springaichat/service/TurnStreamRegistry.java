@@ -0,0 +1,160 @@
+package com.example.springaichat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 可续传事件流登记 - 按轮次ID保存进行中和刚结束的对话事件流
+ * 结束的流保留一段时间供断线重连补发；进行中的流在所有连接断开后等待一段宽限期，仍无人续传则被放弃
+ */
+@Component
+public class TurnStreamRegistry {
+
+    private static final Logger logger = Logger.getLogger(TurnStreamRegistry.class.getName());
+
+    // 是否启用断线续传
+    @Value("${chat.stream.resume.enabled:true}")
+    private boolean enabled;
+
+    // 流结束后保留回放缓冲的时间（秒）
+    @Value("${chat.stream.resume.retention-seconds:60}")
+    private long retentionSeconds;
+
+    // 回答进行中所有连接都断开后，等待续传的时间（秒），超时后取消模型输出
+    @Value("${chat.stream.resume.detach-grace-seconds:15}")
+    private long detachGraceSeconds;
+
+    // 单轮回放缓冲的上限（字符数），超出后丢弃最早的帧
+    @Value("${chat.stream.resume.max-buffer-chars:262144}")
+    private long maxBufferChars;
+
+    // 同时保留的可续传流数量上限，超出后新对话不可续传
+    @Value("${chat.stream.resume.max-turns:2000}")
+    private int maxTurns;
+
+    private final ConcurrentHashMap<String, TurnStream> turns = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "turn-stream-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 为新一轮对话创建事件流
+     * 可续传时先发送携带轮次ID的start事件，客户端在首个内容到达前断线也能续传
+     *
+     * @param emitter 发起请求的连接
+     * @return 事件流
+     */
+    public TurnStream open(SseEmitter emitter) {
+        if (!enabled || turns.size() >= maxTurns) {
+            return TurnStream.direct(emitter);
+        }
+        String turnId = UUID.randomUUID().toString().replace("-", "");
+        TurnStream turn = new TurnStream(turnId, true, maxBufferChars, emitter);
+        turns.put(turnId, turn);
+        try {
+            turn.publish("event:start\ndata:{\"turnId\":\"" + turnId + "\"}\n\n");
+        } catch (IOException | IllegalStateException e) {
+            logger.fine("发送start事件失败: " + e.getMessage());
+        }
+        return turn;
+    }
+
+    /**
+     * 将续传连接接入Last-Event-ID所属的事件流
+     *
+     * @param lastEventId 客户端收到的最后一个事件ID（轮次ID-序号）
+     * @param emitter 续传连接
+     * @return 事件流已过期或所需的帧已不在缓冲中时返回false
+     */
+    public boolean resume(String lastEventId, SseEmitter emitter) throws IOException {
+        int separator = lastEventId == null ? -1 : lastEventId.lastIndexOf('-');
+        if (separator <= 0) {
+            return false;
+        }
+        long afterSeq;
+        try {
+            afterSeq = Long.parseLong(lastEventId.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        TurnStream turn = turns.get(lastEventId.substring(0, separator).trim());
+        return turn != null && turn.attach(emitter, afterSeq);
+    }
+
+    /**
+     * 移除已结束的续传连接
+     */
+    public void detach(String lastEventId, SseEmitter emitter) {
+        int separator = lastEventId.lastIndexOf('-');
+        TurnStream turn = turns.get(lastEventId.substring(0, separator).trim());
+        if (turn != null) {
+            turn.detach(emitter);
+        }
+    }
+
+    /**
+     * 清理过期的事件流，放弃长时间无人连接的进行中流
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - TimeUnit.SECONDS.toMillis(retentionSeconds);
+        long detachCutoff = now - TimeUnit.SECONDS.toMillis(detachGraceSeconds);
+        for (Map.Entry<String, TurnStream> entry : turns.entrySet()) {
+            TurnStream turn = entry.getValue();
+            if (turn.isFinished()) {
+                if (turn.getFinishedAt() < cutoff) {
+                    turns.remove(entry.getKey(), turn);
+                }
+            } else {
+                long detachedAt = turn.getDetachedAt();
+                if (detachedAt > 0 && detachedAt < detachCutoff) {
+                    logger.info("连接断开后无人续传，放弃事件流 - 轮次: " + entry.getKey());
+                    turn.finish(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取续传统计
+     */
+    public Map<String, Object> getStats() {
+        int running = 0;
+        for (TurnStream turn : turns.values()) {
+            if (!turn.isFinished()) {
+                running++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("retainedTurns", turns.size());
+        stats.put("runningTurns", running);
+        return stats;
+    }
+}
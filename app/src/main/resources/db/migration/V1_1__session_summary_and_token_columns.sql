@@ -0,0 +1,77 @@
+-- ============================================================
+-- V1_1 会话摘要、滚动摘要和消息token数列，并回填旧会话的摘要
+-- 引入Flyway之前，这些列由 ddl-auto=update 按实体自动添加，已有数据库可能已经有其中部分或全部列；
+-- MySQL不支持 ADD COLUMN IF NOT EXISTS，列是否存在从information_schema判断
+--
+-- 回填：为尚未填充的会话（last_activity_at 为空）计算消息数、最后一条用户消息的预览和最后活跃时间，
+-- 此时正文仍在 chat_messages.content（V3才移到副表）；已回填的会话不会重复处理
+-- ============================================================
+
+-- 1. chat_sessions.message_count：消息数，随消息保存增量维护
+SET @exists := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_sessions'
+                  AND COLUMN_NAME = 'message_count');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'ALTER TABLE chat_sessions ADD COLUMN message_count INT NOT NULL DEFAULT 0');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 2. chat_sessions.last_preview：最后一条用户消息的预览
+SET @exists := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_sessions'
+                  AND COLUMN_NAME = 'last_preview');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'ALTER TABLE chat_sessions ADD COLUMN last_preview VARCHAR(100) NULL');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 3. chat_sessions.last_activity_at：最后活跃时间，为空表示尚未回填
+SET @exists := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_sessions'
+                  AND COLUMN_NAME = 'last_activity_at');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'ALTER TABLE chat_sessions ADD COLUMN last_activity_at DATETIME(6) NULL');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 4. chat_sessions.summary：滚动摘要
+SET @exists := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_sessions'
+                  AND COLUMN_NAME = 'summary');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'ALTER TABLE chat_sessions ADD COLUMN summary TEXT NULL');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 5. chat_sessions.summarized_until：摘要已覆盖到的消息时间
+SET @exists := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_sessions'
+                  AND COLUMN_NAME = 'summarized_until');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'ALTER TABLE chat_sessions ADD COLUMN summarized_until DATETIME(6) NULL');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 6. chat_messages.token_count：估算的token数，旧消息为空时按正文长度估算
+SET @exists := (SELECT COUNT(*) FROM information_schema.COLUMNS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_messages'
+                  AND COLUMN_NAME = 'token_count');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'ALTER TABLE chat_messages ADD COLUMN token_count INT NULL');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 7. 回填会话摘要
+UPDATE chat_sessions s SET
+    s.message_count = (SELECT COUNT(*) FROM chat_messages m WHERE m.session_id = s.id),
+    s.last_preview = (SELECT CASE WHEN CHAR_LENGTH(m.content) > 30 THEN CONCAT(LEFT(m.content, 30), '...') ELSE m.content END
+                      FROM chat_messages m
+                      WHERE m.session_id = s.id AND m.role = 'user' ORDER BY m.timestamp DESC LIMIT 1),
+    s.last_activity_at = COALESCE((SELECT MAX(m.timestamp) FROM chat_messages m WHERE m.session_id = s.id), s.updated_at)
+WHERE s.last_activity_at IS NULL;
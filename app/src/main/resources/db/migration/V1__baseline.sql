@@ -0,0 +1,25 @@
+-- ============================================================
+-- V1 基线：引入Flyway之前由Hibernate（ddl-auto=update）维护的表结构
+-- 与旧版本实体一致：ID为 VARCHAR(100) utf8mb4，消息正文在 chat_messages.content，没有会话摘要和token数列；
+-- 之后的列、索引和表由V1_1起的脚本添加
+-- 已有数据库由 spring.flyway.baseline-on-migrate 标记为V1，不会执行本脚本
+-- ============================================================
+
+CREATE TABLE chat_sessions (
+    id         VARCHAR(100) NOT NULL,
+    name       VARCHAR(200) NOT NULL,
+    created_at DATETIME(6)  NOT NULL,
+    updated_at DATETIME(6)  NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
+
+CREATE TABLE chat_messages (
+    id         VARCHAR(100) NOT NULL,
+    session_id VARCHAR(100) NOT NULL,
+    role       VARCHAR(20)  NOT NULL,
+    content    TEXT         NOT NULL,
+    timestamp  DATETIME(6)  NOT NULL,
+    status     VARCHAR(20),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_chat_messages_session FOREIGN KEY (session_id) REFERENCES chat_sessions (id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
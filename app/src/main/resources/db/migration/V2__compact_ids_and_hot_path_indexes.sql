@@ -0,0 +1,53 @@
+-- ============================================================
+-- V2 紧凑ID列和热点查询索引
+-- 由V1新建和基线为V1的已有数据库，ID列都是 VARCHAR(100) utf8mb4，统一改为 VARCHAR(32) ascii_bin，
+-- 已执行过旧的 db/upgrade/compact-ids.sql 的数据库重复修改没有副作用。
+-- 超过32个字符或含非ASCII字符的旧ID会使本脚本失败，检查方法见 DATABASE_UPGRADE.md
+--
+-- 索引：
+--   chat_messages(session_id, timestamp, id)：按会话读取历史（findBySessionIdOrderByTimestampAsc）、尾部和键集分页
+--   chat_sessions(updated_at)：会话列表（findAllByOrderByUpdatedAtDesc、findAllSummaries）
+-- MySQL不支持 CREATE INDEX IF NOT EXISTS，索引是否存在从information_schema判断
+-- ============================================================
+
+-- 1. 删除 chat_messages.session_id 的外键（Hibernate生成的外键名不固定）
+SET @fk := (SELECT CONSTRAINT_NAME FROM information_schema.KEY_COLUMN_USAGE
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_messages'
+              AND COLUMN_NAME = 'session_id' AND REFERENCED_TABLE_NAME = 'chat_sessions'
+            LIMIT 1);
+SET @sql := IF(@fk IS NULL, 'SELECT 1', CONCAT('ALTER TABLE chat_messages DROP FOREIGN KEY ', @fk));
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 2. ID列改为紧凑存储
+ALTER TABLE chat_sessions
+    MODIFY id VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL;
+
+ALTER TABLE chat_messages
+    MODIFY id VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    MODIFY session_id VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL;
+
+-- 3. 消息按会话和时间的复合索引（先于外键创建，外键复用该索引）
+SET @exists := (SELECT COUNT(*) FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_messages'
+                  AND INDEX_NAME = 'idx_chat_messages_session_ts_id');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'CREATE INDEX idx_chat_messages_session_ts_id ON chat_messages (session_id, timestamp, id)');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 4. 重建外键
+ALTER TABLE chat_messages
+    ADD CONSTRAINT fk_chat_messages_session FOREIGN KEY (session_id) REFERENCES chat_sessions (id);
+
+-- 5. 会话列表按更新时间排序的索引
+SET @exists := (SELECT COUNT(*) FROM information_schema.STATISTICS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_sessions'
+                  AND INDEX_NAME = 'idx_chat_sessions_updated_at');
+SET @sql := IF(@exists > 0, 'SELECT 1',
+    'CREATE INDEX idx_chat_sessions_updated_at ON chat_sessions (updated_at)');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,17 @@
+-- ============================================================
+-- V3 消息正文移到副表 chat_message_contents
+-- chat_messages只保留定长的元数据列，按会话列出、计数和分页扫描的行更小，不读取正文；
+-- 正文按消息ID一对一存放，删除消息时级联删除
+-- ============================================================
+
+CREATE TABLE chat_message_contents (
+    message_id VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    content    TEXT NOT NULL,
+    PRIMARY KEY (message_id),
+    CONSTRAINT fk_chat_message_contents_message FOREIGN KEY (message_id) REFERENCES chat_messages (id) ON DELETE CASCADE
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COLLATE = utf8mb4_unicode_ci;
+
+INSERT INTO chat_message_contents (message_id, content)
+SELECT id, content FROM chat_messages;
+
+ALTER TABLE chat_messages DROP COLUMN content;
@@ -0,0 +1,20 @@
+-- ============================================================
+-- V4 冷会话归档
+-- 空闲超过阈值的会话的消息由SessionArchiver编码为NDJSON并deflate压缩，整块存入 chat_session_archives，
+-- 同时从 chat_messages 删除；chat_sessions.archived_at 非空表示消息在归档表中
+-- ============================================================
+
+ALTER TABLE chat_sessions ADD COLUMN archived_at DATETIME(6) NULL;
+
+-- 归档扫描：未归档且最后活跃早于阈值的会话
+CREATE INDEX idx_chat_sessions_archive ON chat_sessions (archived_at, last_activity_at);
+
+CREATE TABLE chat_session_archives (
+    session_id    VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    message_count INT         NOT NULL,
+    raw_bytes     BIGINT      NOT NULL,
+    payload       LONGBLOB    NOT NULL,
+    archived_at   DATETIME(6) NOT NULL,
+    PRIMARY KEY (session_id),
+    CONSTRAINT fk_chat_session_archives_session FOREIGN KEY (session_id) REFERENCES chat_sessions (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
@@ -0,0 +1,34 @@
+-- ============================================================
+-- V5 批量任务
+-- POST /ai/batch 提交的每条提示词保存为 chat_batch_items 的一行，处理完成后写回结果和完成序号seq；
+-- 重启后只处理仍为PENDING的条目，结果流按seq顺序读取
+-- ============================================================
+
+CREATE TABLE chat_batch_jobs (
+    id          VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    status      VARCHAR(16) NOT NULL,
+    total       INT         NOT NULL,
+    parallelism INT         NOT NULL,
+    created_at  DATETIME(6) NOT NULL,
+    finished_at DATETIME(6) NULL,
+    PRIMARY KEY (id),
+    -- 启动时查找未完成的任务
+    INDEX idx_chat_batch_jobs_status (status)
+) ENGINE = InnoDB;
+
+CREATE TABLE chat_batch_items (
+    job_id      VARCHAR(32)  CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    item_index  INT          NOT NULL,
+    -- 提交时未指定会话的条目在提交时分配新会话ID，会话在处理时创建
+    session_id  VARCHAR(32)  NOT NULL,
+    prompt      MEDIUMTEXT   NOT NULL,
+    status      VARCHAR(16)  NOT NULL,
+    response    MEDIUMTEXT   NULL,
+    error       VARCHAR(500) NULL,
+    -- 完成顺序，从1开始连续递增，结果流以它为游标
+    seq         INT          NULL,
+    finished_at DATETIME(6)  NULL,
+    PRIMARY KEY (job_id, item_index),
+    UNIQUE KEY uk_chat_batch_items_seq (job_id, seq),
+    CONSTRAINT fk_chat_batch_items_job FOREIGN KEY (job_id) REFERENCES chat_batch_jobs (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
@@ -0,0 +1,8 @@
+-- ============================================================
+-- V6 批量任务条目记录用户消息ID
+-- 调用模型前先写入本条提示词的用户消息ID；重启后重新处理时沿用该ID，
+-- 用户消息已保存的不再保存，其后已有成功回答的直接采用，不会在会话中重复写入同一轮问答
+-- ============================================================
+
+ALTER TABLE chat_batch_items
+    ADD COLUMN user_message_id VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin NULL AFTER prompt;
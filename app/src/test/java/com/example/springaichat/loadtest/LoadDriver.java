@@ -0,0 +1,321 @@
+package com.example.springaichat.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 压测驱动 - 保持N个并发的 /ai/chat 流，每个流结束后立即发起下一个，直到完成指定请求数
+ * 客户端统计吞吐和首token时间（TTFT），服务端线程数和堆内存通过actuator指标采样
+ *
+ * 配置（系统属性）：
+ * loadtest.url 应用地址
+ * loadtest.concurrency 并发流数量
+ * loadtest.requests 总请求数，0表示与并发数相同
+ * loadtest.mode 聊天模式：emitter（默认SseEmitter模式）或reactive（?mode=reactive）
+ * loadtest.timeout-seconds 整体超时时间
+ */
+public class LoadDriver {
+
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"statistic\"\\s*:\\s*\"VALUE\"\\s*,\\s*\"value\"\\s*:\\s*([0-9.Ee+-]+)");
+    private static final Pattern CONTENT_VALUE = Pattern.compile("\"content\":\"(.*)\",\"done\"");
+
+    private final String baseUrl;
+    private final int concurrency;
+    private final int requests;
+    private final String mode;
+    private final long timeoutSeconds;
+
+    private final ExecutorService clientExecutor = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "loadtest-client");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10))
+        .executor(clientExecutor)
+        .build();
+
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger issued = new AtomicInteger();
+    private final List<StreamResult> results = Collections.synchronizedList(new ArrayList<>());
+
+    public LoadDriver(String baseUrl, int concurrency, int requests, String mode, long timeoutSeconds) {
+        this.baseUrl = baseUrl;
+        this.concurrency = concurrency;
+        this.requests = requests > 0 ? requests : concurrency;
+        this.mode = mode;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * 按系统属性创建压测驱动
+     *
+     * @param baseUrl 应用地址，为null时读取loadtest.url
+     */
+    public static LoadDriver fromSystemProperties(String baseUrl) {
+        return new LoadDriver(
+            baseUrl != null ? baseUrl : System.getProperty("loadtest.url", "http://localhost:8080"),
+            Integer.getInteger("loadtest.concurrency", 100),
+            Integer.getInteger("loadtest.requests", 0),
+            System.getProperty("loadtest.mode", "emitter"),
+            Long.getLong("loadtest.timeout-seconds", 600));
+    }
+
+    /**
+     * 执行压测并返回结果
+     */
+    public Report run() throws InterruptedException {
+        Report report = new Report();
+        report.idleThreads = sampleMetric("jvm.threads.live", null);
+        report.idleHeap = sampleMetric("jvm.memory.used", "area:heap");
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(() -> {
+            report.peakThreads = Math.max(report.peakThreads, sampleMetric("jvm.threads.live", null));
+            report.peakFlushThreads = Math.max(report.peakFlushThreads, sampleMetric("chat.streams.flush.threads", null));
+            report.peakHeap = Math.max(report.peakHeap, sampleMetric("jvm.memory.used", "area:heap"));
+        }, 0, 500, TimeUnit.MILLISECONDS);
+
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < Math.min(concurrency, requests); i++) {
+            launch(done);
+        }
+        boolean finished = done.await(timeoutSeconds, TimeUnit.SECONDS);
+        report.elapsedNanos = System.nanoTime() - start;
+        report.timedOut = !finished;
+
+        sampler.shutdownNow();
+        clientExecutor.shutdownNow();
+        synchronized (results) {
+            report.results = new ArrayList<>(results);
+        }
+        return report;
+    }
+
+    /**
+     * 发起下一个流，结束后接着发起，保持并发数不变
+     */
+    private void launch(CountDownLatch done) {
+        int index = issued.getAndIncrement();
+        if (index >= requests) {
+            return;
+        }
+        // 每个流使用独立会话和不同的消息，避免命中响应缓存和同会话排队
+        String body = "{\"message\":\"压测消息 " + runId + " #" + index + "\",\"sessionId\":\"loadtest-" + runId + "-" + index + "\"}";
+        String path = "reactive".equalsIgnoreCase(mode) ? "/ai/chat?mode=reactive" : "/ai/chat";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .header("Content-Type", "application/json")
+            .header("Accept", "text/event-stream")
+            .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+            .build();
+
+        StreamResult result = new StreamResult(System.nanoTime());
+        client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new EventSubscriber(result)))
+            .whenComplete((response, error) -> {
+                result.endNanos = System.nanoTime();
+                if (error != null) {
+                    result.outcome = "failed";
+                } else if (response.statusCode() != 200) {
+                    result.outcome = "http-" + response.statusCode();
+                } else if (result.outcome == null) {
+                    result.outcome = "incomplete";
+                }
+                results.add(result);
+                done.countDown();
+                launch(done);
+            });
+    }
+
+    /**
+     * 读取actuator指标的当前值，不可用时返回-1
+     */
+    private long sampleMetric(String name, String tag) {
+        try {
+            String url = baseUrl + "/actuator/metrics/" + name + (tag != null ? "?tag=" + tag : "");
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = METRIC_VALUE.matcher(response.body());
+            return response.statusCode() == 200 && matcher.find() ? (long) Double.parseDouble(matcher.group(1)) : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 单个流的统计
+     */
+    static final class StreamResult {
+        private final long startNanos;
+        private volatile long firstContentNanos = -1;
+        private volatile long endNanos;
+        private volatile int contentFrames;
+        private volatile long contentChars;
+        private volatile String outcome;
+
+        private StreamResult(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * 按行解析SSE事件，记录首个内容帧时间和结束方式
+     */
+    private static final class EventSubscriber implements Flow.Subscriber<String> {
+        private final StreamResult result;
+        private String event = "message";
+        private final StringBuilder data = new StringBuilder();
+
+        private EventSubscriber(StreamResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event:")) {
+                event = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                data.append(line.substring(5));
+            } else if (line.isEmpty() && data.length() > 0) {
+                dispatch(event, data.toString());
+                event = "message";
+                data.setLength(0);
+            }
+        }
+
+        private void dispatch(String name, String json) {
+            if ("error".equals(name)) {
+                // 调度器排队超时、队列已满和同会话拒绝都以“繁忙”或“仍在回答中”提示
+                result.outcome = json.contains("繁忙") || json.contains("仍在回答中") ? "rejected" : "error";
+            } else if ("message".equals(name)) {
+                Matcher matcher = CONTENT_VALUE.matcher(json);
+                if (matcher.find()) {
+                    if (result.firstContentNanos < 0) {
+                        result.firstContentNanos = System.nanoTime();
+                    }
+                    result.contentFrames++;
+                    result.contentChars += matcher.group(1).length();
+                } else if (json.contains("\"cancelled\":true")) {
+                    result.outcome = "cancelled";
+                } else if (json.contains("\"done\":true")) {
+                    result.outcome = "ok";
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.outcome = "failed";
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * 压测结果
+     */
+    public final class Report {
+        private volatile long idleThreads = -1;
+        private volatile long peakThreads = -1;
+        // SSE延迟发送的线程数，虚拟线程模式下不计入 jvm.threads.live
+        private volatile long peakFlushThreads = -1;
+        private volatile long idleHeap = -1;
+        private volatile long peakHeap = -1;
+        private long elapsedNanos;
+        private boolean timedOut;
+        private List<StreamResult> results;
+
+        public long count(String outcome) {
+            return results.stream().filter(r -> outcome.equals(r.outcome)).count();
+        }
+
+        public void print() {
+            List<Long> ttft = new ArrayList<>();
+            List<Long> duration = new ArrayList<>();
+            long chars = 0;
+            long frames = 0;
+            for (StreamResult r : results) {
+                if (r.firstContentNanos > 0) {
+                    ttft.add(r.firstContentNanos - r.startNanos);
+                }
+                if ("ok".equals(r.outcome)) {
+                    duration.add(r.endNanos - r.startNanos);
+                }
+                chars += r.contentChars;
+                frames += r.contentFrames;
+            }
+            Collections.sort(ttft);
+            Collections.sort(duration);
+            double seconds = elapsedNanos / 1e9;
+            long other = results.size() - count("ok") - count("rejected") - count("error") - count("cancelled");
+
+            System.out.println("========== 压测结果 ==========");
+            System.out.printf(Locale.ROOT, "模式: %s, 并发: %d, 请求: %d, 地址: %s%n", mode, concurrency, requests, baseUrl);
+            System.out.printf(Locale.ROOT, "完成: %d, 拒绝: %d, 错误: %d, 取消: %d, 其他失败: %d%s%n",
+                count("ok"), count("rejected"), count("error"), count("cancelled"), other,
+                timedOut ? "（超时，" + (requests - results.size()) + " 个流未结束）" : "");
+            System.out.printf(Locale.ROOT, "耗时: %.1fs, 吞吐: %.1f 流/秒, %.0f 字符/秒, %.0f 帧/秒%n",
+                seconds, count("ok") / seconds, chars / seconds, frames / seconds);
+            System.out.println("TTFT(ms): " + percentiles(ttft));
+            System.out.println("流总时长(ms): " + percentiles(duration));
+            System.out.println("服务端线程: 空闲 " + format(idleThreads, 1) + ", 峰值 " + format(peakThreads, 1)
+                + ", SSE发送线程峰值 " + format(peakFlushThreads, 1));
+            System.out.println("服务端堆内存(MB): 空闲 " + format(idleHeap, 1024 * 1024) + ", 峰值 " + format(peakHeap, 1024 * 1024));
+        }
+
+        private String percentiles(List<Long> sorted) {
+            if (sorted.isEmpty()) {
+                return "无数据";
+            }
+            return String.format(Locale.ROOT, "p50=%.0f p90=%.0f p99=%.0f max=%.0f",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted.get(sorted.size() - 1) / 1e6);
+        }
+
+        private double percentile(List<Long> sorted, double p) {
+            int rank = (int) Math.ceil(p / 100 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, rank)) / 1e6;
+        }
+
+        private String format(long value, long unit) {
+            return value < 0 ? "不可用" : Long.toString(value / unit);
+        }
+    }
+
+    /**
+     * 对已在运行的应用执行压测
+     */
+    public static void main(String[] args) throws Exception {
+        LoadDriver driver = fromSystemProperties(null);
+        driver.run().print();
+        System.exit(0);
+    }
+}
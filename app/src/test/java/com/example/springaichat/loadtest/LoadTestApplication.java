@@ -0,0 +1,41 @@
+package com.example.springaichat.loadtest;
+
+import com.example.springaichat.SpringAiChatApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * 压测入口 - 在同一进程中启动存根模型服务和使用loadtest配置（H2内存数据库）的应用，
+ * 然后运行压测驱动并输出结果。不需要MySQL和DeepSeek密钥
+ *
+ * 运行：mvn -Ploadtest，参数见pom.xml中loadtest配置的属性
+ */
+public class LoadTestApplication {
+
+    public static void main(String[] args) throws Exception {
+        OpenAiStubServer stub = OpenAiStubServer.fromSystemProperties();
+        int stubPort = stub.start();
+
+        SpringApplication application = new SpringApplication(SpringAiChatApplication.class);
+        application.setAdditionalProfiles("loadtest");
+        ConfigurableApplicationContext context = application.run(
+            "--server.port=0",
+            "--spring.ai.openai.base-url=http://127.0.0.1:" + stubPort);
+        String port = context.getEnvironment().getProperty("local.server.port");
+
+        int exitCode = 0;
+        try {
+            LoadDriver.Report report = LoadDriver.fromSystemProperties("http://127.0.0.1:" + port).run();
+            report.print();
+            System.out.println("存根服务: 请求 " + stub.getRequests() + ", 注入错误 " + stub.getInjectedErrors()
+                + ", 未结束的流 " + stub.getActiveStreams());
+            if (report.count("ok") == 0) {
+                exitCode = 1;
+            }
+        } finally {
+            context.close();
+            stub.stop();
+        }
+        System.exit(exitCode);
+    }
+}
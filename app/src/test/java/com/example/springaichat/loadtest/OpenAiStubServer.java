@@ -0,0 +1,270 @@
+package com.example.springaichat.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * OpenAI兼容的本地存根服务，用于压测时代替DeepSeek
+ * 实现 /chat/completions 的流式（SSE）和非流式协议，首token延迟、输出速率和错误注入均可配置。
+ * 片段由定时线程按速率写出，不为每个流占用线程，存根本身的线程数是固定的
+ *
+ * 配置（系统属性）：
+ * stub.port 监听端口，0为随机端口
+ * stub.first-token-ms 首个片段前的延迟（毫秒）
+ * stub.tokens-per-second 每个流的输出速率
+ * stub.tokens 每个回答的片段数
+ * stub.error-rate 直接返回错误的请求比例（0~1）
+ * stub.error-status 注入错误时的HTTP状态码，如500、429、402
+ */
+public class OpenAiStubServer {
+
+    private static final Logger logger = Logger.getLogger(OpenAiStubServer.class.getName());
+
+    private static final Pattern STREAM_PATTERN = Pattern.compile("\"stream\"\\s*:\\s*true");
+
+    // 回答内容，按两个字一个片段循环输出
+    private static final String SAMPLE_TEXT =
+        "这是压测存根服务返回的模拟回答。虚拟线程由JVM调度，阻塞时不占用操作系统线程，" +
+        "适合大量并发的流式请求。每个片段的输出间隔由配置的速率决定。";
+
+    private final int port;
+    private final long firstTokenMs;
+    private final double tokensPerSecond;
+    private final int tokens;
+    private final double errorRate;
+    private final int errorStatus;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private HttpServer server;
+    private ExecutorService acceptor;
+    private ScheduledExecutorService ticker;
+
+    public OpenAiStubServer(int port, long firstTokenMs, double tokensPerSecond, int tokens,
+                            double errorRate, int errorStatus) {
+        this.port = port;
+        this.firstTokenMs = firstTokenMs;
+        this.tokensPerSecond = tokensPerSecond;
+        this.tokens = tokens;
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * 按系统属性创建存根服务
+     */
+    public static OpenAiStubServer fromSystemProperties() {
+        return new OpenAiStubServer(
+            Integer.getInteger("stub.port", 0),
+            Long.getLong("stub.first-token-ms", 500),
+            Double.parseDouble(System.getProperty("stub.tokens-per-second", "30")),
+            Integer.getInteger("stub.tokens", 200),
+            Double.parseDouble(System.getProperty("stub.error-rate", "0")),
+            Integer.getInteger("stub.error-status", 500));
+    }
+
+    /**
+     * 启动服务
+     *
+     * @return 实际监听的端口
+     */
+    public int start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        acceptor = Executors.newFixedThreadPool(4, daemonThreadFactory("stub-http"));
+        ticker = Executors.newScheduledThreadPool(2, daemonThreadFactory("stub-ticker"));
+        server.setExecutor(acceptor);
+        server.createContext("/", this::handle);
+        server.start();
+        int actualPort = server.getAddress().getPort();
+        logger.info(String.format("存根服务已启动 - 端口: %d, 首token延迟: %dms, 速率: %.1f片段/秒, 片段数: %d, 错误率: %.2f (%d)",
+            actualPort, firstTokenMs, tokensPerSecond, tokens, errorRate, errorStatus));
+        return actualPort;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            ticker.shutdownNow();
+            acceptor.shutdownNow();
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+            sendJson(exchange, 404, "{\"error\":{\"message\":\"not found\",\"type\":\"invalid_request_error\"}}");
+            return;
+        }
+        requests.incrementAndGet();
+
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            sendJson(exchange, errorStatus, "{\"error\":{\"message\":\"injected error\",\"type\":\"stub_error\",\"code\":\"" + errorStatus + "\"}}");
+            return;
+        }
+
+        if (STREAM_PATTERN.matcher(body).find()) {
+            startStream(exchange);
+        } else {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < tokens; i++) {
+                content.append(token(i));
+            }
+            sendJson(exchange, 200, "{\"id\":\"" + completionId() + "\",\"object\":\"chat.completion\",\"created\":" + epochSeconds() +
+                ",\"model\":\"stub\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content +
+                "\"},\"finish_reason\":\"stop\"}]," + usage() + "}");
+        }
+    }
+
+    /**
+     * 开始一个流式回答，由定时线程在首token延迟后按速率写出片段
+     */
+    private void startStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        activeStreams.incrementAndGet();
+
+        Stream stream = new Stream(exchange, completionId());
+        long periodMicros = Math.max(1, (long) (1_000_000 / tokensPerSecond));
+        stream.future = ticker.scheduleAtFixedRate(stream::tick,
+            TimeUnit.MILLISECONDS.toMicros(firstTokenMs), periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private String usage() {
+        return "\"usage\":{\"prompt_tokens\":20,\"completion_tokens\":" + tokens + ",\"total_tokens\":" + (tokens + 20) + "}";
+    }
+
+    private static String token(int index) {
+        int from = (index * 2) % SAMPLE_TEXT.length();
+        return SAMPLE_TEXT.substring(from, Math.min(from + 2, SAMPLE_TEXT.length()));
+    }
+
+    private static String completionId() {
+        return "chatcmpl-stub-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    private static long epochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 一个进行中的流式回答
+     */
+    private final class Stream {
+        private final HttpExchange exchange;
+        private final OutputStream out;
+        private final String id;
+        private final long created = epochSeconds();
+        private int sent;
+        private boolean done;
+        private volatile ScheduledFuture<?> future;
+
+        private Stream(HttpExchange exchange, String id) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+            this.id = id;
+        }
+
+        private void tick() {
+            if (done) {
+                return;
+            }
+            try {
+                if (sent < tokens) {
+                    String delta = sent == 0
+                        ? "{\"role\":\"assistant\",\"content\":\"" + token(sent) + "\"}"
+                        : "{\"content\":\"" + token(sent) + "\"}";
+                    write(chunk(delta, "null", ""));
+                    sent++;
+                } else {
+                    write(chunk("{}", "\"stop\"", "," + usage()));
+                    write("data: [DONE]\n\n");
+                    finish();
+                }
+            } catch (IOException e) {
+                // 客户端断开（取消），停止输出
+                finish();
+            }
+        }
+
+        private String chunk(String delta, String finishReason, String extra) {
+            return "data: {\"id\":\"" + id + "\",\"object\":\"chat.completion.chunk\",\"created\":" + created +
+                ",\"model\":\"stub\",\"choices\":[{\"index\":0,\"delta\":" + delta + ",\"finish_reason\":" + finishReason + "}]" +
+                extra + "}\n\n";
+        }
+
+        private void write(String data) throws IOException {
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        private void finish() {
+            done = true;
+            ScheduledFuture<?> current = future;
+            if (current != null) {
+                current.cancel(false);
+            }
+            activeStreams.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * 单独启动存根服务，供在另一进程中运行的应用使用
+     */
+    public static void main(String[] args) throws Exception {
+        OpenAiStubServer stub = fromSystemProperties();
+        int actualPort = stub.start();
+        System.out.println("存根服务地址: http://127.0.0.1:" + actualPort);
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.config.ChatRoutingProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * AdaptiveConcurrencyLimiter 单元测试：限流时乘法下降、排队超时、关闭时拒绝排队请求、排队中取消和同步请求不参与延迟判断
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void rateLimitedReleaseDecreasesLimitOncePerInterval() {
+        ChatRoutingProperties.Limiter settings = settings(10);
+        settings.setBackoffRatio(0.5);
+        settings.setDecreaseIntervalMs(60_000);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().block();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.acquire().block();
+        RuntimeException tooManyRequests = new RuntimeException("HTTP 429 - Too Many Requests");
+        first.release(AdaptiveConcurrencyLimiter.classify(tooManyRequests));
+        // 同一批失败在下降间隔内只下调一次
+        second.release(AdaptiveConcurrencyLimiter.classify(tooManyRequests));
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void limitNeverDropsBelowMinimum() {
+        ChatRoutingProperties.Limiter settings = settings(2);
+        settings.setMinLimit(2);
+        settings.setDecreaseIntervalMs(0);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire().block().release(AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void otherErrorsDoNotAdjustLimit() {
+        assertThat(AdaptiveConcurrencyLimiter.classify(new RuntimeException("401 Unauthorized")))
+            .isEqualTo(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertThat(AdaptiveConcurrencyLimiter.classify(new RuntimeException("429 Too Many Requests")))
+            .isEqualTo(AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+    }
+
+    @Test
+    void queuedRequestTimesOut() {
+        ChatRoutingProperties.Limiter settings = settings(1);
+        settings.setQueueTimeoutMs(50);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings);
+        limiter.start();
+        try {
+            AdaptiveConcurrencyLimiter.Permit held = limiter.acquire().block();
+
+            assertThatThrownBy(() -> limiter.acquire().block(Duration.ofSeconds(5)))
+                .isInstanceOf(AdaptiveConcurrencyLimiter.UpstreamBusyException.class)
+                .hasMessageContaining("排队等待超时");
+            assertThat(limiter.getQueued()).isZero();
+            assertThat(limiter.getStats()).containsEntry("timedOut", 1L);
+
+            held.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+            assertThat(limiter.getInFlight()).isZero();
+        } finally {
+            limiter.close();
+        }
+    }
+
+    @Test
+    void closeRejectsQueuedRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings(1));
+        limiter.start();
+        limiter.acquire().block();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        limiter.acquire().subscribe(permit -> { }, failure::set);
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        limiter.close();
+
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(failure.get())
+            .isInstanceOf(AdaptiveConcurrencyLimiter.UpstreamBusyException.class)
+            .hasMessageContaining("服务正在关闭");
+    }
+
+    @Test
+    void fullQueueRejectsImmediately() {
+        ChatRoutingProperties.Limiter settings = settings(1);
+        settings.setQueueCapacity(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings);
+        limiter.acquire().block();
+        Disposable queued = limiter.acquire().subscribe();
+
+        assertThatThrownBy(() -> limiter.acquire().block(Duration.ofSeconds(1)))
+            .isInstanceOf(AdaptiveConcurrencyLimiter.UpstreamBusyException.class)
+            .hasMessageContaining("等待队列已满");
+        queued.dispose();
+    }
+
+    @Test
+    void cancelWhileQueuedLeavesQueueWithoutTakingPermit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings(1));
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquire().block();
+
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> granted = new AtomicReference<>();
+        Disposable queued = limiter.acquire().subscribe(granted::set);
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        queued.dispose();
+        assertThat(limiter.getQueued()).isZero();
+
+        held.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+        assertThat(granted.get()).isNull();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void releaseGrantsNextQueuedRequest() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings(1));
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquire().block();
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> granted = new AtomicReference<>();
+        limiter.acquire().subscribe(granted::set);
+
+        held.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+
+        assertThat(granted.get()).isNotNull();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getQueued()).isZero();
+    }
+
+    @Test
+    void slowSynchronousCallDoesNotCountAsCongestion() {
+        ChatRoutingProperties.Limiter settings = settings(10);
+        settings.setLatencyTolerance(2.0);
+        settings.setDecreaseIntervalMs(0);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", settings);
+
+        // 流式请求建立约1ms的首个片段延迟基线
+        limiter.limit(Flux.just("a").delayElements(Duration.ofMillis(1))).blockLast();
+
+        String result = limiter.limit(() -> {
+            sleep(50);
+            return "done";
+        });
+
+        assertThat(result).isEqualTo("done");
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    private static ChatRoutingProperties.Limiter settings(int initialLimit) {
+        ChatRoutingProperties.Limiter settings = new ChatRoutingProperties.Limiter();
+        settings.setInitialLimit(initialLimit);
+        settings.setMinLimit(1);
+        settings.setMaxLimit(100);
+        return settings;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
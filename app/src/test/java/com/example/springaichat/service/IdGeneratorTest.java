@@ -0,0 +1,68 @@
+package com.example.springaichat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * IdGenerator 单元测试：同一毫秒、序号用尽和时钟回拨时ID仍严格递增
+ */
+class IdGeneratorTest {
+
+    // 2025-01-01T00:00:00Z
+    private static final long START = 1735689600000L;
+
+    @Test
+    void idsWithinSameMillisecondAreStrictlyIncreasing() {
+        IdGenerator generator = new IdGenerator(7, () -> START);
+
+        String previous = generator.next();
+        for (int i = 0; i < 1000; i++) {
+            String next = generator.next();
+            assertThat(next).hasSize(IdGenerator.LENGTH);
+            assertThat(next).isGreaterThan(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextMillisecond() {
+        IdGenerator generator = new IdGenerator(0, () -> START);
+
+        long previous = generator.nextLong();
+        // 12位序号，一毫秒最多4096个，之后借用下一毫秒
+        for (int i = 0; i < 5000; i++) {
+            long next = generator.nextLong();
+            assertThat(next).isGreaterThan(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void clockStepBackKeepsIdsIncreasing() {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = new IdGenerator(3, now::get);
+
+        String beforeStepBack = generator.next();
+        now.addAndGet(-5_000);
+        String afterStepBack = generator.next();
+        String stillBehind = generator.next();
+
+        assertThat(afterStepBack).isGreaterThan(beforeStepBack);
+        assertThat(stillBehind).isGreaterThan(afterStepBack);
+
+        // 时钟追上之后恢复使用当前时间
+        now.set(START + 1);
+        String recovered = generator.next();
+        assertThat(recovered).isGreaterThan(stillBehind);
+    }
+
+    @Test
+    void encodingPreservesNumericOrder() {
+        assertThat(IdGenerator.encode(0)).isEqualTo("0000000000000");
+        assertThat(IdGenerator.encode(31)).isLessThan(IdGenerator.encode(32));
+        assertThat(IdGenerator.encode(Long.MAX_VALUE - 1)).isLessThan(IdGenerator.encode(Long.MAX_VALUE));
+    }
+}
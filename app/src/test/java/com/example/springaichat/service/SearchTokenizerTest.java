@@ -0,0 +1,90 @@
+package com.example.springaichat.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SearchTokenizer 单元测试：中日韩文字的单字和二字切分、字母数字串、代理对
+ */
+class SearchTokenizerTest {
+
+    @Test
+    void tokenizeSplitsMixedCjkAndLatinRuns() {
+        assertThat(SearchTokenizer.tokenize("Hello世界123"))
+            .containsExactly("hello", "世", "世界", "界", "123");
+    }
+
+    @Test
+    void tokenizeKeepsRepeatedTermsAsFrequency() {
+        assertThat(SearchTokenizer.tokenize("java, Java JAVA!"))
+            .containsExactly("java", "java", "java");
+    }
+
+    @Test
+    void tokenizeTreatsPunctuationAndEmojiAsSeparators() {
+        assertThat(SearchTokenizer.tokenize("你好，Spring AI😀测试"))
+            .containsExactly("你", "你好", "好", "spring", "ai", "测", "测试", "试");
+    }
+
+    @Test
+    void tokenizeHandlesSupplementaryCjkAsSingleCharacters() {
+        // U+20000 和 U+20001 是CJK扩展B区汉字，在UTF-16中各占两个char
+        String text = "𠀀𠀁";
+
+        assertThat(SearchTokenizer.tokenize(text))
+            .containsExactly("𠀀", "𠀀𠀁", "𠀁");
+    }
+
+    @Test
+    void tokenizeSupplementaryCharacterMixedWithBmp() {
+        assertThat(SearchTokenizer.tokenize("a𠀀中"))
+            .containsExactly("a", "𠀀", "𠀀中", "中");
+    }
+
+    @Test
+    void tokenizeCoversKanaAndHangul() {
+        assertThat(SearchTokenizer.tokenize("カナ")).containsExactly("カ", "カナ", "ナ");
+        assertThat(SearchTokenizer.tokenize("한국")).containsExactly("한", "한국", "국");
+    }
+
+    @Test
+    void tokenizeDropsOverlongWords() {
+        String hash = "a".repeat(33);
+
+        assertThat(SearchTokenizer.tokenize(hash + " ok")).containsExactly("ok");
+        assertThat(SearchTokenizer.tokenize("a".repeat(32))).containsExactly("a".repeat(32));
+    }
+
+    @Test
+    void tokenizeEmptyInput() {
+        assertThat(SearchTokenizer.tokenize(null)).isEmpty();
+        assertThat(SearchTokenizer.tokenize("")).isEmpty();
+        assertThat(SearchTokenizer.tokenize("，。！ ")).isEmpty();
+    }
+
+    @Test
+    void queryTermsUseBigramsForCjkRunsAndDeduplicate() {
+        assertThat(SearchTokenizer.queryTerms("中文搜索 Java java"))
+            .containsExactly("中文", "文搜", "搜索", "java");
+    }
+
+    @Test
+    void queryTermsUseSingleCharacterForLoneCjk() {
+        assertThat(SearchTokenizer.queryTerms("字 API")).containsExactly("字", "api");
+    }
+
+    @Test
+    void queryTermsHandleSurrogatePairs() {
+        assertThat(SearchTokenizer.queryTerms("𠀀")).containsExactly("𠀀");
+        assertThat(SearchTokenizer.queryTerms("𠀀𠀁字"))
+            .containsExactly("𠀀𠀁", "𠀁字");
+    }
+
+    @Test
+    void everyQueryTermOfIndexedTextIsAnIndexTerm() {
+        String text = "Spring AI 流式输出𠀀测试 SSE";
+
+        assertThat(SearchTokenizer.tokenize(text)).containsAll(SearchTokenizer.queryTerms(text));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SessionArchiver 归档块编解码测试：编码再解码后消息逐字段一致，顺序不变
+ */
+class SessionArchiverTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 编解码不访问数据库，其余依赖为空
+    private final SessionArchiver archiver = new SessionArchiver(null, null, objectMapper, null, null, null);
+
+    @Test
+    void encodeThenDecodeRestoresEveryField() {
+        List<ChatMessage> original = List.of(
+            message("01HZX0000000A", "user", "你好，帮我写一首诗 😀", LocalDateTime.of(2025, 3, 1, 9, 30, 0), "success", 12),
+            message("01HZX0000000B", "assistant", "第一行\n第二行\t\"引号\"", LocalDateTime.of(2025, 3, 1, 9, 30, 1, 123456000), "success", null),
+            message("msg_legacy_1", "assistant", "", LocalDateTime.of(2025, 3, 1, 9, 31), null, 0)
+        );
+
+        byte[] payload = encode(original);
+        List<ChatMessage> decoded = decode(payload);
+
+        assertThat(decoded).hasSize(original.size());
+        for (int i = 0; i < original.size(); i++) {
+            ChatMessage expected = original.get(i);
+            ChatMessage actual = decoded.get(i);
+            assertThat(actual.getId()).isEqualTo(expected.getId());
+            assertThat(actual.getRole()).isEqualTo(expected.getRole());
+            assertThat(actual.getContent()).isEqualTo(expected.getContent());
+            assertThat(actual.getTimestamp()).isEqualTo(expected.getTimestamp());
+            assertThat(actual.getStatus()).isEqualTo(expected.getStatus());
+            assertThat(actual.getTokenCount()).isEqualTo(expected.getTokenCount());
+        }
+    }
+
+    @Test
+    void encoderCountsMessagesAndRawBytes() {
+        SessionArchiver.ArchiveEncoder encoder = new SessionArchiver.ArchiveEncoder(objectMapper);
+        try {
+            for (int i = 0; i < 200; i++) {
+                encoder.write(message("id" + i, "user", "重复的内容 repeated content", LocalDateTime.of(2025, 1, 1, 0, 0), "success", 5));
+            }
+            byte[] payload = encoder.finish();
+
+            assertThat(encoder.getCount()).isEqualTo(200);
+            // 重复内容的NDJSON压缩后明显变小
+            assertThat((long) payload.length).isLessThan(encoder.getRawBytes() / 4);
+            assertThat(decode(payload)).hasSize(200);
+        } finally {
+            encoder.close();
+        }
+    }
+
+    @Test
+    void emptyArchiveDecodesToNothing() {
+        assertThat(decode(encode(List.of()))).isEmpty();
+    }
+
+    @Test
+    void corruptPayloadFails() {
+        assertThatThrownBy(() -> decode(new byte[]{1, 2, 3, 4}))
+            .isInstanceOf(UncheckedIOException.class);
+    }
+
+    private byte[] encode(List<ChatMessage> messages) {
+        SessionArchiver.ArchiveEncoder encoder = new SessionArchiver.ArchiveEncoder(objectMapper);
+        try {
+            messages.forEach(encoder::write);
+            return encoder.finish();
+        } finally {
+            encoder.close();
+        }
+    }
+
+    private List<ChatMessage> decode(byte[] payload) {
+        List<ChatMessage> messages = new ArrayList<>();
+        archiver.decode(payload, node -> messages.add(SessionArchiver.toMessage(node)));
+        return messages;
+    }
+
+    private static ChatMessage message(String id, String role, String content, LocalDateTime timestamp,
+                                       String status, Integer tokenCount) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setRole(role);
+        message.setContent(content);
+        message.setTimestamp(timestamp);
+        message.setStatus(status);
+        message.setTokenCount(tokenCount);
+        return message;
+    }
+}
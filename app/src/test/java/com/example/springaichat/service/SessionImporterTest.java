@@ -0,0 +1,158 @@
+package com.example.springaichat.service;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.repository.ChatSessionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * SessionImporter 重复导入测试：导出文件中的会话在数据库中已归档时，归档中的消息不会被重复写入
+ * 使用MySQL兼容模式的H2内存库，只建导入和归档恢复用到的表
+ */
+class SessionImporterTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 9, 30, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JdbcTemplate jdbcTemplate;
+    private SessionArchiver archiver;
+    private SessionImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:importer;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("CREATE TABLE chat_sessions (id VARCHAR(32) PRIMARY KEY, name VARCHAR(200) NOT NULL, " +
+            "created_at TIMESTAMP(6) NOT NULL, updated_at TIMESTAMP(6) NOT NULL, message_count INT DEFAULT 0 NOT NULL, " +
+            "last_preview VARCHAR(100), last_activity_at TIMESTAMP(6), summary TEXT, summarized_until TIMESTAMP(6), " +
+            "archived_at TIMESTAMP(6))");
+        jdbcTemplate.execute("CREATE TABLE chat_messages (id VARCHAR(32) PRIMARY KEY, session_id VARCHAR(32) NOT NULL, " +
+            "role VARCHAR(20) NOT NULL, timestamp TIMESTAMP(6) NOT NULL, status VARCHAR(20), token_count INT, " +
+            "FOREIGN KEY (session_id) REFERENCES chat_sessions (id))");
+        jdbcTemplate.execute("CREATE TABLE chat_message_contents (message_id VARCHAR(32) PRIMARY KEY, content TEXT NOT NULL, " +
+            "FOREIGN KEY (message_id) REFERENCES chat_messages (id) ON DELETE CASCADE)");
+        jdbcTemplate.execute("CREATE TABLE chat_session_archives (session_id VARCHAR(32) PRIMARY KEY, " +
+            "message_count INT NOT NULL, raw_bytes BIGINT NOT NULL, payload BLOB NOT NULL, archived_at TIMESTAMP(6) NOT NULL, " +
+            "FOREIGN KEY (session_id) REFERENCES chat_sessions (id) ON DELETE CASCADE)");
+
+        RecentTurnCache recentTurnCache = new RecentTurnCache();
+        SessionCache sessionCache = new SessionCache();
+        archiver = new SessionArchiver(jdbcTemplate, transactionTemplate, objectMapper,
+            recentTurnCache, sessionCache, mock(ChatMetrics.class));
+        // 摘要回填是MySQL专用的原生SQL，不在本测试范围内
+        importer = new SessionImporter(jdbcTemplate, transactionTemplate, objectMapper,
+            mock(ChatSessionRepository.class), archiver, recentTurnCache, sessionCache, mock(SearchIndex.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void reimportingArchivedSessionSkipsArchivedMessages() throws Exception {
+        List<ChatMessage> archived = List.of(
+            message("01HZX0000000A", "user", "你好", T0),
+            message("01HZX0000000B", "assistant", "你好，有什么可以帮你？", T0.plusSeconds(1))
+        );
+        archiveSession("0A8CAD9F2K1QW", archived);
+
+        String export = String.join("\n",
+            "{\"type\":\"export\",\"version\":1}",
+            "{\"type\":\"session\",\"id\":\"0A8CAD9F2K1QW\",\"name\":\"旧会话\",\"createdAt\":\"" + T0 + "\"}",
+            messageRecord("01HZX0000000A", "user", "你好", T0),
+            messageRecord("01HZX0000000B", "assistant", "你好，有什么可以帮你？", T0.plusSeconds(1)),
+            messageRecord("01HZX0000000C", "user", "导出后新增的消息", T0.plusSeconds(2)));
+
+        Map<String, Object> result = importer.importFrom(
+            new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.get("sessionsMerged")).isEqualTo(1L);
+        assertThat(result.get("messagesImported")).isEqualTo(1L);
+        assertThat(result.get("messagesSkipped")).isEqualTo(2L);
+        assertThat(jdbcTemplate.queryForList(
+            "SELECT id FROM chat_messages WHERE session_id = ? ORDER BY id", String.class, "0A8CAD9F2K1QW"))
+            .containsExactly("01HZX0000000A", "01HZX0000000B", "01HZX0000000C");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_message_contents", Integer.class)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_session_archives", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT archived_at FROM chat_sessions WHERE id = ?", Timestamp.class, "0A8CAD9F2K1QW")).isNull();
+    }
+
+    @Test
+    void reimportingSameExportTwiceImportsNothingNew() throws Exception {
+        archiveSession("0A8CAD9F2K1QW", List.of(message("01HZX0000000A", "user", "你好", T0)));
+        String export = String.join("\n",
+            "{\"type\":\"export\",\"version\":1}",
+            "{\"type\":\"session\",\"id\":\"0A8CAD9F2K1QW\",\"name\":\"旧会话\",\"createdAt\":\"" + T0 + "\"}",
+            messageRecord("01HZX0000000A", "user", "你好", T0));
+
+        importer.importFrom(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)));
+        Map<String, Object> second = importer.importFrom(
+            new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(second.get("messagesImported")).isEqualTo(0L);
+        assertThat(second.get("messagesSkipped")).isEqualTo(1L);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_messages", Integer.class)).isEqualTo(1);
+    }
+
+    /**
+     * 建立一个已归档的会话：消息只在归档块中，热表中没有
+     */
+    private void archiveSession(String sessionId, List<ChatMessage> messages) {
+        Timestamp now = Timestamp.valueOf(T0.plusDays(30));
+        jdbcTemplate.update("INSERT INTO chat_sessions (id, name, created_at, updated_at, message_count, " +
+            "last_activity_at, archived_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+            sessionId, "旧会话", Timestamp.valueOf(T0), Timestamp.valueOf(T0), messages.size(), Timestamp.valueOf(T0), now);
+        SessionArchiver.ArchiveEncoder encoder = new SessionArchiver.ArchiveEncoder(objectMapper);
+        try {
+            messages.forEach(encoder::write);
+            byte[] payload = encoder.finish();
+            jdbcTemplate.update("INSERT INTO chat_session_archives (session_id, message_count, raw_bytes, payload, archived_at) " +
+                "VALUES (?, ?, ?, ?, ?)", sessionId, encoder.getCount(), encoder.getRawBytes(), payload, now);
+        } finally {
+            encoder.close();
+        }
+    }
+
+    private String messageRecord(String id, String role, String content, LocalDateTime timestamp) throws Exception {
+        return objectMapper.writeValueAsString(Map.of(
+            "type", "message",
+            "id", id,
+            "sessionId", "0A8CAD9F2K1QW",
+            "role", role,
+            "content", content,
+            "timestamp", timestamp.toString(),
+            "status", "success"));
+    }
+
+    private static ChatMessage message(String id, String role, String content, LocalDateTime timestamp) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setRole(role);
+        message.setContent(content);
+        message.setTimestamp(timestamp);
+        message.setStatus("success");
+        message.setTokenCount(1);
+        return message;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.springaichat.benchmarks;
+
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.service.ContextWindow;
+import com.example.springaichat.service.ContextWindowBuilder;
+import com.example.springaichat.service.TokenEstimator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每轮执行一次的上下文构建（原buildMessagesFromHistory），历史长度10到10000条
+ * budget=default为默认的6000 token预算；budget=unbounded时全部历史进入窗口，衡量最坏情况
+ * precounted=false时消息没有保存的token数（升级前的旧数据），每轮都要重新估算；
+ * 构建过程会回写估算值，因此每次调用前先清空，清空循环的开销计入结果
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextWindowBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int historySize;
+
+    @Param({"default", "unbounded"})
+    public String budget;
+
+    @Param({"true", "false"})
+    public boolean precounted;
+
+    private List<ChatMessage> history;
+    private ContextWindowBuilder builder;
+
+    @Setup
+    public void setup() {
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            boolean user = i % 2 == 0;
+            String content = user
+                ? "请解释一下第" + i + "个问题：Java中的虚拟线程和平台线程有什么区别？"
+                : "虚拟线程由JVM调度，阻塞时不占用操作系统线程。".repeat(4) + i;
+            ChatMessage message = new ChatMessage("msg_" + i, user ? "user" : "assistant", content, "success");
+            if (precounted) {
+                message.setTokenCount(TokenEstimator.estimateMessage(content));
+            }
+            history.add(message);
+        }
+        builder = "unbounded".equals(budget)
+            ? new ContextWindowBuilder(Integer.MAX_VALUE, historySize)
+            : new ContextWindowBuilder(6000, 50);
+    }
+
+    @Benchmark
+    public ContextWindow build() {
+        if (!precounted) {
+            for (ChatMessage message : history) {
+                message.setTokenCount(null);
+            }
+        }
+        return builder.build(history, "用户正在学习Java并发。", null);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.springaichat.benchmarks;
+
+import com.example.springaichat.service.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每条消息执行一次的ID生成，单线程和多线程竞争各测一次
+ * legacy为改造前的"msg_"+毫秒+随机数，作为对照
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private final IdGenerator generator = new IdGenerator(0);
+
+    @Benchmark
+    public String next() {
+        return generator.next();
+    }
+
+    @Benchmark
+    public String legacy() {
+        return "msg_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 10000);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String nextContended() {
+        return generator.next();
+    }
+}
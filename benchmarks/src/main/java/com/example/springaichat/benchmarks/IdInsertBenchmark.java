@@ -0,0 +1,168 @@
+package com.example.springaichat.benchmarks;
+
+import com.example.springaichat.service.IdGenerator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 消息表插入吞吐和索引大小：旧ID（"msg_"+毫秒+随机数，VARCHAR(100) utf8mb4）与
+ * 新ID（13位时间有序ID，VARCHAR(32) ascii_bin）对比
+ * 需要真实的MySQL（InnoDB聚簇索引），不是JMH基准，以main方法运行：
+ * java -cp target/benchmarks.jar com.example.springaichat.benchmarks.IdInsertBenchmark
+ *
+ * 配置（系统属性）：
+ * bench.jdbc-url 数据库地址，应使用单独的库，基准会重建 id_bench_* 表
+ * bench.user / bench.password 数据库账号
+ * bench.rows 每种ID插入的行数
+ * bench.batch 每批行数
+ * bench.threads 并发写入线程数
+ * bench.sessions 消息分布的会话数
+ */
+public class IdInsertBenchmark {
+
+    private static final String LEGACY_COLUMN = "VARCHAR(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci";
+    private static final String COMPACT_COLUMN = "VARCHAR(32) CHARACTER SET ascii COLLATE ascii_bin";
+
+    private final String url = System.getProperty("bench.jdbc-url",
+        "jdbc:mysql://localhost:3306/springai_chat_bench?useSSL=false&allowPublicKeyRetrieval=true&rewriteBatchedStatements=true");
+    private final String user = System.getProperty("bench.user", "root");
+    private final String password = System.getProperty("bench.password", "");
+    private final int rows = Integer.getInteger("bench.rows", 200_000);
+    private final int batch = Integer.getInteger("bench.batch", 500);
+    private final int threads = Integer.getInteger("bench.threads", 4);
+    private final int sessions = Integer.getInteger("bench.sessions", 1000);
+
+    public static void main(String[] args) throws Exception {
+        new IdInsertBenchmark().run();
+    }
+
+    private void run() throws Exception {
+        IdGenerator generator = new IdGenerator(0);
+        List<String> legacySessions = new ArrayList<>();
+        List<String> compactSessions = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            legacySessions.add("session_" + System.currentTimeMillis() + "_" + Long.toString(ThreadLocalRandom.current().nextLong(1L << 46), 36));
+            compactSessions.add(generator.next());
+        }
+
+        Result legacy = measure("id_bench_legacy", LEGACY_COLUMN, legacySessions,
+            () -> "msg_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 10000));
+        Result compact = measure("id_bench_compact", COMPACT_COLUMN, compactSessions, generator::next);
+
+        System.out.printf(Locale.ROOT, "%n行数: %d, 批大小: %d, 线程: %d, 会话: %d%n", rows, batch, threads, sessions);
+        System.out.printf(Locale.ROOT, "%-10s %12s %10s %12s %12s%n", "ID", "插入(行/秒)", "主键冲突", "数据(MB)", "索引(MB)");
+        legacy.print("legacy");
+        compact.print("compact");
+    }
+
+    /**
+     * 重建结构与chat_messages一致的表，多线程批量插入并读取数据和索引大小
+     */
+    private Result measure(String table, String idColumn, List<String> sessionIds, Supplier<String> ids) throws Exception {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + table);
+            statement.execute("CREATE TABLE " + table + " (" +
+                "id " + idColumn + " NOT NULL PRIMARY KEY, " +
+                "session_id " + idColumn + " NOT NULL, " +
+                "role VARCHAR(20) NOT NULL, " +
+                "content TEXT NOT NULL, " +
+                "timestamp DATETIME(6) NOT NULL, " +
+                "status VARCHAR(20), " +
+                "token_count INT, " +
+                "INDEX idx_session_ts_id (session_id, timestamp, id)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int share = rows / threads + (t < rows % threads ? 1 : 0);
+            futures.add(executor.submit(() -> {
+                insert(table, share, sessionIds, ids);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        Result result = new Result();
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            // 主键冲突的行被INSERT IGNORE跳过，按实际行数计算
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                rs.next();
+                long inserted = rs.getLong(1);
+                result.rowsPerSecond = inserted / (elapsed / 1e9);
+                result.collisions = rows - inserted;
+            }
+            statement.execute("ANALYZE TABLE " + table);
+            try (ResultSet rs = statement.executeQuery("SELECT DATA_LENGTH, INDEX_LENGTH FROM information_schema.TABLES " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '" + table + "'")) {
+                if (rs.next()) {
+                    result.dataBytes = rs.getLong(1);
+                    result.indexBytes = rs.getLong(2);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量插入，INSERT IGNORE跳过主键冲突的行
+     */
+    private void insert(String table, int count, List<String> sessionIds, Supplier<String> ids) throws SQLException {
+        try (Connection connection = connect();
+             PreparedStatement ps = connection.prepareStatement("INSERT IGNORE INTO " + table +
+                 " (id, session_id, role, content, timestamp, status, token_count) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            connection.setAutoCommit(false);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < count; i++) {
+                ps.setString(1, ids.get());
+                ps.setString(2, sessionIds.get(random.nextInt(sessionIds.size())));
+                ps.setString(3, i % 2 == 0 ? "user" : "assistant");
+                ps.setString(4, "基准测试消息内容 " + i);
+                ps.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+                ps.setString(6, "success");
+                ps.setInt(7, 12);
+                ps.addBatch();
+                if ((i + 1) % batch == 0 || i == count - 1) {
+                    ps.executeBatch();
+                    connection.commit();
+                }
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private static final class Result {
+        private double rowsPerSecond;
+        private long collisions;
+        private long dataBytes;
+        private long indexBytes;
+
+        private void print(String name) {
+            System.out.printf(Locale.ROOT, "%-10s %12.0f %10d %12.2f %12.2f%n",
+                name, rowsPerSecond, collisions, dataBytes / 1048576.0, indexBytes / 1048576.0);
+        }
+    }
+}
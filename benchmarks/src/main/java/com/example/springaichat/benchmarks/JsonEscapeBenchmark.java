@@ -0,0 +1,62 @@
+package com.example.springaichat.benchmarks;
+
+import com.example.springaichat.service.JsonEscaper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个片段执行一次的JSON转义
+ * legacy为改造前的五次String.replace加String.format，作为对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonEscapeBenchmark {
+
+    @Param({"ascii", "cjk", "markdown"})
+    public String content;
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        switch (content) {
+            case "ascii" -> token = "Hello, world";
+            case "cjk" -> token = "很高兴为你提供帮助";
+            default -> token = "```java\n\tString s = \"a\\\\b\";\n```";
+        }
+    }
+
+    @Benchmark
+    public String escape() {
+        return "{\"content\":\"" + JsonEscaper.escape(token) + "\",\"done\":false}";
+    }
+
+    @Benchmark
+    public String legacy() {
+        return String.format("{\"content\":\"%s\",\"done\":false}", legacyEscape(token));
+    }
+
+    private static String legacyEscape(String content) {
+        return content
+            .replace("\\", "\\\\")
+            .replace("\"", "\\\"")
+            .replace("\n", "\\n")
+            .replace("\r", "\\r")
+            .replace("\t", "\\t");
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.springaichat.benchmarks;
+
+import com.example.springaichat.controller.ChatResponseMapper;
+import com.example.springaichat.entity.ChatMessage;
+import com.example.springaichat.repository.ChatSessionSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * AIController的HashMap响应映射：一页消息和会话列表
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseMappingBenchmark {
+
+    @Param({"50", "200"})
+    public int size;
+
+    private List<ChatMessage> messages;
+    private List<ChatSessionSummary> sessions;
+
+    @Setup
+    public void setup() {
+        messages = new ArrayList<>(size);
+        sessions = new ArrayList<>(size);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < size; i++) {
+            messages.add(new ChatMessage("msg_" + i, i % 2 == 0 ? "user" : "assistant", "消息内容" + i, "success"));
+            sessions.add(new Summary("session_" + i, now, i));
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> messagePage() {
+        return messages.stream()
+            .map(ChatResponseMapper::toMessageData)
+            .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> sessionList() {
+        return sessions.stream()
+            .map(ChatResponseMapper::toSessionSummaryData)
+            .collect(Collectors.toList());
+    }
+
+    private static final class Summary implements ChatSessionSummary {
+        private final String id;
+        private final LocalDateTime time;
+        private final int messageCount;
+
+        private Summary(String id, LocalDateTime time, int messageCount) {
+            this.id = id;
+            this.time = time;
+            this.messageCount = messageCount;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return "新对话";
+        }
+
+        @Override
+        public LocalDateTime getCreatedAt() {
+            return time;
+        }
+
+        @Override
+        public LocalDateTime getUpdatedAt() {
+            return time;
+        }
+
+        @Override
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        @Override
+        public String getLastPreview() {
+            return "请解释一下虚拟线程...";
+        }
+
+        @Override
+        public LocalDateTime getLastActivityAt() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.springaichat.benchmarks;
+
+import com.example.springaichat.service.SseFrameWriter;
+import com.example.springaichat.service.TurnStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE帧构造：每个片段单独成帧与合并成帧
+ * 网络写入由不做I/O的SseEmitter代替，只衡量转义、帧拼接和分发
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseFrameBenchmark {
+
+    private static final String TOKEN = "很高兴为你";
+
+    // 一帧合并的片段数
+    private static final int TOKENS_PER_FRAME = 16;
+
+    private ScheduledExecutorService scheduler;
+    private SseFrameWriter perToken;
+    private SseFrameWriter coalesced;
+    private BlackholeEmitter perTokenEmitter;
+    private BlackholeEmitter coalescedEmitter;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        perTokenEmitter = new BlackholeEmitter(blackhole);
+        coalescedEmitter = new BlackholeEmitter(blackhole);
+        // 延迟为0时每个片段立即成帧；合并写入器的帧上限足够大，由基准方法显式flush
+        perToken = new SseFrameWriter(TurnStream.direct(perTokenEmitter), scheduler, scheduler, 1024, 0);
+        coalesced = new SseFrameWriter(TurnStream.direct(coalescedEmitter), scheduler, scheduler, 1 << 20, TimeUnit.HOURS.toMillis(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 16个片段各成一帧
+     */
+    @Benchmark
+    public void perTokenFrames() throws IOException {
+        for (int i = 0; i < TOKENS_PER_FRAME; i++) {
+            perToken.append(TOKEN);
+        }
+    }
+
+    /**
+     * 16个片段合并为一帧
+     */
+    @Benchmark
+    public void coalescedFrame() throws IOException {
+        for (int i = 0; i < TOKENS_PER_FRAME; i++) {
+            coalesced.append(TOKEN);
+        }
+        coalesced.flush();
+    }
+
+    /**
+     * 不做网络I/O的SseEmitter，帧交给Blackhole
+     */
+    static final class BlackholeEmitter extends SseEmitter {
+        private final Blackhole blackhole;
+
+        BlackholeEmitter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void send(Set<DataWithMediaType> items) {
+            blackhole.consume(items);
+        }
+    }
+}
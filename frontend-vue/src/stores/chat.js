@@ -6,6 +6,10 @@ export const useChatStore = defineStore('chat', () => {
   const currentSessionId = ref(null)
   const messages = ref([])
   const isLoading = ref(false)
+  // 分页状态：是否还有更早的消息，以及加载更早消息所用的游标
+  const hasMoreMessages = ref(false)
+  const beforeCursor = ref(null)
+  const isLoadingOlder = ref(false)
 
   const currentSession = computed(() => {
     return sessions.value.find(s => s.id === currentSessionId.value)
@@ -35,11 +39,11 @@ export const useChatStore = defineStore('chat', () => {
 
   const createSession = async (name = '新对话') => {
     try {
-      const sessionId = generateId('session')
+      // 会话ID由服务端生成
       const response = await fetch('/api/ai/sessions', {
         method: 'POST',
         headers: { 'Content-Type': 'application/json' },
-        body: JSON.stringify({ sessionId, name })
+        body: JSON.stringify({ name })
       })
       const data = await response.json()
       
@@ -52,6 +56,8 @@ export const useChatStore = defineStore('chat', () => {
       
       currentSessionId.value = data.id
       messages.value = []
+      hasMoreMessages.value = false
+      beforeCursor.value = null
       return data
     } catch (error) {
       console.error('创建会话失败:', error)
@@ -64,13 +70,45 @@ export const useChatStore = defineStore('chat', () => {
     await loadMessages(sessionId)
   }
 
+  const PAGE_SIZE = 50
+
   const loadMessages = async (sessionId) => {
     try {
-      const response = await fetch(`/api/ai/sessions/${sessionId}/messages`)
-      messages.value = await response.json()
+      // 只加载最新的一页，更早的消息在向上滚动时按需加载
+      const response = await fetch(`/api/ai/sessions/${sessionId}/messages/page?limit=${PAGE_SIZE}`)
+      const page = await response.json()
+      messages.value = page.messages
+      hasMoreMessages.value = page.hasMore
+      beforeCursor.value = page.beforeCursor
     } catch (error) {
       console.error('加载消息失败:', error)
       messages.value = []
+      hasMoreMessages.value = false
+      beforeCursor.value = null
+    }
+  }
+
+  const loadOlderMessages = async () => {
+    if (!hasMoreMessages.value || isLoadingOlder.value || !beforeCursor.value) return false
+    const sessionId = currentSessionId.value
+    isLoadingOlder.value = true
+    try {
+      const cursor = encodeURIComponent(beforeCursor.value)
+      const response = await fetch(`/api/ai/sessions/${sessionId}/messages/page?limit=${PAGE_SIZE}&before=${cursor}`)
+      const page = await response.json()
+      // 加载期间切换了会话则丢弃结果
+      if (sessionId !== currentSessionId.value) return false
+      messages.value = [...page.messages, ...messages.value]
+      hasMoreMessages.value = page.hasMore
+      if (page.beforeCursor) {
+        beforeCursor.value = page.beforeCursor
+      }
+      return page.messages.length > 0
+    } catch (error) {
+      console.error('加载更早消息失败:', error)
+      return false
+    } finally {
+      isLoadingOlder.value = false
     }
   }
 
@@ -117,6 +155,8 @@ export const useChatStore = defineStore('chat', () => {
       await fetch(`/api/ai/history/${sessionId}`, { method: 'DELETE' })
       if (currentSessionId.value === sessionId) {
         messages.value = []
+        hasMoreMessages.value = false
+        beforeCursor.value = null
       }
     } catch (error) {
       console.error('清空历史失败:', error)
@@ -126,58 +166,20 @@ export const useChatStore = defineStore('chat', () => {
   // 当前活跃的AbortController，用于取消请求
   let currentAbortController = null
 
-  const sendMessage = async (content) => {
-    if (!content.trim() || isLoading.value) return
-    
-    isLoading.value = true
-    
-    // 创建用户消息
-    const userMessage = {
-      id: generateId('msg'),
-      role: 'user',
-      content: content.trim(),
-      timestamp: Date.now(),
-      status: 'success'
-    }
-    messages.value.push(userMessage)
-    
-    // 创建AI消息对象
-    const aiMessageIndex = messages.value.length
-    messages.value.push({
-      id: generateId('msg'),
-      role: 'assistant',
-      content: '',
-      timestamp: Date.now(),
-      status: 'loading'
-    })
-    
-    console.log('🤖 开始接收AI响应，消息索引:', aiMessageIndex)
-    
-    // 创建AbortController用于中断请求
-    currentAbortController = new AbortController()
+  // 断线续传的最大连续尝试次数和退避间隔
+  const RESUME_MAX_ATTEMPTS = 3
+  const RESUME_DELAY_MS = 500
+
+  // 读取一次SSE连接，将内容追加到AI消息
+  // 返回是否已收到完成（或错误）事件，以及最后收到的事件ID
+  const readEventStream = async (response, aiMessageIndex) => {
+    const reader = response.body.getReader()
+    const decoder = new TextDecoder('utf-8')
+    let buffer = ''
+    let lastEventId = null
+    let finished = false
     
     try {
-      const response = await fetch('/api/ai/chat', {
-        method: 'POST',
-        headers: {
-          'Content-Type': 'application/json',
-          'Accept': 'text/event-stream'
-        },
-        body: JSON.stringify({
-          message: content,
-          sessionId: currentSessionId.value
-        }),
-        signal: currentAbortController.signal
-      })
-      
-      if (!response.ok) {
-        throw new Error(`HTTP error! status: ${response.status}`)
-      }
-      
-      const reader = response.body.getReader()
-      const decoder = new TextDecoder('utf-8')
-      let buffer = ''
-      
       while (true) {
         const { done, value } = await reader.read()
         if (done) {
@@ -197,6 +199,12 @@ export const useChatStore = defineStore('chat', () => {
           const trimmedLine = line.trim()
           if (!trimmedLine) continue
           
+          // 解析SSE id行，续传时使用
+          if (trimmedLine.startsWith('id:')) {
+            lastEventId = trimmedLine.substring(3).trim()
+            continue
+          }
+          
           // 解析SSE event行
           if (trimmedLine.startsWith('event:')) {
             const eventType = trimmedLine.substring(6).trim()
@@ -234,6 +242,13 @@ export const useChatStore = defineStore('chat', () => {
               
               // 处理完成标记
               if (parsed.done === true) {
+                finished = true
+              }
+              if (parsed.done === true && parsed.cancelled) {
+                // 已停止生成，服务端保存了已生成的部分
+                messages.value[aiMessageIndex].status = 'cancelled'
+                messages.value[aiMessageIndex].content = messages.value[aiMessageIndex].content || '已取消生成'
+              } else if (parsed.done === true && !parsed.error) {
                 messages.value[aiMessageIndex].status = 'success'
                 console.log('✅ AI响应完成，总长度:', messages.value[aiMessageIndex].content.length)
                 await loadSessions()
@@ -252,6 +267,87 @@ export const useChatStore = defineStore('chat', () => {
           }
         }
       }
+    } catch (e) {
+      // 用户主动取消向上抛出；网络中断交给调用方续传
+      if (e.name === 'AbortError' || !lastEventId) throw e
+      console.warn('⚠️ 连接中断:', e.message)
+    }
+    
+    return { finished, lastEventId }
+  }
+
+  const sendMessage = async (content) => {
+    if (!content.trim() || isLoading.value) return
+    
+    isLoading.value = true
+    
+    // 创建用户消息
+    const userMessage = {
+      id: generateId('msg'),
+      role: 'user',
+      content: content.trim(),
+      timestamp: Date.now(),
+      status: 'success'
+    }
+    messages.value.push(userMessage)
+    
+    // 创建AI消息对象
+    const aiMessageIndex = messages.value.length
+    messages.value.push({
+      id: generateId('msg'),
+      role: 'assistant',
+      content: '',
+      timestamp: Date.now(),
+      status: 'loading'
+    })
+    
+    console.log('🤖 开始接收AI响应，消息索引:', aiMessageIndex)
+    
+    // 创建AbortController用于中断请求
+    currentAbortController = new AbortController()
+    
+    try {
+      const response = await fetch('/api/ai/chat', {
+        method: 'POST',
+        headers: {
+          'Content-Type': 'application/json',
+          'Accept': 'text/event-stream'
+        },
+        body: JSON.stringify({
+          message: content,
+          sessionId: currentSessionId.value
+        }),
+        signal: currentAbortController.signal
+      })
+      
+      if (!response.ok) {
+        throw new Error(`HTTP error! status: ${response.status}`)
+      }
+      
+      // 读取流；连接在回答完成前中断时，用最后收到的事件ID续传，不会重新调用模型
+      let state = await readEventStream(response, aiMessageIndex)
+      let attempts = 0
+      while (!state.finished && state.lastEventId && attempts < RESUME_MAX_ATTEMPTS) {
+        attempts++
+        console.log('🔁 连接中断，尝试续传:', state.lastEventId)
+        await new Promise(resolve => setTimeout(resolve, RESUME_DELAY_MS * attempts))
+        try {
+          const resumed = await fetch(`/api/ai/chat/resume?lastEventId=${encodeURIComponent(state.lastEventId)}`, {
+            headers: { 'Accept': 'text/event-stream' },
+            signal: currentAbortController.signal
+          })
+          if (!resumed.ok) continue
+          const next = await readEventStream(resumed, aiMessageIndex)
+          if (next.lastEventId) {
+            // 有新进展时重新计算尝试次数
+            attempts = 0
+          }
+          state = { finished: next.finished, lastEventId: next.lastEventId || state.lastEventId }
+        } catch (e) {
+          if (e.name === 'AbortError') throw e
+          console.warn('续传失败:', e.message)
+        }
+      }
       
       // 确保最终状态正确
       if (messages.value[aiMessageIndex].status === 'streaming') {
@@ -276,12 +372,17 @@ export const useChatStore = defineStore('chat', () => {
     }
   }
   
-  // 停止当前的AI响应生成
-  const stopGeneration = () => {
-    if (currentAbortController) {
-      currentAbortController.abort()
-      console.log('⏹️ 已中断AI生成')
+  // 停止当前的AI响应生成：先通知服务端取消模型调用，再中断本地请求
+  const stopGeneration = async () => {
+    const controller = currentAbortController
+    if (!controller) return
+    try {
+      await fetch(`/api/ai/sessions/${currentSessionId.value}/stop`, { method: 'POST' })
+    } catch (error) {
+      console.warn('通知服务端停止失败:', error)
     }
+    controller.abort()
+    console.log('⏹️ 已中断AI生成')
   }
 
   return {
@@ -290,8 +391,11 @@ export const useChatStore = defineStore('chat', () => {
     currentSession,
     messages,
     isLoading,
+    hasMoreMessages,
+    isLoadingOlder,
     loadSessions,
     loadMessages,
+    loadOlderMessages,
     createSession,
     switchSession,
     deleteSession,
@@ -1,99 +0,0 @@
-package com.example.springaichat.entity;
-
-import jakarta.persistence.*;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * 聊天会话实体类
- * 用于持久化存储用户的对话会话信息
- */
-@Entity
-@Table(name = "chat_sessions")
-public class ChatSession {
-    
-    @Id
-    @Column(length = 100)
-    private String id;
-    
-    @Column(nullable = false, length = 200)
-    private String name;
-    
-    @Column(name = "created_at", nullable = false)
-    private LocalDateTime createdAt;
-    
-    @Column(name = "updated_at", nullable = false)
-    private LocalDateTime updatedAt;
-    
-    @OneToMany(mappedBy = "session", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
-    @OrderBy("timestamp ASC")
-    private List<ChatMessage> messages = new ArrayList<>();
-    
-    // 默认构造函数（JPA需要）
-    public ChatSession() {
-    }
-    
-    public ChatSession(String id, String name) {
-        this.id = id;
-        this.name = name;
-        this.createdAt = LocalDateTime.now();
-        this.updatedAt = LocalDateTime.now();
-    }
-    
-    // Getters and Setters
-    public String getId() {
-        return id;
-    }
-    
-    public void setId(String id) {
-        this.id = id;
-    }
-    
-    public String getName() {
-        return name;
-    }
-    
-    public void setName(String name) {
-        this.name = name;
-        this.updatedAt = LocalDateTime.now();
-    }
-    
-    public LocalDateTime getCreatedAt() {
-        return createdAt;
-    }
-    
-    public void setCreatedAt(LocalDateTime createdAt) {
-        this.createdAt = createdAt;
-    }
-    
-    public LocalDateTime getUpdatedAt() {
-        return updatedAt;
-    }
-    
-    public void setUpdatedAt(LocalDateTime updatedAt) {
-        this.updatedAt = updatedAt;
-    }
-    
-    public List<ChatMessage> getMessages() {
-        return messages;
-    }
-    
-    public void setMessages(List<ChatMessage> messages) {
-        this.messages = messages;
-    }
-    
-    // 辅助方法
-    public void addMessage(ChatMessage message) {
-        messages.add(message);
-        message.setSession(this);
-        this.updatedAt = LocalDateTime.now();
-    }
-    
-    public void removeMessage(ChatMessage message) {
-        messages.remove(message);
-        message.setSession(null);
-        this.updatedAt = LocalDateTime.now();
-    }
-}
-